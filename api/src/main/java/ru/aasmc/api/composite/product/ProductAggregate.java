@@ -14,6 +14,17 @@ public class ProductAggregate {
     private final List<RecommendationSummary> recommendations;
     private final List<ReviewSummary> reviews;
     private final ServiceAddresses serviceAddresses;
+    private final ProductRatingSummary ratingSummary;
+
+    public ProductAggregate(
+            int productId,
+            String name,
+            int weight,
+            List<RecommendationSummary> recommendations,
+            List<ReviewSummary> reviews,
+            ServiceAddresses serviceAddresses) {
+        this(productId, name, weight, recommendations, reviews, serviceAddresses, null);
+    }
 
     public ProductAggregate() {
         productId = 0;
@@ -22,5 +33,6 @@ public class ProductAggregate {
         recommendations = null;
         reviews = null;
         serviceAddresses = null;
+        ratingSummary = null;
     }
 }
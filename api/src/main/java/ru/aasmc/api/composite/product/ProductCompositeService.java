@@ -4,9 +4,13 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @Tag(name = "ProductComposite", description = "REST API for composite product information.")
 public interface ProductCompositeService {
 
@@ -32,10 +36,38 @@ public interface ProductCompositeService {
     void createProduct(@RequestBody ProductAggregate body);
 
     /**
-     * Sample usage: "curl $HOST:$PORT/product-composite/1".
+     * Sample usage, same body as {@link #createProduct(ProductAggregate)}.
+     *
+     * curl -X POST $HOST:$PORT/product-composite/async \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"name":"product 123","weight":123}'
+     *
+     * @param body A JSON representation of the new composite product
+     * @return the status of the accepted write, poll it with {@link #getWriteStatus(String)}
+     */
+    @Operation(
+            summary = "${api.product-composite.create-composite-product-async.description}",
+            description = "${api.product-composite.create-composite-product-async.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "${api.responseCodes.accepted.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @PostMapping(
+            value    = "/product-composite/async",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    WriteStatus createProductAsync(@RequestBody ProductAggregate body);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite/1?includeRatingSummary=true&recommendationLimit=5".
      *
      * @param productId Id of the product
-     * @return the composite product info, if found, else null
+     * @param includeRatingSummary Whether to embed the rating summary of the product's recommendations
+     * @param recommendationLimit If set, only this many of the highest rated recommendations are included
+     * @return the composite product info, if found, else null. Parts served from the last good results
+     *         carry an Age header, the ones past their max-age are listed in X-Stale-Parts
      */
     @Operation(
             summary = "${api.product-composite.get-composite-product.description}",
@@ -50,7 +82,33 @@ public interface ProductCompositeService {
     @GetMapping(
             value = "/product-composite/{productId}",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    ProductAggregate getProduct(@PathVariable int productId);
+    ResponseEntity<ProductAggregate> getProduct(
+            @PathVariable int productId,
+            @RequestParam(value = "includeRatingSummary", required = false, defaultValue = "false") boolean includeRatingSummary,
+            @RequestParam(value = "recommendationLimit", required = false) Integer recommendationLimit);
+
+    /**
+     * Sample usage: "curl '$HOST:$PORT/product-composite?afterProductId=100&limit=50'".
+     *
+     * @param afterProductId Only products with a higher productId are returned, 0 starts from the beginning
+     * @param limit Max number of products to return
+     * @return summaries of the products ordered by productId
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-products.description}",
+            description = "${api.product-composite.get-composite-products.notes}"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    List<ProductSummary> getProducts(
+            @RequestParam(value = "afterProductId", required = false, defaultValue = "0") int afterProductId,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit);
 
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/product-composite/1".
@@ -67,4 +125,42 @@ public interface ProductCompositeService {
     @DeleteMapping(value = "/product-composite/{productId}")
     void deleteProduct(@PathVariable int productId);
 
+    /**
+     * Sample usage: "curl -X DELETE $HOST:$PORT/product-composite/1/async".
+     *
+     * @param productId Id of the product
+     * @return the status of the accepted write, poll it with {@link #getWriteStatus(String)}
+     */
+    @Operation(
+            summary = "${api.product-composite.delete-composite-product-async.description}",
+            description = "${api.product-composite.delete-composite-product-async.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "${api.responseCodes.accepted.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @DeleteMapping(
+            value    = "/product-composite/{productId}/async",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    WriteStatus deleteProductAsync(@PathVariable int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite/writes/7c0b5a4e-...".
+     *
+     * @param trackingId Id returned when the write was accepted
+     * @return the progress of the write
+     */
+    @Operation(
+            summary = "${api.product-composite.get-write-status.description}",
+            description = "${api.product-composite.get-write-status.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}")
+    })
+    @GetMapping(
+            value    = "/product-composite/writes/{trackingId}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    WriteStatus getWriteStatus(@PathVariable String trackingId);
+
 }
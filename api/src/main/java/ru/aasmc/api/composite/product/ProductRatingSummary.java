@@ -0,0 +1,20 @@
+package ru.aasmc.api.composite.product;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+
+@Getter
+@RequiredArgsConstructor
+public class ProductRatingSummary {
+    private final long count;
+    private final double averageRate;
+    private final Map<Integer, Long> histogram;
+
+    public ProductRatingSummary() {
+        this.count = 0;
+        this.averageRate = 0;
+        this.histogram = null;
+    }
+}
@@ -0,0 +1,18 @@
+package ru.aasmc.api.composite.product;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class ProductSummary {
+    private final int productId;
+    private final String name;
+    private final int weight;
+
+    public ProductSummary() {
+        this.productId = 0;
+        this.name = null;
+        this.weight = 0;
+    }
+}
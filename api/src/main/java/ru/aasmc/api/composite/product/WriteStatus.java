@@ -0,0 +1,40 @@
+package ru.aasmc.api.composite.product;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Progress of an asynchronous composite write, every entity it touches is one command.
+ */
+@Getter
+@RequiredArgsConstructor
+public class WriteStatus {
+
+    public enum State {
+        PENDING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String trackingId;
+    private final int productId;
+    private final String operation;
+    private final State state;
+    private final int totalCommands;
+    private final int completedCommands;
+    private final int failedCommands;
+    private final List<String> errors;
+
+    public WriteStatus() {
+        this.trackingId = null;
+        this.productId = 0;
+        this.operation = null;
+        this.state = null;
+        this.totalCommands = 0;
+        this.completedCommands = 0;
+        this.failedCommands = 0;
+        this.errors = null;
+    }
+}
@@ -1,5 +1,6 @@
 package ru.aasmc.api.core.product;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 
 @Getter
@@ -12,5 +13,7 @@ public class Product {
     private int productId;
     private String name;
     private int weight;
+    // Left out of list responses, they tell it once in the X-Service-Address header
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String serviceAddress;
 }
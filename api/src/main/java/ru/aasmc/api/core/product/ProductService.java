@@ -1,8 +1,12 @@
 package ru.aasmc.api.core.product;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 public interface ProductService {
 
     /**
@@ -22,6 +26,29 @@ public interface ProductService {
     )
     Product createProduct(@RequestBody Product body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X PUT $HOST:$PORT/product -H 'If-Match: "1"' \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"name":"product 123","weight":124}'
+     *
+     * Creates the product or replaces the one with its productId in a single write. With If-Match the product
+     * is only replaced if it exists at that version, or at all for *, else 412 is returned.
+     *
+     * @param ifMatch The version the product is expected to have, as an ETag
+     * @param body A JSON representation of the product
+     * @return A JSON representation of the stored product, its version in the ETag header
+     */
+    @PutMapping(
+            value = "/product",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<Product> upsertProduct(
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody Product body);
+
 
     /**
      * Sample usage: "curl $HOST:$PORT/product/1".
@@ -35,6 +62,24 @@ public interface ProductService {
     )
     Product getProduct(@PathVariable("productId") int productId);
 
+    /**
+     * Sample usage: "curl '$HOST:$PORT/product?afterProductId=100&limit=50'".
+     *
+     * Pages by keyset, pass the productId of the last product of a page as afterProductId
+     * to get the next page. A page with fewer than limit products is the last one.
+     *
+     * @param afterProductId Only products with a higher productId are returned, 0 starts from the beginning
+     * @param limit Max number of products to return
+     * @return the products ordered by productId
+     */
+    @GetMapping(
+            value = "/product",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    List<Product> getProducts(
+            @RequestParam(value = "afterProductId", required = false, defaultValue = "0") int afterProductId,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit);
+
     @DeleteMapping(value = "/product/{productId}")
     void deleteProduct(@PathVariable int productId);
 
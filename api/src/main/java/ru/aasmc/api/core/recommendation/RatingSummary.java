@@ -0,0 +1,23 @@
+package ru.aasmc.api.core.recommendation;
+
+import lombok.*;
+
+import java.util.Map;
+
+/**
+ * Rating statistics of all recommendations of a product.
+ * The histogram maps each rate to the number of recommendations with that rate.
+ */
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class RatingSummary {
+    private int productId;
+    private long count;
+    private double averageRate;
+    private Map<Integer, Long> histogram;
+    private String serviceAddress;
+}
@@ -1,5 +1,6 @@
 package ru.aasmc.api.core.recommendation;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 
 @Getter
@@ -14,5 +15,7 @@ public class Recommendation {
     private String author;
     private int rate;
     private String content;
+    // Left out of list responses, they tell it once in the X-Service-Address header
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String serviceAddress;
 }
@@ -1,6 +1,8 @@
 package ru.aasmc.api.core.recommendation;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -23,6 +25,28 @@ public interface RecommendationService {
             produces = MediaType.APPLICATION_JSON_VALUE)
     Recommendation createRecommendation(@RequestBody Recommendation body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X PUT $HOST:$PORT/recommendation -H 'If-Match: "1"' \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"recommendationId":456,"author":"me","rate":4,"content":"yada, yada, yada"}'
+     *
+     * Creates the recommendation or replaces the one with its productId and recommendationId in a single write.
+     * With If-Match it is only replaced if it exists at that version, or at all for *, else 412 is returned.
+     *
+     * @param ifMatch The version the recommendation is expected to have, as an ETag
+     * @param body A JSON representation of the recommendation
+     * @return A JSON representation of the stored recommendation, its version in the ETag header
+     */
+    @PutMapping(
+            value    = "/recommendation",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<Recommendation> upsertRecommendation(
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody Recommendation body);
+
     /**
      * Sample usage: "curl $HOST:$PORT/recommendation?productId=1".
      *
@@ -37,6 +61,38 @@ public interface RecommendationService {
             @RequestParam(value = "productId", required = true) int productId
     );
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation/top?productId=1&limit=5&orderBy=rating".
+     *
+     * @param productId Id of the product
+     * @param limit Max number of recommendations to return
+     * @param orderBy "rating" for the highest rated first or "recent" for the most recently created first
+     * @return at most limit recommendations of the product in the requested order
+     */
+    @GetMapping(
+            value = "/recommendation/top",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    List<Recommendation> getTopRecommendations(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "limit", required = false, defaultValue = "10") int limit,
+            @RequestParam(value = "orderBy", required = false, defaultValue = "rating") String orderBy
+    );
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation/summary?productId=1".
+     *
+     * @param productId Id of the product
+     * @return count, average rate and rate histogram of the recommendations of the product
+     */
+    @GetMapping(
+            value = "/recommendation/summary",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    RatingSummary getRatingSummary(
+            @RequestParam(value = "productId", required = true) int productId
+    );
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/recommendation?productId=1".
      *
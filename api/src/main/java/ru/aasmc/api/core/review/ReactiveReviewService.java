@@ -0,0 +1,58 @@
+package ru.aasmc.api.core.review;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking variant of {@link ReviewService}, same endpoints and payloads.
+ */
+public interface ReactiveReviewService {
+
+    /**
+     * Sample usage, see {@link ReviewService#createReview(Review)}.
+     *
+     * @param body A JSON representation of the new review
+     * @return A JSON representation of the newly created review
+     */
+    @PostMapping(
+            value    = "/review",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    Mono<Review> createReview(@RequestBody Review body);
+
+    /**
+     * Sample usage, see {@link ReviewService#createReviews(List)}.
+     *
+     * @param body A JSON array of the new reviews
+     * @return A JSON representation of the newly created reviews
+     */
+    @PostMapping(
+            value    = "/review/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    Flux<Review> createReviews(@RequestBody List<Review> body);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productId=1".
+     *
+     * @param productId Id of the product
+     * @return the reviews of the product
+     */
+    @GetMapping(
+            value = "/review",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
+
+    /**
+     * Sample usage: "curl -X DELETE $HOST:$PORT/review?productId=1".
+     *
+     * @param productId Id of the product
+     */
+    @DeleteMapping(value = "/review")
+    Mono<Void> deleteReviews(@RequestParam(value = "productId", required = true) int productId);
+
+}
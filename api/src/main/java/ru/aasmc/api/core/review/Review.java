@@ -1,5 +1,6 @@
 package ru.aasmc.api.core.review;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 
 @Getter
@@ -15,6 +16,8 @@ public class Review {
     private String author;
     private String subject;
     private String content;
+    // Left out of list responses, they tell it once in the X-Service-Address header
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String serviceAddress;
 
 }
@@ -1,6 +1,8 @@
 package ru.aasmc.api.core.review;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -24,6 +26,48 @@ public interface ReviewService {
             produces = MediaType.APPLICATION_JSON_VALUE)
     Review createReview(@RequestBody Review body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X PUT $HOST:$PORT/review -H 'If-Match: "1"' \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"reviewId":456,"author":"me","subject":"yada, yada, yada","content":"yada, yada, yada"}'
+     *
+     * Creates the review or replaces the one with its productId and reviewId in a single statement.
+     * With If-Match it is only replaced if it exists at that version, or at all for *, else 412 is returned.
+     *
+     * @param ifMatch The version the review is expected to have, as an ETag
+     * @param body A JSON representation of the review
+     * @return A JSON representation of the stored review, its version in the ETag header
+     */
+    @PutMapping(
+            value    = "/review",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<Review> upsertReview(
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody Review body);
+
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X POST $HOST:$PORT/review/batch \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"reviewId":1,"author":"me","subject":"s","content":"c"},
+     *     {"productId":123,"reviewId":2,"author":"me","subject":"s","content":"c"}]'
+     *
+     * All reviews are stored in one transaction, i.e. either all or none of them are created.
+     * Large imports are expected to be sent in chunks of a few thousand reviews.
+     *
+     * @param body A JSON array of the new reviews
+     * @return A JSON representation of the newly created reviews
+     */
+    @PostMapping(
+            value    = "/review/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    List<Review> createReviews(@RequestBody List<Review> body);
+
     /**
      * Sample usage: "curl $HOST:$PORT/review?productId=1".
      *
@@ -35,6 +79,25 @@ public interface ReviewService {
             produces = MediaType.APPLICATION_JSON_VALUE)
     List<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
 
+    /**
+     * Sample usage: "curl '$HOST:$PORT/review/search?query=battery%20life&page=0&size=20'".
+     *
+     * Searches the subject and content of all reviews, words shorter than three characters
+     * and stopwords are not indexed.
+     *
+     * @param query Words to search for
+     * @param page Zero-based page number
+     * @param size Page size
+     * @return the matching reviews of all products, most relevant first
+     */
+    @GetMapping(
+            value = "/review/search",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    List<Review> searchReviews(
+            @RequestParam(value = "query", required = true) String query,
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "20") int size);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/review?productId=1".
      *
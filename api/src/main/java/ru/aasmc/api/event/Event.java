@@ -0,0 +1,49 @@
+package ru.aasmc.api.event;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Domain event emitted by a core service after a write, keyed by the productId it concerns.
+ */
+@Getter
+@ToString
+public class Event<K, T> {
+
+    public enum Type {
+        /**
+         * Carries the entity as stored, by a create or by an upsert that replaced it. Readers replace the entity
+         * they have with the one in the event.
+         */
+        CREATE,
+        DELETE
+    }
+
+    private final Type eventType;
+    private final K key;
+    private final T data;
+    @JsonSerialize(using = ZonedDateTimeSerializer.class)
+    private final ZonedDateTime eventCreatedAt;
+
+    public Event() {
+        this.eventType = null;
+        this.key = null;
+        this.data = null;
+        this.eventCreatedAt = null;
+    }
+
+    public Event(Type eventType, K key, T data) {
+        this(eventType, key, data, ZonedDateTime.now());
+    }
+
+    public Event(Type eventType, K key, T data, ZonedDateTime eventCreatedAt) {
+        this.eventType = eventType;
+        this.key = key;
+        this.data = data;
+        this.eventCreatedAt = eventCreatedAt;
+    }
+}
@@ -0,0 +1,14 @@
+package ru.aasmc.api.event;
+
+/**
+ * Topics of the events emitted by the core services, one per entity type.
+ */
+public final class EventTopics {
+
+    public static final String PRODUCTS = "products";
+    public static final String RECOMMENDATIONS = "recommendations";
+    public static final String REVIEWS = "reviews";
+
+    private EventTopics() {
+    }
+}
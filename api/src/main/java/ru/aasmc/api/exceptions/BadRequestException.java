@@ -14,4 +14,15 @@ public class BadRequestException extends RuntimeException {
     public BadRequestException(Throwable cause) {
         super(cause);
     }
+
+    private BadRequestException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
+    /**
+     * For malformed requests, e.g. an unparsable header, see {@link InvalidInputException#withoutStackTrace}.
+     */
+    public static BadRequestException withoutStackTrace(String message) {
+        return new BadRequestException(message, false);
+    }
 }
\ No newline at end of file
@@ -14,5 +14,17 @@ public class InvalidInputException extends RuntimeException {
     public InvalidInputException(Throwable cause) {
         super(cause);
     }
+
+    private InvalidInputException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
+    /**
+     * For expected client errors, e.g. an invalid id or parameter, that are answered with the message alone:
+     * skips capturing the stack trace, the bulk of the cost of throwing.
+     */
+    public static InvalidInputException withoutStackTrace(String message) {
+        return new InvalidInputException(message, false);
+    }
 }
 
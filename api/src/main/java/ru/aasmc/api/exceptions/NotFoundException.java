@@ -14,4 +14,16 @@ public class NotFoundException extends RuntimeException {
     public NotFoundException(Throwable cause) {
         super(cause);
     }
+
+    private NotFoundException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
+    /**
+     * For expected client errors, e.g. an unknown or invalid id, that are answered with the message alone:
+     * skips capturing the stack trace, the bulk of the cost of throwing.
+     */
+    public static NotFoundException withoutStackTrace(String message) {
+        return new NotFoundException(message, false);
+    }
 }
@@ -0,0 +1,12 @@
+package ru.aasmc.api.exceptions;
+
+/**
+ * A conditional write found the entity missing or at another version than the If-Match header asked for.
+ * An expected outcome of optimistic concurrency, so it is created without a stack trace.
+ */
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message, null, false, false);
+    }
+}
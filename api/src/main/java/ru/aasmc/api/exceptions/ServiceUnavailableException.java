@@ -0,0 +1,19 @@
+package ru.aasmc.api.exceptions;
+
+/**
+ * A service sheds load and asks to be called again after retryAfterSeconds. Thrown whenever requests pile up,
+ * so like the expected client errors it is created without a stack trace.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
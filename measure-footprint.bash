@@ -0,0 +1,108 @@
+#!/usr/bin/env bash
+#
+# Reports the memory use of the microservice containers idle and under a fixed load of composite reads.
+#
+# Sample usage, comparing the default and the low-footprint runtime:
+#
+#   docker-compose up -d && ./measure-footprint.bash
+#   docker-compose -f docker-compose.yml -f docker-compose-low-footprint.yml up -d && ./measure-footprint.bash
+#
+: ${HOST=localhost}
+: ${PORT=8080}
+: ${PROD_ID=1}
+: ${REQUESTS=5000}
+: ${CONCURRENCY=20}
+: ${SERVICES="product recommendation review product-composite"}
+
+declare -A PEAK_MB
+
+function testUrl() {
+  url=$@
+  if $url -ks -f -o /dev/null
+  then
+    return 0
+  else
+    return 1
+  fi;
+}
+
+function waitForService() {
+  url=$@
+  echo -n "Wait for: $url... "
+  n=0
+  until testUrl $url
+  do
+    n=$((n + 1))
+    if [[ $n == 100 ]]
+    then
+      echo " Give up"
+      exit 1
+    else
+      sleep 3
+      echo -n ", retry #$n "
+    fi
+  done
+  echo "DONE, continues..."
+}
+
+# Prints "<service> <MB>" per service, as reported by docker stats
+function memoryUsage() {
+  for service in $SERVICES
+  do
+    local usage=$(docker stats --no-stream --format "{{.MemUsage}}" $(docker-compose ps -q $service) | cut -d/ -f1)
+    echo "$service $(echo $usage | awk '/GiB/ { printf "%d", $1 * 1024; next } /MiB/ { printf "%d", $1; next } { printf "%d", $1 / 1024 }')"
+  done
+}
+
+function samplePeaks() {
+  while true
+  do
+    memoryUsage
+    sleep 1
+  done
+}
+
+function setupTestdata() {
+  body="{\"productId\":$PROD_ID"
+  body+=\
+',"name":"product name","weight":100, "recommendations":[
+      {"recommendationId":1,"author":"author 1","rate":1,"content":"content 1"},
+      {"recommendationId":2,"author":"author 2","rate":2,"content":"content 2"},
+      {"recommendationId":3,"author":"author 3","rate":3,"content":"content 3"}
+  ], "reviews":[
+      {"reviewId":1,"author":"author 1","subject":"subject 1","content":"content 1"},
+      {"reviewId":2,"author":"author 2","subject":"subject 2","content":"content 2"},
+      {"reviewId":3,"author":"author 3","subject":"subject 3","content":"content 3"}
+  ]}'
+  curl -s -o /dev/null -X DELETE http://$HOST:$PORT/product-composite/$PROD_ID
+  curl -s -o /dev/null -X POST http://$HOST:$PORT/product-composite -H "Content-Type: application/json" --data "$body"
+  waitForService curl http://$HOST:$PORT/product-composite/$PROD_ID
+}
+
+waitForService curl http://$HOST:$PORT/actuator/health
+setupTestdata
+
+echo "Idle:"
+IDLE=$(memoryUsage)
+echo "$IDLE"
+
+echo "Sending $REQUESTS requests, $CONCURRENCY at a time..."
+samplePeaks > /tmp/measure-footprint-samples.txt &
+SAMPLER=$!
+START=$(date +%s%N)
+FAILED=$(seq $REQUESTS | xargs -P $CONCURRENCY -I{} curl -s -o /dev/null -w "%{http_code}\n" http://$HOST:$PORT/product-composite/$PROD_ID | grep -vc 200)
+ELAPSED_MS=$(( ($(date +%s%N) - START) / 1000000 ))
+kill $SAMPLER
+wait $SAMPLER 2> /dev/null
+
+while read service mb
+do
+  (( mb > ${PEAK_MB[$service]:-0} )) && PEAK_MB[$service]=$mb
+done < /tmp/measure-footprint-samples.txt
+
+echo "$REQUESTS requests in $ELAPSED_MS ms, $FAILED not answered with 200"
+printf "%-20s %10s %10s\n" "service" "idle MB" "peak MB"
+while read service mb
+do
+  printf "%-20s %10d %10d\n" $service $mb ${PEAK_MB[$service]:-0}
+done <<< "$IDLE"
@@ -0,0 +1,99 @@
+#!/usr/bin/env bash
+#
+# Compares the startup time and memory use of a microservice started as
+#   jar     the Boot fat jar, as in the Docker images
+#   flat    the plain jars of build/startup
+#   cds     the plain jars of build/startup with the AppCDS archive app.jsa
+#   native  the GraalVM native image, if one has been built
+# Each mode is started RUNS times, the time until /actuator/health answers and the resident set size at
+# that point are reported as averages.
+#
+# Sample usage:
+#
+#   ./gradlew :microservices:product-composite-service:build :microservices:product-composite-service:cdsArchive
+#   SERVICE=product-composite-service RUNS=5 ./measure-startup.bash
+#
+# The core services need their databases, pass e.g. APP_ARGS=--spring.profiles.active=docker when measuring
+# them inside the Docker network. JAVA_OPTS defaults to the memory limit of the containers in docker-compose.yml.
+#
+: ${SERVICE=product-composite-service}
+: ${PORT=7000}
+: ${RUNS=3}
+: ${TIMEOUT=120}
+: ${MODES="jar flat cds native"}
+: ${JAVA_OPTS="-XX:MaxRAM=512m"}
+: ${APP_ARGS=""}
+
+SERVICE_DIR=$(cd "$(dirname "$0")/microservices/$SERVICE" && pwd) || exit 1
+
+function startCommand() {
+  local mode=$1
+  case $mode in
+    jar)    echo "java $JAVA_OPTS -jar $(ls $SERVICE_DIR/build/libs/*.jar 2>/dev/null | head -1)";;
+    flat)   echo "java $JAVA_OPTS @app.args";;
+    cds)    echo "java $JAVA_OPTS -XX:SharedArchiveFile=app.jsa @app.args";;
+    native) echo "$SERVICE_DIR/build/native/nativeCompile/$SERVICE --spring.profiles.active=native";;
+  esac
+}
+
+function available() {
+  local mode=$1
+  case $mode in
+    jar)    ls $SERVICE_DIR/build/libs/*.jar > /dev/null 2>&1;;
+    flat)   [ -f $SERVICE_DIR/build/startup/app.args ];;
+    cds)    [ -f $SERVICE_DIR/build/startup/app.jsa ];;
+    native) [ -x $SERVICE_DIR/build/native/nativeCompile/$SERVICE ];;
+    *)      return 1;;
+  esac
+}
+
+function measure() {
+  local mode=$1
+  local command="$(startCommand $mode) --server.port=$PORT $APP_ARGS"
+  local start=$(date +%s%N)
+
+  (cd $SERVICE_DIR/build/startup 2>/dev/null || cd $SERVICE_DIR; exec $command > /tmp/measure-startup-$mode.log 2>&1) &
+  local pid=$!
+
+  local httpCode=000
+  until [ "$httpCode" != "000" ]
+  do
+    if ! kill -0 $pid 2> /dev/null || (( ($(date +%s%N) - start) / 1000000000 > TIMEOUT ))
+    then
+      echo "$mode: did not start, see /tmp/measure-startup-$mode.log" >&2
+      kill $pid 2> /dev/null
+      return 1
+    fi
+    sleep 0.05
+    httpCode=$(curl -s -o /dev/null -w "%{http_code}" http://localhost:$PORT/actuator/health)
+  done
+
+  local startupMs=$(( ($(date +%s%N) - start) / 1000000 ))
+  local rssKb=$(awk '/VmRSS/ { print $2 }' /proc/$pid/status)
+
+  kill $pid
+  wait $pid 2> /dev/null
+  echo "$startupMs $rssKb"
+}
+
+echo "Measuring $SERVICE, $RUNS runs per mode, JAVA_OPTS=$JAVA_OPTS"
+printf "%-8s %12s %10s\n" "mode" "startup ms" "RSS MB"
+
+for mode in $MODES
+do
+  if ! available $mode
+  then
+    printf "%-8s %12s %10s\n" $mode "not built" "-"
+    continue
+  fi
+
+  totalMs=0
+  totalKb=0
+  for run in $(seq $RUNS)
+  do
+    result=$(measure $mode) || exit 1
+    totalMs=$(( totalMs + ${result% *} ))
+    totalKb=$(( totalKb + ${result#* } ))
+  done
+  printf "%-8s %12d %10d\n" $mode $(( totalMs / RUNS )) $(( totalKb / RUNS / 1024 ))
+done
@@ -1,22 +1,53 @@
 package ru.aasmc.microservices.composite.product;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
+import ru.aasmc.microservices.composite.product.services.IdempotencyKeyInterceptor;
+import ru.aasmc.microservices.composite.product.services.LoadSheddingInterceptor;
+import ru.aasmc.microservices.composite.product.services.RetryInterceptor;
+import ru.aasmc.util.cache.NegativeCache;
+import ru.aasmc.util.cache.TwoTierCacheFactory;
+
+import java.time.Duration;
 
 @SpringBootApplication
 @ComponentScan("ru.aasmc")
 public class ProductCompositeServiceApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(ProductCompositeServiceApplication.class, args);
+		SpringApplication application = new SpringApplication(ProductCompositeServiceApplication.class);
+		// Records the startup phases for the startup actuator endpoint and the application.startup.phase metrics
+		application.setApplicationStartup(new BufferingApplicationStartup(4096));
+		application.run(args);
+	}
+
+	// The calls block the event loop thread of the request, the timeouts bound how long a hung service holds it
+	@Bean
+	RestTemplate restTemplate(@Value("${app.http-client.connect-timeout:1s}") Duration connectTimeout,
+							  @Value("${app.http-client.read-timeout:5s}") Duration readTimeout,
+							  IdempotencyKeyInterceptor idempotencyKeyInterceptor,
+							  LoadSheddingInterceptor loadSheddingInterceptor, RetryInterceptor retryInterceptor) {
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout((int) connectTimeout.toMillis());
+		requestFactory.setReadTimeout((int) readTimeout.toMillis());
+		RestTemplate restTemplate = new RestTemplate(requestFactory);
+		// Keys first, they make a POST safe to retry
+		restTemplate.getInterceptors().add(idempotencyKeyInterceptor);
+		// Retries innermost, a service that sheds load is not called again however many attempts are left
+		restTemplate.getInterceptors().add(loadSheddingInterceptor);
+		restTemplate.getInterceptors().add(retryInterceptor);
+		return restTemplate;
 	}
 
 	@Bean
-	RestTemplate restTemplate() {
-		return new RestTemplate();
+	NegativeCache<Integer> productNotFoundCache(TwoTierCacheFactory cacheFactory) {
+		return cacheFactory.createNegative("products");
 	}
 
 }
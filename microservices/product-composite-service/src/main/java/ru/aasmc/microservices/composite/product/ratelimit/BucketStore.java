@@ -0,0 +1,29 @@
+package ru.aasmc.microservices.composite.product.ratelimit;
+
+/**
+ * Keeps a token bucket per key. {@link InMemoryBucketStore} keeps them per instance, a store shared by all
+ * instances, e.g. on Redis, can replace it to enforce the limits across the composite's replicas.
+ */
+public interface BucketStore {
+
+    /**
+     * @param capacity        tokens a full bucket holds, the burst a client may send at once
+     * @param refillPerSecond tokens added to the bucket per second, the sustained rate
+     */
+    record Bandwidth(long capacity, double refillPerSecond) {
+    }
+
+    /**
+     * @param consumed       whether a token was taken, i.e. the request may proceed
+     * @param remaining      tokens left in the bucket
+     * @param nanosToRefill  until the next token is available, 0 when one is
+     * @param nanosToFull    until the bucket is full again
+     */
+    record Probe(boolean consumed, long remaining, long nanosToRefill, long nanosToFull) {
+    }
+
+    /**
+     * Takes a token from the bucket of the key, a missing bucket starts full.
+     */
+    Probe tryConsume(String key, Bandwidth bandwidth);
+}
@@ -0,0 +1,83 @@
+package ru.aasmc.microservices.composite.product.ratelimit;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets on the heap, each one a single AtomicLong updated by compare-and-set, so requests of
+ * different clients never contend and those of one client do not block.
+ *
+ * A bucket is stored as the time it will be full again, the generic cell rate algorithm's theoretical
+ * arrival time: taking a token moves it one emission interval (1 / refillPerSecond) later, and a token can
+ * be taken as long as that stays within capacity intervals from now. A bucket whose time has passed is full.
+ *
+ * Beyond max-buckets the oldest buckets are dropped, in the order they were created. A client whose bucket
+ * was dropped starts with a full one again, so max-buckets has to be well above the number of active clients.
+ */
+public class InMemoryBucketStore implements BucketStore {
+
+    private final Map<String, AtomicLong> fullAt = new ConcurrentHashMap<>();
+    // Keys in the order their buckets were created, each key of fullAt once
+    private final Queue<String> created = new ConcurrentLinkedQueue<>();
+    private final int maxBuckets;
+    private final LongSupplier nanoClock;
+
+    public InMemoryBucketStore(int maxBuckets) {
+        this(maxBuckets, System::nanoTime);
+    }
+
+    InMemoryBucketStore(int maxBuckets, LongSupplier nanoClock) {
+        this.maxBuckets = maxBuckets;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public Probe tryConsume(String key, Bandwidth bandwidth) {
+        long now = nanoClock.getAsLong();
+        long interval = (long) (1_000_000_000L / bandwidth.refillPerSecond());
+        long window = interval * bandwidth.capacity();
+
+        AtomicLong bucket = fullAt.get(key);
+        if (bucket == null) {
+            bucket = create(key, now);
+        }
+
+        while (true) {
+            long current = bucket.get();
+            long start = current - now > 0 ? current : now;
+            long next = start + interval;
+            if (next - now > window) {
+                long nanosToRefill = next - window - now;
+                return new Probe(false, 0, nanosToRefill, start - now);
+            }
+            if (bucket.compareAndSet(current, next)) {
+                return new Probe(true, (window - (next - now)) / interval, 0, next - now);
+            }
+        }
+    }
+
+    private AtomicLong create(String key, long now) {
+        AtomicLong bucket = new AtomicLong(now);
+        AtomicLong existing = fullAt.putIfAbsent(key, bucket);
+        if (existing != null) {
+            return existing;
+        }
+        created.add(key);
+        while (fullAt.size() > maxBuckets) {
+            String oldest = created.poll();
+            if (oldest == null) {
+                break;
+            }
+            fullAt.remove(oldest);
+        }
+        return bucket;
+    }
+
+    int size() {
+        return fullAt.size();
+    }
+}
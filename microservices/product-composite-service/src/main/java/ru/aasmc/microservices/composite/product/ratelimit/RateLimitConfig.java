@@ -0,0 +1,35 @@
+package ru.aasmc.microservices.composite.product.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Rate limits the composite API per client with app.rate-limit.enabled=true, see {@link RateLimitWebFilter}.
+ * The buckets live in an {@link InMemoryBucketStore} unless another {@link BucketStore} bean is defined.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(RateLimitProperties.class)
+@ConditionalOnProperty(prefix = "app.rate-limit", name = "enabled", havingValue = "true")
+public class RateLimitConfig {
+
+    @Bean
+    @ConditionalOnMissingBean
+    BucketStore bucketStore(RateLimitProperties properties) {
+        return new InMemoryBucketStore(properties.getMaxBuckets());
+    }
+
+    @Bean
+    RateLimitWebFilter rateLimitWebFilter(BucketStore bucketStore, RateLimitProperties properties,
+                                          ObjectProvider<MeterRegistry> meterRegistry) {
+        properties.getRoutes().forEach(route -> log.info("Rate limiting {} {} {} per client to {} at once, {}/s",
+                route.getName(), route.getMethods(), route.getPath(), route.getCapacity(), route.getRefillPerSecond()));
+        return new RateLimitWebFilter(bucketStore, properties, meterRegistry.getIfAvailable());
+    }
+}
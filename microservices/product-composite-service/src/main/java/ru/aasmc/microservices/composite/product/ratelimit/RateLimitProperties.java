@@ -0,0 +1,59 @@
+package ru.aasmc.microservices.composite.product.ratelimit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@ConfigurationProperties(prefix = "app.rate-limit")
+@Getter
+@Setter
+public class RateLimitProperties {
+
+    private boolean enabled;
+
+    /**
+     * Header with the API key a client is identified by, clients without one by their address.
+     */
+    private String clientHeader = "X-API-Key";
+
+    /**
+     * The API keys that identify a client, any other key is ignored.
+     */
+    private Set<String> apiKeys = new HashSet<>();
+
+    /**
+     * Addresses of the proxies whose X-Forwarded-For is followed to find the address of a client.
+     */
+    private Set<String> trustedProxies = new HashSet<>();
+
+    /**
+     * Buckets kept before the oldest ones are dropped.
+     */
+    private int maxBuckets = 100_000;
+
+    /**
+     * The first route matching a request applies, requests no route matches are not limited.
+     */
+    private List<Route> routes = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Route {
+        private String name;
+        /**
+         * A path pattern like /product-composite/**.
+         */
+        private String path;
+        /**
+         * Empty matches all methods.
+         */
+        private List<String> methods = new ArrayList<>();
+        private long capacity;
+        private double refillPerSecond;
+    }
+}
@@ -0,0 +1,138 @@
+package ru.aasmc.microservices.composite.product.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import ru.aasmc.util.http.HttpErrorInfoJson;
+
+import java.net.InetSocketAddress;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the requests per client and route with the token buckets of a {@link BucketStore}, created by
+ * {@link RateLimitConfig}. Clients are told their budget with the RateLimit-Limit, RateLimit-Remaining,
+ * RateLimit-Reset and RateLimit-Policy headers of the IETF RateLimit header fields draft, requests beyond
+ * it are answered with 429 and Retry-After.
+ *
+ * A client is identified by its API key if the key is one of app.rate-limit.api-keys, otherwise by its address.
+ * That is the remote address, unless it is one of app.rate-limit.trusted-proxies. Then X-Forwarded-For is
+ * followed from the right, past the trusted proxies, since a client can put anything in front of it.
+ */
+public class RateLimitWebFilter implements WebFilter {
+
+    private record Route(String name, PathPattern path, Set<HttpMethod> methods, BucketStore.Bandwidth bandwidth,
+                         String limit, String policy, Counter rejectedCounter) {
+
+        boolean matches(ServerHttpRequest request, PathContainer path) {
+            return (methods.isEmpty() || methods.contains(request.getMethod())) && this.path.matches(path);
+        }
+    }
+
+    private static final String UNKNOWN_CLIENT = "unknown";
+    private static final String FORWARDED_FOR = "X-Forwarded-For";
+
+    private final BucketStore store;
+    private final String clientHeader;
+    private final Set<String> apiKeys;
+    private final Set<String> trustedProxies;
+    private final List<Route> routes;
+
+    public RateLimitWebFilter(BucketStore store, RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.clientHeader = properties.getClientHeader();
+        this.apiKeys = Set.copyOf(properties.getApiKeys());
+        this.trustedProxies = Set.copyOf(properties.getTrustedProxies());
+        this.routes = properties.getRoutes().stream()
+                .map(route -> toRoute(route, meterRegistry))
+                .toList();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        PathContainer path = request.getPath().pathWithinApplication();
+        Route route = null;
+        for (Route candidate : routes) {
+            if (candidate.matches(request, path)) {
+                route = candidate;
+                break;
+            }
+        }
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+
+        BucketStore.Probe probe = store.tryConsume(route.name() + ":" + client(request), route.bandwidth());
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set("RateLimit-Limit", route.limit());
+        headers.set("RateLimit-Remaining", Long.toString(probe.remaining()));
+        headers.set("RateLimit-Reset", Long.toString(seconds(probe.nanosToFull())));
+        headers.set("RateLimit-Policy", route.policy());
+        if (probe.consumed()) {
+            return chain.filter(exchange);
+        }
+
+        if (route.rejectedCounter() != null) {
+            route.rejectedCounter().increment();
+        }
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(seconds(probe.nanosToRefill())));
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer body = response.bufferFactory().wrap(HttpErrorInfoJson.write(HttpStatus.TOO_MANY_REQUESTS,
+                path.value(), "Rate limit of " + route.name() + " exceeded"));
+        return response.writeWith(Mono.just(body));
+    }
+
+    private String client(ServerHttpRequest request) {
+        String apiKey = request.getHeaders().getFirst(clientHeader);
+        if (apiKey != null && apiKeys.contains(apiKey)) {
+            return "key:" + apiKey;
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return UNKNOWN_CLIENT;
+        }
+        String address = remoteAddress.getAddress().getHostAddress();
+        List<String> forwardedFor = request.getHeaders().getValuesAsList(FORWARDED_FOR);
+        for (int i = forwardedFor.size() - 1; i >= 0 && trustedProxies.contains(address); i--) {
+            address = forwardedFor.get(i);
+        }
+        return "ip:" + address;
+    }
+
+    // Rounded up, a client waiting the number of seconds told finds a token
+    private static long seconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static Route toRoute(RateLimitProperties.Route route, MeterRegistry meterRegistry) {
+        Set<HttpMethod> methods = EnumSet.noneOf(HttpMethod.class);
+        route.getMethods().forEach(method -> methods.add(HttpMethod.valueOf(method.toUpperCase())));
+        long windowSeconds = Math.max(1, Math.round(route.getCapacity() / route.getRefillPerSecond()));
+        return new Route(route.getName(),
+                PathPatternParser.defaultInstance.parse(route.getPath()),
+                methods,
+                new BucketStore.Bandwidth(route.getCapacity(), route.getRefillPerSecond()),
+                Long.toString(route.getCapacity()),
+                route.getCapacity() + ";w=" + windowSeconds,
+                meterRegistry == null ? null
+                        : Counter.builder("rate-limit.rejected").tag("route", route.getName()).register(meterRegistry));
+    }
+}
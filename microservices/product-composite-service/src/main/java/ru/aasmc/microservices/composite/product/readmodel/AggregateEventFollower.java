@@ -0,0 +1,116 @@
+package ru.aasmc.microservices.composite.product.readmodel;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.util.retry.Retry;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.event.Event;
+
+import java.time.Duration;
+
+import static ru.aasmc.api.event.EventTopics.*;
+
+/**
+ * Keeps the {@link AggregateStore} up to date from the /events streams of the core services.
+ *
+ * Events of a productId arrive in the order they were written. The store is cleared once on start,
+ * since it may have been persisted before events it missed. When a stream reconnects only the loads
+ * in flight are kept from being stored, the entries that missed events while it was down age out with
+ * the ttl. A stream only covers the instance it is connected to, with several instances per core service
+ * the ttl bounds staleness as well.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.aggregate-store", name = {"enabled", "follow-events"}, havingValue = "true")
+public class AggregateEventFollower implements SmartLifecycle {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<Event<Integer, JsonNode>>> EVENT_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    private final AggregateStore store;
+    private final WebClient webClient;
+    private final ObjectMapper mapper;
+    private final String productServiceUrl;
+    private final String recommendationServiceUrl;
+    private final String reviewServiceUrl;
+    private Disposable.Composite subscriptions;
+
+    public AggregateEventFollower(
+            AggregateStore store,
+            WebClient.Builder webClientBuilder,
+            ObjectMapper mapper,
+            @Value("${app.product-service.host}") String productServiceHost,
+            @Value("${app.product-service.port}") int productServicePort,
+            @Value("${app.recommendation-service.host}") String recommendationServiceHost,
+            @Value("${app.recommendation-service.port}") int recommendationServicePort,
+            @Value("${app.review-service.host}") String reviewServiceHost,
+            @Value("${app.review-service.port}") int reviewServicePort) {
+        this.store = store;
+        this.webClient = webClientBuilder.build();
+        this.mapper = mapper;
+        productServiceUrl = "http://" + productServiceHost + ":" + productServicePort;
+        recommendationServiceUrl = "http://" + recommendationServiceHost + ":" + recommendationServicePort;
+        reviewServiceUrl = "http://" + reviewServiceHost + ":" + reviewServicePort;
+    }
+
+    @Override
+    public void start() {
+        store.clear();
+        subscriptions = Disposables.composite(
+                follow(productServiceUrl, PRODUCTS, Product.class),
+                follow(recommendationServiceUrl, RECOMMENDATIONS, Recommendation.class),
+                follow(reviewServiceUrl, REVIEWS, Review.class));
+    }
+
+    @Override
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return subscriptions != null && !subscriptions.isDisposed();
+    }
+
+    private Disposable follow(String serviceUrl, String topic, Class<?> dataType) {
+        String url = serviceUrl + "/events?topic=" + topic;
+        return webClient.get().uri(url)
+                .retrieve()
+                .bodyToFlux(EVENT_TYPE)
+                .doOnSubscribe(s -> {
+                    log.debug("Following events on URL: {}", url);
+                    store.bumpGenerations();
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("Lost the event stream of {}, reconnects: {}", url, signal.failure().getMessage())))
+                .repeatWhen(completions -> completions.delayElements(Duration.ofSeconds(1)))
+                .subscribe(sse -> apply(topic, sse.data(), dataType),
+                        ex -> log.error("Stopped following events on URL: {}", url, ex));
+    }
+
+    private void apply(String topic, Event<Integer, JsonNode> event, Class<?> dataType) {
+        if (event == null || event.getKey() == null) {
+            return;
+        }
+        try {
+            Object data = event.getData() == null || event.getData().isNull() ? null : mapper.treeToValue(event.getData(), dataType);
+            store.apply(topic, new Event<>(event.getEventType(), event.getKey(), data, event.getEventCreatedAt()));
+        } catch (Exception ex) {
+            // The entry can no longer be trusted
+            log.warn("Evicts productId {} after an unreadable {} event: {}", event.getKey(), topic, ex.getMessage());
+            store.evict(event.getKey());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.aasmc.microservices.composite.product.readmodel;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.microservices.composite.product.services.ProductCompositeIntegration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * Loads aggregates from the core services into the {@link AggregateStore}.
+ */
+@Slf4j
+@Component
+public class AggregateMaterializer {
+
+    private static final int REBUILD_PAGE_SIZE = 100;
+
+    private final AggregateStore store;
+    private final ProductCompositeIntegration integration;
+    private final int rebuildParallelism;
+
+    public AggregateMaterializer(
+            AggregateStore store,
+            ProductCompositeIntegration integration,
+            @Value("${app.aggregate-store.rebuild-parallelism:8}") int rebuildParallelism) {
+        this.store = store;
+        this.integration = integration;
+        this.rebuildParallelism = rebuildParallelism;
+    }
+
+    /**
+     * Loads and stores the aggregate of an existing product. Empty if the recommendations or reviews
+     * could not be read, a partial aggregate is never stored.
+     */
+    public Optional<MaterializedAggregate> load(Product product) {
+        int productId = product.getProductId();
+        long generation = store.generation(productId);
+        try {
+            MaterializedAggregate aggregate = new MaterializedAggregate(product,
+                    integration.fetchRecommendations(productId), integration.fetchReviews(productId));
+            store.putIfUnchanged(aggregate, generation);
+            return Optional.of(aggregate);
+        } catch (RuntimeException ex) {
+            log.warn("Could not materialize the aggregate of productId {}: {}", productId, ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Replaces the content of the store with the aggregates of all products, loading
+     * app.aggregate-store.rebuild-parallelism of them at a time. Reads fall back to the
+     * core services for products that are not loaded yet.
+     */
+    public Map<String, Object> rebuild() {
+        long start = System.currentTimeMillis();
+        store.clear();
+
+        ExecutorService executor = Executors.newFixedThreadPool(rebuildParallelism);
+        int loaded = 0;
+        int failed = 0;
+        try {
+            List<Product> page;
+            int afterProductId = 0;
+            do {
+                page = integration.getProducts(afterProductId, REBUILD_PAGE_SIZE);
+                List<Future<Optional<MaterializedAggregate>>> loads = new ArrayList<>();
+                for (Product product : page) {
+                    loads.add(executor.submit(() -> load(product)));
+                    afterProductId = product.getProductId();
+                }
+                for (Future<Optional<MaterializedAggregate>> load : loads) {
+                    if (load.get().isPresent()) {
+                        loaded++;
+                    } else {
+                        failed++;
+                    }
+                }
+            } while (page.size() == REBUILD_PAGE_SIZE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Rebuild of the aggregate store was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rebuild of the aggregate store failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long durationMs = System.currentTimeMillis() - start;
+        log.info("Rebuilt the aggregate store with {} products in {} ms, {} failed", loaded, durationMs, failed);
+        return Map.of("loaded", loaded, "failed", failed, "durationMs", durationMs);
+    }
+}
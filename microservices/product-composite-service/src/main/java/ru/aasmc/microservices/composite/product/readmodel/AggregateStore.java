@@ -0,0 +1,237 @@
+package ru.aasmc.microservices.composite.product.readmodel;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.event.Event;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+import static ru.aasmc.api.event.EventTopics.*;
+
+/**
+ * Materialized product aggregates, one entry per productId, so a read takes a single lookup.
+ *
+ * Backed by an H2 MVStore file at app.aggregate-store.path, or kept in memory when the path is blank.
+ * Does nothing unless app.aggregate-store.enabled is set. Entries older than app.aggregate-store.ttl
+ * are treated as missing, which bounds their staleness when no events arrive.
+ *
+ * Every change of a product bumps its generation. An entry loaded from the core services is only stored
+ * if the generation did not change while it was loaded, so a load racing with a write cannot store
+ * what the write replaced. Generations are kept for a fixed number of stripes of productIds, a write
+ * to another product of the same stripe only costs a skipped store.
+ */
+@Slf4j
+@Component
+public class AggregateStore implements DisposableBean {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final boolean enabled;
+    private final long ttlMs;
+    private final MVStore store;
+    private final MVMap<Integer, String> aggregates;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public AggregateStore(
+            @Value("${app.aggregate-store.enabled:false}") boolean enabled,
+            @Value("${app.aggregate-store.path:}") String path,
+            @Value("${app.aggregate-store.ttl:10m}") Duration ttl,
+            @Value("${app.aggregate-store.cache-size-mb:16}") int cacheSizeMb) {
+        this.enabled = enabled;
+        this.ttlMs = ttl.toMillis();
+        if (!enabled) {
+            store = null;
+            aggregates = null;
+            return;
+        }
+
+        MVStore.Builder builder = new MVStore.Builder().cacheSize(cacheSizeMb);
+        if (!path.isBlank()) {
+            File parent = new File(path).getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            builder.fileName(path);
+        }
+        store = builder.open();
+        aggregates = store.openMap("aggregates");
+        log.info("Serving product aggregates from a store of {} entries", aggregates.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<MaterializedAggregate> find(int productId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String json = aggregates.get(productId);
+        MaterializedAggregate aggregate = json == null ? null : read(json);
+        if (aggregate == null || System.currentTimeMillis() - aggregate.getMaterializedAt() > ttlMs) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(aggregate);
+    }
+
+    /**
+     * The generation to pass to {@link #putIfUnchanged} for an entry that is about to be loaded.
+     */
+    public long generation(int productId) {
+        return generations.get(Math.floorMod(productId, GENERATION_STRIPES));
+    }
+
+    public synchronized boolean putIfUnchanged(MaterializedAggregate aggregate, long generation) {
+        int productId = aggregate.getProduct().getProductId();
+        if (generation(productId) != generation) {
+            log.debug("putIfUnchanged: productId {} changed while it was loaded, not stored", productId);
+            return false;
+        }
+        aggregates.put(productId, write(aggregate));
+        return true;
+    }
+
+    public synchronized void evict(int productId) {
+        if (!enabled) {
+            return;
+        }
+        bumpGeneration(productId);
+        aggregates.remove(productId);
+    }
+
+    /**
+     * Drops every entry, e.g. when events may have been missed.
+     */
+    public synchronized void clear() {
+        if (!enabled) {
+            return;
+        }
+        bumpGenerations();
+        aggregates.clear();
+    }
+
+    /**
+     * Keeps every load that is in flight from being stored, the entries already stored stay.
+     */
+    public void bumpGenerations() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+    }
+
+    /**
+     * Applies a write event of a core service to the entry of its product, if there is one.
+     */
+    public synchronized void apply(String topic, Event<Integer, ?> event) {
+        if (!enabled) {
+            return;
+        }
+        int productId = event.getKey();
+        bumpGeneration(productId);
+        String json = aggregates.get(productId);
+        if (json == null) {
+            return;
+        }
+        if (PRODUCTS.equals(topic) && event.getEventType() == Event.Type.DELETE) {
+            aggregates.remove(productId);
+            return;
+        }
+
+        MaterializedAggregate aggregate = read(json);
+        boolean create = event.getEventType() == Event.Type.CREATE;
+        switch (topic) {
+            case PRODUCTS -> aggregate.setProduct((Product) event.getData());
+            case RECOMMENDATIONS -> update(aggregate.getRecommendations(), create, (Recommendation) event.getData(),
+                    r -> r.getRecommendationId() == ((Recommendation) event.getData()).getRecommendationId());
+            case REVIEWS -> update(aggregate.getReviews(), create, (Review) event.getData(),
+                    r -> r.getReviewId() == ((Review) event.getData()).getReviewId());
+            default -> {
+                return;
+            }
+        }
+        aggregates.put(productId, write(aggregate));
+    }
+
+    public long size() {
+        return enabled ? aggregates.size() : 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private void bumpGeneration(int productId) {
+        generations.incrementAndGet(Math.floorMod(productId, GENERATION_STRIPES));
+    }
+
+    private static <T> void update(List<T> list, boolean create, T item, Predicate<T> sameId) {
+        if (!create) {
+            // Core services only delete all entities of a product at once
+            list.clear();
+            return;
+        }
+        int index = indexOf(list, sameId);
+        if (index >= 0) {
+            list.set(index, item);
+        } else {
+            list.add(item);
+        }
+    }
+
+    private static <T> int indexOf(List<T> list, Predicate<T> sameId) {
+        for (int i = 0; i < list.size(); i++) {
+            if (sameId.test(list.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String write(MaterializedAggregate aggregate) {
+        try {
+            return MAPPER.writeValueAsString(aggregate);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize the aggregate of productId " + aggregate.getProduct().getProductId(), e);
+        }
+    }
+
+    private static MaterializedAggregate read(String json) {
+        try {
+            return MAPPER.readValue(json, MaterializedAggregate.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring an unreadable stored aggregate: {}", e.getMessage());
+            return null;
+        }
+    }
+}
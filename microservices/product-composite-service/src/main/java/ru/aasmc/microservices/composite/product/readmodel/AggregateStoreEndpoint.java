@@ -0,0 +1,34 @@
+package ru.aasmc.microservices.composite.product.readmodel;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Statistics of the aggregate store with "curl $HOST:$PORT/actuator/aggregates",
+ * and a rebuild from the core services with "curl -X POST $HOST:$PORT/actuator/aggregates".
+ */
+@Component
+@Endpoint(id = "aggregates")
+@ConditionalOnProperty(prefix = "app.aggregate-store", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class AggregateStoreEndpoint {
+
+    private final AggregateStore store;
+    private final AggregateMaterializer materializer;
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        return Map.of("size", store.size(), "hits", store.getHits(), "misses", store.getMisses());
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        return materializer.rebuild();
+    }
+}
@@ -0,0 +1,218 @@
+package ru.aasmc.microservices.composite.product.readmodel;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the last good recommendations and reviews read per productId, following the
+ * stale-while-revalidate and stale-if-error rules of RFC 5861.
+ *
+ * A result younger than max-age is served as is. Up to stale-while-revalidate past that it is served
+ * while a background refresh replaces it, up to stale-if-error past that it is only served if reading
+ * a new one fails. Older results are dropped. At most max-entries results are kept, least recently used
+ * ones are dropped first.
+ *
+ * Every eviction bumps the generation of its productId, a read that overlapped one is not kept since it
+ * may predate the write. Generations are kept for a fixed number of stripes of productIds, like the ones
+ * of {@link AggregateStore}.
+ */
+@Slf4j
+@Component
+public class LastGoodResults implements DisposableBean {
+
+    public enum Source {
+        RECOMMENDATIONS,
+        REVIEWS
+    }
+
+    /**
+     * @param ageMs how long ago the value was read from its service, 0 if it was read just now
+     * @param stale whether the value is older than max-age
+     */
+    public record Result<V>(V value, long ageMs, boolean stale) {
+    }
+
+    private record Key(Source source, int productId) {
+    }
+
+    private record Entry(Object value, long readAt) {
+    }
+
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final boolean enabled;
+    private final long maxAgeMs;
+    private final long staleWhileRevalidateMs;
+    private final long staleIfErrorMs;
+    private final Map<Key, Entry> entries;
+    private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final Executor refresher;
+    private final LongSupplier clock;
+
+    @Autowired
+    public LastGoodResults(
+            @Value("${app.last-good.enabled:true}") boolean enabled,
+            @Value("${app.last-good.max-age:5s}") Duration maxAge,
+            @Value("${app.last-good.stale-while-revalidate:1m}") Duration staleWhileRevalidate,
+            @Value("${app.last-good.stale-if-error:10m}") Duration staleIfError,
+            @Value("${app.last-good.max-entries:10000}") int maxEntries,
+            @Value("${app.last-good.refresh-threads:4}") int refreshThreads) {
+        this(enabled, maxAge, staleWhileRevalidate, staleIfError, maxEntries,
+                new ThreadPoolExecutor(refreshThreads, refreshThreads, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(maxEntries), runnable -> {
+                            Thread thread = new Thread(runnable, "last-good-refresh");
+                            thread.setDaemon(true);
+                            return thread;
+                        }),
+                System::currentTimeMillis);
+    }
+
+    LastGoodResults(
+            boolean enabled,
+            Duration maxAge,
+            Duration staleWhileRevalidate,
+            Duration staleIfError,
+            int maxEntries,
+            Executor refresher,
+            LongSupplier clock) {
+        this.enabled = enabled;
+        this.maxAgeMs = maxAge.toMillis();
+        this.staleWhileRevalidateMs = staleWhileRevalidate.toMillis();
+        this.staleIfErrorMs = staleIfError.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.refresher = refresher;
+        this.clock = clock;
+    }
+
+    /**
+     * Serves a result of the source for the product, reading it with fetch when there is no usable one.
+     * When fetch fails and nothing can be served instead, the failure is logged and fallback is returned.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Result<V> get(Source source, int productId, Supplier<V> fetch, V fallback) {
+        if (!enabled) {
+            return fetchOrFallback(source, productId, fetch, fallback);
+        }
+
+        Key key = new Key(source, productId);
+        Entry entry = lookup(key);
+        long ageMs = entry != null ? clock.getAsLong() - entry.readAt() : Long.MAX_VALUE;
+
+        if (ageMs <= maxAgeMs) {
+            return new Result<>((V) entry.value(), ageMs, false);
+        }
+        if (ageMs <= maxAgeMs + staleWhileRevalidateMs) {
+            refreshInBackground(key, fetch);
+            return new Result<>((V) entry.value(), ageMs, true);
+        }
+
+        try {
+            return new Result<>(read(key, fetch), 0, false);
+        } catch (RuntimeException ex) {
+            if (ageMs <= maxAgeMs + staleWhileRevalidateMs + staleIfErrorMs) {
+                log.warn("Could not read {} of productId {}, serving a result of {} ms ago: {}",
+                        source, productId, ageMs, ex.getMessage());
+                return new Result<>((V) entry.value(), ageMs, true);
+            }
+            log.warn("Could not read {} of productId {}, serving none: {}", source, productId, ex.getMessage());
+            return new Result<>(fallback, 0, false);
+        }
+    }
+
+    public void evict(int productId) {
+        if (!enabled) {
+            return;
+        }
+        generations.incrementAndGet(stripe(productId));
+        synchronized (entries) {
+            for (Source source : Source.values()) {
+                entries.remove(new Key(source, productId));
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private <V> Result<V> fetchOrFallback(Source source, int productId, Supplier<V> fetch, V fallback) {
+        try {
+            return new Result<>(fetch.get(), 0, false);
+        } catch (RuntimeException ex) {
+            log.warn("Could not read {} of productId {}, serving none: {}", source, productId, ex.getMessage());
+            return new Result<>(fallback, 0, false);
+        }
+    }
+
+    // One refresh per key at a time, a failed one leaves the old result in place
+    private <V> void refreshInBackground(Key key, Supplier<V> fetch) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    read(key, fetch);
+                } catch (RuntimeException ex) {
+                    log.warn("Could not refresh {} of productId {}: {}", key.source(), key.productId(), ex.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            refreshing.remove(key);
+        }
+    }
+
+    private <V> V read(Key key, Supplier<V> fetch) {
+        int stripe = stripe(key.productId());
+        long generation = generations.get(stripe);
+        V value = fetch.get();
+        synchronized (entries) {
+            if (generations.get(stripe) == generation) {
+                entries.put(key, new Entry(value, clock.getAsLong()));
+            }
+        }
+        return value;
+    }
+
+    private static int stripe(int productId) {
+        return Math.floorMod(productId, GENERATION_STRIPES);
+    }
+
+    private Entry lookup(Key key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ru.aasmc.microservices.composite.product.readmodel;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.microservices.composite.product.services.ServiceResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything a product aggregate is built from, as stored by {@link AggregateStore}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class MaterializedAggregate {
+
+    private Product product;
+    private List<Recommendation> recommendations = new ArrayList<>();
+    private List<Review> reviews = new ArrayList<>();
+    private String recommendationAddress;
+    private String reviewAddress;
+    private long materializedAt;
+
+    public MaterializedAggregate(Product product, ServiceResponse<List<Recommendation>> recommendations,
+                                 ServiceResponse<List<Review>> reviews) {
+        this.product = product;
+        this.recommendations = new ArrayList<>(recommendations.body());
+        this.recommendationAddress = recommendations.serviceAddress();
+        this.reviews = new ArrayList<>(reviews.body());
+        this.reviewAddress = reviews.serviceAddress();
+        this.materializedAt = System.currentTimeMillis();
+    }
+}
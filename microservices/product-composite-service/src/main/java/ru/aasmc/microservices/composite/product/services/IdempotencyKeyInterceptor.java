@@ -0,0 +1,36 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import ru.aasmc.util.idempotency.IdempotencyContext;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Passes an Idempotency-Key on to the creates in the core services that are made on behalf of a request with one.
+ * Each call gets a key of its own, derived from the key of the request and the call, so a retry of the request
+ * sends the same keys again and a core service answers it with the entity it created the first time.
+ */
+@Component
+public class IdempotencyKeyInterceptor implements ClientHttpRequestInterceptor {
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        String key = IdempotencyContext.current();
+        if (key != null && request.getMethod() == HttpMethod.POST
+                && !request.getHeaders().containsKey(IdempotencyContext.HEADER)) {
+            URI uri = request.getURI();
+            String target = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+            String fingerprint = IdempotencyContext.fingerprint(request.getMethodValue(), target, body);
+            request.getHeaders().set(IdempotencyContext.HEADER, IdempotencyContext.derive(key, fingerprint));
+        }
+        return execution.execute(request, body);
+    }
+}
@@ -0,0 +1,93 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import ru.aasmc.api.exceptions.ServiceUnavailableException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Treats a core service that sheds load like an open circuit breaker. A 503 answered by a service opens
+ * its circuit for the time of its Retry-After header, and calls to it fail right away with a
+ * {@link ServiceUnavailableException} until then, instead of adding to its load. Recommendations and reviews
+ * fall back to their last good results, a missing product is answered with 503 and the remaining time.
+ */
+@Slf4j
+@Component
+public class LoadSheddingInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+    // Per host and port, when calls may be made again
+    private final Map<String, Long> openUntilMs = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public LoadSheddingInterceptor(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(), System::currentTimeMillis);
+    }
+
+    LoadSheddingInterceptor(MeterRegistry meterRegistry, LongSupplier clock) {
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        String service = request.getURI().getHost() + ":" + request.getURI().getPort();
+        Long openUntil = openUntilMs.get(service);
+        if (openUntil != null) {
+            long remainingMs = openUntil - clock.getAsLong();
+            if (remainingMs > 0) {
+                count(service, "short-circuited");
+                throw new ServiceUnavailableException(service + " is shedding load", (remainingMs + 999) / 1000);
+            }
+            openUntilMs.remove(service, openUntil);
+        }
+
+        ClientHttpResponse response = execution.execute(request, body);
+        if (response.getStatusCode() != HttpStatus.SERVICE_UNAVAILABLE) {
+            return response;
+        }
+
+        long retryAfterSeconds = retryAfterSeconds(response.getHeaders());
+        response.close();
+        openUntilMs.put(service, clock.getAsLong() + retryAfterSeconds * 1000);
+        count(service, "rejected");
+        log.warn("{} sheds load, no calls to it for {} s", service, retryAfterSeconds);
+        throw new ServiceUnavailableException(service + " is shedding load", retryAfterSeconds);
+    }
+
+    private void count(String service, String result) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("composite.load-shedding", "service", service, "result", result).increment();
+        }
+    }
+
+    // Only the delay-seconds form, an HTTP date is taken as the default
+    private static long retryAfterSeconds(HttpHeaders headers) {
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                return Math.max(1, Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return DEFAULT_RETRY_AFTER_SECONDS;
+    }
+}
@@ -5,25 +5,35 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 import ru.aasmc.api.core.product.Product;
 import ru.aasmc.api.core.product.ProductService;
+import ru.aasmc.api.core.recommendation.RatingSummary;
 import ru.aasmc.api.core.recommendation.Recommendation;
 import ru.aasmc.api.core.recommendation.RecommendationService;
 import ru.aasmc.api.core.review.Review;
 import ru.aasmc.api.core.review.ReviewService;
+import ru.aasmc.api.exceptions.BadRequestException;
 import ru.aasmc.api.exceptions.InvalidInputException;
 import ru.aasmc.api.exceptions.NotFoundException;
-import ru.aasmc.util.http.HttpErrorInfo;
+import ru.aasmc.api.exceptions.PreconditionFailedException;
+import ru.aasmc.util.http.HttpErrorInfoJson;
 
-import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.HttpMethod.POST;
+import static org.springframework.http.HttpMethod.PUT;
+import static ru.aasmc.util.http.ServiceAddressWebFilter.SERVICE_ADDRESS_HEADER;
 
 @Slf4j
 @Component
@@ -67,6 +77,19 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         }
     }
 
+    @Override
+    public ResponseEntity<Product> upsertProduct(String ifMatch, Product body) {
+        try {
+            String url = productServiceUrl;
+            log.debug("Will put a product to URL: {}", url);
+            ResponseEntity<Product> product = restTemplate.exchange(url, PUT, withIfMatch(ifMatch, body), Product.class);
+            log.debug("Upserted a product with id: {}", body.getProductId());
+            return product;
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
+
     @Override
     public Product getProduct(int productId) {
         try {
@@ -74,7 +97,9 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
             log.debug("Will call the getProduct API on URL: {}", url);
 
             Product product = restTemplate.getForObject(url, Product.class);
-            log.debug("Found a product with id: {}", product.getProductId());
+            if (log.isDebugEnabled()) {
+                log.debug("Found a product with id: {}", product.getProductId());
+            }
 
             return product;
 
@@ -83,6 +108,26 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         }
     }
 
+    @Override
+    public List<Product> getProducts(int afterProductId, int limit) {
+        try {
+            String url = productServiceUrl + "?afterProductId=" + afterProductId + "&limit=" + limit;
+            log.debug("Will call the getProducts API on URL: {}", url);
+
+            List<Product> products = restTemplate
+                    .exchange(url, GET, null, new ParameterizedTypeReference<List<Product>>() {})
+                    .getBody();
+            if (log.isDebugEnabled()) {
+                log.debug("Found {} products after productId: {}", products.size(), afterProductId);
+            }
+
+            return products;
+
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
+
     @Override
     public void deleteProduct(int productId) {
         try {
@@ -112,25 +157,101 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         }
     }
 
+    @Override
+    public ResponseEntity<Recommendation> upsertRecommendation(String ifMatch, Recommendation body) {
+        try {
+            String url = recommendationServiceUrl;
+            log.debug("Will put a recommendation to URL: {}", url);
+
+            ResponseEntity<Recommendation> recommendation = restTemplate.exchange(url, PUT, withIfMatch(ifMatch, body), Recommendation.class);
+            log.debug("Upserted a recommendation with id: {}", body.getProductId());
+
+            return recommendation;
+
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
+
     @Override
     public List<Recommendation> getRecommendations(int productId) {
+        try {
+            return fetchRecommendations(productId).body();
+        } catch (Exception ex) {
+            log.warn("Got an exception while requesting recommendations, return zero recommendations: {}", ex.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Like {@link #getRecommendations(int)}, but fails instead of returning zero recommendations.
+     */
+    public ServiceResponse<List<Recommendation>> fetchRecommendations(int productId) {
         try {
             String url = recommendationServiceUrl + "?productId=" + productId;
 
             log.debug("Will call the getRecommendations API on URL: {}", url);
-            List<Recommendation> recommendations = restTemplate
-                    .exchange(url, GET, null, new ParameterizedTypeReference<List<Recommendation>>() {})
-                    .getBody();
+            ServiceResponse<List<Recommendation>> recommendations = toServiceResponse(restTemplate
+                    .exchange(url, GET, null, new ParameterizedTypeReference<List<Recommendation>>() {}));
 
-            log.debug("Found {} recommendations for a product with id: {}", recommendations.size(), productId);
+            if (log.isDebugEnabled()) {
+                log.debug("Found {} recommendations for a product with id: {}", recommendations.body().size(), productId);
+            }
             return recommendations;
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
 
+    @Override
+    public List<Recommendation> getTopRecommendations(int productId, int limit, String orderBy) {
+        try {
+            return fetchTopRecommendations(productId, limit, orderBy).body();
         } catch (Exception ex) {
-            log.warn("Got an exception while requesting recommendations, return zero recommendations: {}", ex.getMessage());
+            log.warn("Got an exception while requesting top recommendations, return zero recommendations: {}", ex.getMessage());
             return new ArrayList<>();
         }
     }
 
+    /**
+     * Like {@link #getTopRecommendations(int, int, String)}, but fails instead of returning zero recommendations.
+     */
+    public ServiceResponse<List<Recommendation>> fetchTopRecommendations(int productId, int limit, String orderBy) {
+        try {
+            String url = recommendationServiceUrl + "/top?productId=" + productId + "&limit=" + limit + "&orderBy=" + orderBy;
+
+            log.debug("Will call the getTopRecommendations API on URL: {}", url);
+            ServiceResponse<List<Recommendation>> recommendations = toServiceResponse(restTemplate
+                    .exchange(url, GET, null, new ParameterizedTypeReference<List<Recommendation>>() {}));
+
+            if (log.isDebugEnabled()) {
+                log.debug("Found {} top recommendations for a product with id: {}", recommendations.body().size(), productId);
+            }
+            return recommendations;
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
+
+    @Override
+    public RatingSummary getRatingSummary(int productId) {
+        try {
+            String url = recommendationServiceUrl + "/summary?productId=" + productId;
+
+            log.debug("Will call the getRatingSummary API on URL: {}", url);
+            RatingSummary ratingSummary = restTemplate.getForObject(url, RatingSummary.class);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Found a rating summary of {} recommendations for a product with id: {}", ratingSummary.getCount(), productId);
+            }
+            return ratingSummary;
+
+        } catch (Exception ex) {
+            log.warn("Got an exception while requesting a rating summary, return no summary: {}", ex.getMessage());
+            return null;
+        }
+    }
+
     @Override
     public void deleteRecommendations(int productId) {
         try {
@@ -160,22 +281,93 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         }
     }
 
+    @Override
+    public ResponseEntity<Review> upsertReview(String ifMatch, Review body) {
+        try {
+            String url = reviewServiceUrl;
+            log.debug("Will put a review to URL: {}", url);
+
+            ResponseEntity<Review> review = restTemplate.exchange(url, PUT, withIfMatch(ifMatch, body), Review.class);
+            log.debug("Upserted a review with id: {}", body.getProductId());
+
+            return review;
+
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
+
+    @Override
+    public List<Review> createReviews(List<Review> body) {
+        try {
+            String url = reviewServiceUrl + "/batch";
+            log.debug("Will post {} new reviews to URL: {}", body.size(), url);
+
+            List<Review> reviews = restTemplate
+                    .exchange(url, POST, new HttpEntity<>(body), new ParameterizedTypeReference<List<Review>>() {})
+                    .getBody();
+            log.debug("Created {} reviews", reviews.size());
+
+            return reviews;
+
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
+
     @Override
     public List<Review> getReviews(int productId) {
+        try {
+            return fetchReviews(productId).body();
+        } catch (Exception ex) {
+            log.warn("Got an exception while requesting reviews, return zero reviews: {}", ex.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Like {@link #getReviews(int)}, but fails instead of returning zero reviews.
+     */
+    public ServiceResponse<List<Review>> fetchReviews(int productId) {
         try {
             String url = reviewServiceUrl + "?productId=" + productId;
 
             log.debug("Will call the getReviews API on URL: {}", url);
+            ServiceResponse<List<Review>> reviews = toServiceResponse(restTemplate
+                    .exchange(url, GET, null, new ParameterizedTypeReference<List<Review>>() {}));
+
+            if (log.isDebugEnabled()) {
+                log.debug("Found {} reviews for a product with id: {}", reviews.body().size(), productId);
+            }
+            return reviews;
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
+        }
+    }
+
+    @Override
+    public List<Review> searchReviews(String query, int page, int size) {
+        try {
+            URI url = UriComponentsBuilder.fromHttpUrl(reviewServiceUrl + "/search")
+                    .queryParam("query", query)
+                    .queryParam("page", page)
+                    .queryParam("size", size)
+                    .encode()
+                    .build()
+                    .toUri();
+
+            log.debug("Will call the searchReviews API on URL: {}", url);
             List<Review> reviews = restTemplate
                     .exchange(url, GET, null, new ParameterizedTypeReference<List<Review>>() {})
                     .getBody();
 
-            log.debug("Found {} reviews for a product with id: {}", reviews.size(), productId);
+            if (log.isDebugEnabled()) {
+                log.debug("Found {} reviews matching the query", reviews.size());
+            }
             return reviews;
 
-        } catch (Exception ex) {
-            log.warn("Got an exception while requesting reviews, return zero reviews: {}", ex.getMessage());
-            return new ArrayList<>();
+        } catch (HttpClientErrorException ex) {
+            throw handleHttpClientException(ex);
         }
     }
 
@@ -192,13 +384,31 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         }
     }
 
+    private static <T> HttpEntity<T> withIfMatch(String ifMatch, T body) {
+        HttpHeaders headers = new HttpHeaders();
+        if (ifMatch != null) {
+            headers.set(HttpHeaders.IF_MATCH, ifMatch);
+        }
+        return new HttpEntity<>(body, headers);
+    }
+
+    private static <T> ServiceResponse<T> toServiceResponse(ResponseEntity<T> response) {
+        return new ServiceResponse<>(response.getBody(), response.getHeaders().getFirst(SERVICE_ADDRESS_HEADER));
+    }
+
     private RuntimeException handleHttpClientException(HttpClientErrorException ex) {
         switch (ex.getStatusCode()) {
+            case BAD_REQUEST -> {
+                return BadRequestException.withoutStackTrace(getErrorMessage(ex));
+            }
             case NOT_FOUND -> {
-                return new NotFoundException(getErrorMessage(ex));
+                return NotFoundException.withoutStackTrace(getErrorMessage(ex));
             }
             case UNPROCESSABLE_ENTITY -> {
-                return new InvalidInputException(getErrorMessage(ex));
+                return InvalidInputException.withoutStackTrace(getErrorMessage(ex));
+            }
+            case PRECONDITION_FAILED -> {
+                return new PreconditionFailedException(getErrorMessage(ex));
             }
             default -> {
                 log.warn("Got an unexpected HTTP error: {}, will rethrow it", ex.getStatusCode());
@@ -208,12 +418,9 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         }
     }
 
+    // Reads up to the message only, instead of binding the whole HttpErrorInfo
     private String getErrorMessage(HttpClientErrorException ex) {
-        try {
-            return mapper.readValue(ex.getResponseBodyAsString(), HttpErrorInfo.class).getMessage();
-        } catch (IOException ioex) {
-            return ex.getMessage();
-        }
+        return HttpErrorInfoJson.readMessage(mapper.getFactory(), ex.getResponseBodyAsByteArray(), ex.getMessage());
     }
 
 }
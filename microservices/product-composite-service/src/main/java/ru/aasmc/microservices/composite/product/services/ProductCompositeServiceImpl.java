@@ -2,24 +2,45 @@ package ru.aasmc.microservices.composite.product.services;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import ru.aasmc.api.composite.product.*;
 import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.RatingSummary;
 import ru.aasmc.api.core.recommendation.Recommendation;
 import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.exceptions.InvalidInputException;
 import ru.aasmc.api.exceptions.NotFoundException;
+import ru.aasmc.microservices.composite.product.readmodel.AggregateMaterializer;
+import ru.aasmc.microservices.composite.product.readmodel.AggregateStore;
+import ru.aasmc.microservices.composite.product.readmodel.LastGoodResults;
+import ru.aasmc.microservices.composite.product.writes.AsyncWriteService;
+import ru.aasmc.util.cache.NegativeCache;
 import ru.aasmc.util.http.ServiceUtil;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import static ru.aasmc.microservices.composite.product.readmodel.LastGoodResults.Source.RECOMMENDATIONS;
+import static ru.aasmc.microservices.composite.product.readmodel.LastGoodResults.Source.REVIEWS;
+
 @RequiredArgsConstructor
 @RestController
 @Slf4j
 public class ProductCompositeServiceImpl implements ProductCompositeService {
 
+    static final String STALE_PARTS_HEADER = "X-Stale-Parts";
+
     private final ServiceUtil serviceUtil;
     private final ProductCompositeIntegration integration;
+    private final AsyncWriteService asyncWriteService;
+    private final AggregateStore aggregateStore;
+    private final AggregateMaterializer aggregateMaterializer;
+    private final NegativeCache<Integer> productNotFoundCache;
+    private final LastGoodResults lastGoodResults;
 
     @Override
     public void createProduct(ProductAggregate body) {
@@ -42,16 +63,16 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
                 });
             }
 
-            if (body.getReviews() != null) {
-                body.getReviews().forEach(r -> {
-                    Review review = new Review(body.getProductId(),
-                            r.getReviewId(),
-                            r.getAuthor(),
-                            r.getSubject(),
-                            r.getContent(),
-                            null);
-                    integration.createReview(review);
-                });
+            if (body.getReviews() != null && !body.getReviews().isEmpty()) {
+                List<Review> reviews = body.getReviews().stream()
+                        .map(r -> new Review(body.getProductId(),
+                                r.getReviewId(),
+                                r.getAuthor(),
+                                r.getSubject(),
+                                r.getContent(),
+                                null))
+                        .collect(Collectors.toList());
+                integration.createReviews(reviews);
             }
 
             log.debug("createCompositeProduct: composite entities created for productId: {}", body.getProductId());
@@ -59,25 +80,72 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         } catch (RuntimeException re) {
             log.warn("createCompositeProduct failed", re);
             throw re;
+        } finally {
+            aggregateStore.evict(body.getProductId());
+            productNotFoundCache.invalidate(body.getProductId());
+            lastGoodResults.evict(body.getProductId());
         }
     }
 
     @Override
-    public ProductAggregate getProduct(int productId) {
-        log.debug("getCompositeProduct: lookup a product aggregate for productId: {}", productId);
+    public WriteStatus createProductAsync(ProductAggregate body) {
+        log.debug("createCompositeProductAsync: enqueues a new composite entity for productId: {}", body.getProductId());
+        return asyncWriteService.submitCreate(body);
+    }
+
+    @Override
+    public ResponseEntity<ProductAggregate> getProduct(int productId, boolean includeRatingSummary, Integer recommendationLimit) {
+        if (log.isDebugEnabled()) {
+            log.debug("getCompositeProduct: lookup a product aggregate for productId: {}", productId);
+        }
 
-        Product product = integration.getProduct(productId);
-        if (product == null) {
-            throw new NotFoundException("No product found for productId: " + productId);
+        // Stored aggregates hold all recommendations, a limited selection is left to the recommendation service
+        if (recommendationLimit == null && aggregateStore.isEnabled()) {
+            ProductAggregate aggregate = aggregateStore.find(productId)
+                    .or(() -> aggregateMaterializer.load(getExistingProduct(productId)))
+                    .map(m -> createProductAggregate(m.getProduct(),
+                            new ServiceResponse<>(m.getRecommendations(), m.getRecommendationAddress()),
+                            new ServiceResponse<>(m.getReviews(), m.getReviewAddress()),
+                            includeRatingSummary ? summarize(productId, m.getRecommendations()) : null,
+                            serviceUtil.getServiceAddress()))
+                    .orElse(null);
+            if (aggregate != null) {
+                return ResponseEntity.ok(aggregate);
+            }
         }
 
-        List<Recommendation> recommendations = integration.getRecommendations(productId);
+        Product product = getExistingProduct(productId);
 
-        List<Review> reviews = integration.getReviews(productId);
+        // Recommendations and reviews may be served from the last good results, a selection is always read
+        LastGoodResults.Result<ServiceResponse<List<Recommendation>>> recommendations = (recommendationLimit == null)
+                ? lastGoodResults.get(RECOMMENDATIONS, productId, () -> integration.fetchRecommendations(productId), noResponse())
+                : new LastGoodResults.Result<>(getTopRecommendations(productId, recommendationLimit), 0, false);
 
-        log.debug("getCompositeProduct: aggregate entity found for productId: {}", productId);
+        LastGoodResults.Result<ServiceResponse<List<Review>>> reviews =
+                lastGoodResults.get(REVIEWS, productId, () -> integration.fetchReviews(productId), noResponse());
 
-        return createProductAggregate(product, recommendations, reviews, serviceUtil.getServiceAddress());
+        RatingSummary ratingSummary = includeRatingSummary ? integration.getRatingSummary(productId) : null;
+
+        if (log.isDebugEnabled()) {
+            log.debug("getCompositeProduct: aggregate entity found for productId: {}", productId);
+        }
+
+        ProductAggregate aggregate = createProductAggregate(product, recommendations.value(), reviews.value(),
+                ratingSummary, serviceUtil.getServiceAddress());
+        return ResponseEntity.ok()
+                .headers(freshnessHeaders(Map.of("recommendations", recommendations, "reviews", reviews)))
+                .body(aggregate);
+    }
+
+    @Override
+    public List<ProductSummary> getProducts(int afterProductId, int limit) {
+        if (log.isDebugEnabled()) {
+            log.debug("getCompositeProducts: lookup {} products after productId: {}", limit, afterProductId);
+        }
+
+        return integration.getProducts(afterProductId, limit).stream()
+                .map(p -> new ProductSummary(p.getProductId(), p.getName(), p.getWeight()))
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -90,16 +158,94 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
         integration.deleteReviews(productId);
 
+        aggregateStore.evict(productId);
+        lastGoodResults.evict(productId);
+
         log.debug("deleteCompositeProduct: aggregate entities deleted for productId: {}", productId);
 
     }
 
+    @Override
+    public WriteStatus deleteProductAsync(int productId) {
+        log.debug("deleteCompositeProductAsync: enqueues the deletion of a product aggregate for productId: {}", productId);
+        return asyncWriteService.submitDelete(productId);
+    }
+
+    @Override
+    public WriteStatus getWriteStatus(String trackingId) {
+        return asyncWriteService.getStatus(trackingId);
+    }
+
+    private ServiceResponse<List<Recommendation>> getTopRecommendations(int productId, int limit) {
+        try {
+            return integration.fetchTopRecommendations(productId, limit, "rating");
+        } catch (InvalidInputException ex) {
+            // An invalid limit is the client's error, not an outage to hide
+            throw ex;
+        } catch (RuntimeException ex) {
+            log.warn("Could not read the top recommendations of productId {}, serving none: {}", productId, ex.getMessage());
+            return noResponse();
+        }
+    }
+
+    private static <T> ServiceResponse<List<T>> noResponse() {
+        return new ServiceResponse<>(new ArrayList<>(), null);
+    }
+
+    // Unknown ids are remembered for a while, so repeated lookups of them do not reach the product service
+    private Product getExistingProduct(int productId) {
+        String notFound = productNotFoundCache.getMissing(productId);
+        if (notFound != null) {
+            throw NotFoundException.withoutStackTrace(notFound);
+        }
+
+        try {
+            Product product = integration.getProduct(productId);
+            if (product == null) {
+                throw NotFoundException.withoutStackTrace("No product found for productId: " + productId);
+            }
+            return product;
+        } catch (NotFoundException ex) {
+            productNotFoundCache.recordMissing(productId, ex.getMessage());
+            throw ex;
+        }
+    }
+
+    // Age is the age of the oldest part read earlier, the parts older than their max-age are listed separately
+    private HttpHeaders freshnessHeaders(Map<String, LastGoodResults.Result<?>> parts) {
+        HttpHeaders headers = new HttpHeaders();
+        long maxAgeMs = parts.values().stream().mapToLong(LastGoodResults.Result::ageMs).max().orElse(0);
+        if (maxAgeMs > 0) {
+            headers.set(HttpHeaders.AGE, Long.toString(maxAgeMs / 1000));
+        }
+        String staleParts = parts.entrySet().stream()
+                .filter(part -> part.getValue().stale())
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.joining(", "));
+        if (!staleParts.isEmpty()) {
+            headers.set(STALE_PARTS_HEADER, staleParts);
+        }
+        return headers;
+    }
+
+    private RatingSummary summarize(int productId, List<Recommendation> recommendations) {
+        Map<Integer, Long> histogram = recommendations.stream()
+                .collect(Collectors.groupingBy(Recommendation::getRate, Collectors.counting()));
+        double averageRate = recommendations.stream().mapToInt(Recommendation::getRate).average().orElse(0);
+        return new RatingSummary(productId, recommendations.size(), averageRate, histogram, null);
+    }
+
     private ProductAggregate createProductAggregate(
             Product product,
-            List<Recommendation> recommendations,
-            List<Review> reviews,
+            ServiceResponse<List<Recommendation>> recommendationResponse,
+            ServiceResponse<List<Review>> reviewResponse,
+            RatingSummary ratingSummary,
             String serviceAddress) {
 
+        List<Recommendation> recommendations = recommendationResponse.body();
+        List<Review> reviews = reviewResponse.body();
+
         // 1. Setup product info
         int productId = product.getProductId();
         String name = product.getName();
@@ -117,12 +263,16 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
                         .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
                         .collect(Collectors.toList());
 
-        // 4. Create info regarding the involved microservices addresses
+        // 4. Copy the rating summary, if requested and available
+        ProductRatingSummary productRatingSummary = (ratingSummary == null) ? null :
+                new ProductRatingSummary(ratingSummary.getCount(), ratingSummary.getAverageRate(), ratingSummary.getHistogram());
+
+        // 5. Create info regarding the involved microservices addresses
         String productAddress = product.getServiceAddress();
-        String reviewAddress = (reviews != null && reviews.size() > 0) ? reviews.get(0).getServiceAddress() : "";
-        String recommendationAddress = (recommendations != null && recommendations.size() > 0) ? recommendations.get(0).getServiceAddress() : "";
+        String reviewAddress = (reviewResponse.serviceAddress() != null) ? reviewResponse.serviceAddress() : "";
+        String recommendationAddress = (recommendationResponse.serviceAddress() != null) ? recommendationResponse.serviceAddress() : "";
         ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
 
-        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses, productRatingSummary);
     }
 }
@@ -0,0 +1,44 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the retries of all downstream calls to a share of the calls made, so that retries cannot multiply
+ * the load on services that are down. Every first attempt deposits ratio of a retry, every retry withdraws a
+ * whole one, and the balance is capped at maxRetries, which is also what it starts with.
+ */
+public class RetryBudget {
+
+    // Balance in thousandths of a retry
+    private static final long RETRY = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    public RetryBudget(double ratio, int maxRetries) {
+        this.deposit = Math.round(ratio * RETRY);
+        this.maxBalance = maxRetries * RETRY;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    public void recordRequest() {
+        balance.accumulateAndGet(deposit, (current, add) -> Math.min(maxBalance, current + add));
+    }
+
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < RETRY) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - RETRY)) {
+                return true;
+            }
+        }
+    }
+
+    public double getAvailableRetries() {
+        return (double) balance.get() / RETRY;
+    }
+}
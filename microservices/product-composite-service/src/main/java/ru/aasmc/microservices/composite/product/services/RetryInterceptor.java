@@ -0,0 +1,142 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import ru.aasmc.util.idempotency.IdempotencyContext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries the idempotent calls to the core services, GETs, DELETEs and POSTs with an Idempotency-Key, that fail
+ * with an I/O error such as a reset or refused connection. Error responses are not retried, a 503 of a service that sheds load is
+ * handled by {@link LoadSheddingInterceptor}. Attempts are spaced by an exponential backoff with full jitter,
+ * a random delay up to initial-backoff * 2^(attempt - 1), capped at max-backoff. Retries are only made while
+ * the {@link RetryBudget} shared by all calls allows them.
+ *
+ * The calls block the thread of the request, a Netty event loop thread, and so does the backoff. A longer
+ * max-backoff than {@link #MAX_BACKOFF} is therefore lowered to it, which keeps a call from holding its event loop
+ * for more than max-attempts * (app.http-client.connect-timeout + read-timeout + 200ms).
+ *
+ * Counts retries in composite.retries, tagged with the service and whether the retry was made or given up
+ * on because of the budget or max-attempts.
+ */
+@Slf4j
+@Component
+public class RetryInterceptor implements ClientHttpRequestInterceptor {
+
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    static final Duration MAX_BACKOFF = Duration.ofMillis(200);
+
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = Set.of(HttpMethod.GET, HttpMethod.DELETE);
+
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final RetryBudget budget;
+    private final MeterRegistry meterRegistry;
+    private final Sleeper sleeper;
+
+    @Autowired
+    public RetryInterceptor(
+            @Value("${app.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.retry.initial-backoff:20ms}") Duration initialBackoff,
+            @Value("${app.retry.max-backoff:100ms}") Duration maxBackoff,
+            @Value("${app.retry.budget.ratio:0.1}") double budgetRatio,
+            @Value("${app.retry.budget.max-retries:20}") int budgetMaxRetries,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this(maxAttempts, initialBackoff, maxBackoff, new RetryBudget(budgetRatio, budgetMaxRetries),
+                meterRegistry.getIfAvailable(), Thread::sleep);
+    }
+
+    RetryInterceptor(int maxAttempts, Duration initialBackoff, Duration maxBackoff, RetryBudget budget,
+                     MeterRegistry meterRegistry, Sleeper sleeper) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoff.toMillis();
+        if (maxBackoff.compareTo(MAX_BACKOFF) > 0) {
+            log.warn("app.retry.max-backoff {} is lowered to {}, backoffs block the event loop", maxBackoff, MAX_BACKOFF);
+            maxBackoff = MAX_BACKOFF;
+        }
+        this.maxBackoffMs = maxBackoff.toMillis();
+        this.budget = budget;
+        this.meterRegistry = meterRegistry;
+        this.sleeper = sleeper;
+        if (meterRegistry != null) {
+            Gauge.builder("composite.retries.budget", budget, RetryBudget::getAvailableRetries).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        if (!isIdempotent(request)) {
+            return execution.execute(request, body);
+        }
+
+        budget.recordRequest();
+        String service = request.getURI().getHost() + ":" + request.getURI().getPort();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return execution.execute(request, body);
+            } catch (IOException ex) {
+                if (attempt >= maxAttempts) {
+                    count(service, "attempts-exhausted");
+                    throw ex;
+                }
+                if (!budget.tryWithdraw()) {
+                    count(service, "budget-exhausted");
+                    throw ex;
+                }
+                count(service, "retried");
+                long backoffMs = backoffMs(attempt);
+                log.debug("Attempt {} of {} {} failed, retries in {} ms: {}",
+                        attempt, request.getMethod(), request.getURI(), backoffMs, ex.toString());
+                sleep(backoffMs, ex);
+            }
+        }
+    }
+
+    private static boolean isIdempotent(HttpRequest request) {
+        return IDEMPOTENT_METHODS.contains(request.getMethod())
+                || request.getHeaders().containsKey(IdempotencyContext.HEADER);
+    }
+
+    private long backoffMs(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long millis, IOException failure) throws IOException {
+        try {
+            sleeper.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while backing off");
+            interrupted.addSuppressed(failure);
+            throw interrupted;
+        }
+    }
+
+    private void count(String service, String result) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("composite.retries", "service", service, "result", result).increment();
+        }
+    }
+}
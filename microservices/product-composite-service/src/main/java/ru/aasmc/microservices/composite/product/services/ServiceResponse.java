@@ -0,0 +1,7 @@
+package ru.aasmc.microservices.composite.product.services;
+
+/**
+ * The body of a core service response with the address of the instance that sent it, from its X-Service-Address header.
+ */
+public record ServiceResponse<T>(T body, String serviceAddress) {
+}
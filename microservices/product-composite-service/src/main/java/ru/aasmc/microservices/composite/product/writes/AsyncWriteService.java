@@ -0,0 +1,314 @@
+package ru.aasmc.microservices.composite.product.writes;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.aasmc.api.composite.product.ProductAggregate;
+import ru.aasmc.api.composite.product.WriteStatus;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.exceptions.InvalidInputException;
+import ru.aasmc.api.exceptions.NotFoundException;
+import ru.aasmc.microservices.composite.product.readmodel.AggregateStore;
+import ru.aasmc.microservices.composite.product.readmodel.LastGoodResults;
+import ru.aasmc.microservices.composite.product.services.ProductCompositeIntegration;
+import ru.aasmc.util.cache.NegativeCache;
+import ru.aasmc.util.idempotency.IdempotencyContext;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static ru.aasmc.microservices.composite.product.writes.WriteCommand.Type.*;
+
+/**
+ * Accepts composite writes as commands on the {@link WriteQueueStore} and applies them in the background.
+ *
+ * Each core service has its own consumer thread, so a slow service only delays its own commands,
+ * and applies its commands in the order they were accepted. Failures other than invalid input are
+ * retried with exponential backoff up to app.async-writes.max-attempts times. The creates carry an Idempotency-Key
+ * derived from the trackingId and the command, so a core service answers a repeated create with the entity it
+ * created the first time. A rejected create still counts as applied when the core service already stores the
+ * very same entity, which makes redelivery harmless once the core service has forgotten the key.
+ *
+ * A review batch that fails falls back to creating its reviews one by one, all of them within
+ * app.async-writes.batch-fallback-timeout. Reviews it does not get to are reported as failed.
+ */
+@Slf4j
+@Component
+public class AsyncWriteService implements SmartLifecycle {
+
+    private static final long POLL_TIMEOUT_MS = 1000;
+
+    private final WriteQueueStore store;
+    private final ProductCompositeIntegration integration;
+    private final AggregateStore aggregateStore;
+    private final NegativeCache<Integer> productNotFoundCache;
+    private final LastGoodResults lastGoodResults;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final int reviewBatchSize;
+    private final Duration batchFallbackTimeout;
+
+    private volatile boolean running;
+    private ExecutorService consumers;
+
+    public AsyncWriteService(
+            WriteQueueStore store,
+            ProductCompositeIntegration integration,
+            AggregateStore aggregateStore,
+            NegativeCache<Integer> productNotFoundCache,
+            LastGoodResults lastGoodResults,
+            @Value("${app.async-writes.max-attempts:10}") int maxAttempts,
+            @Value("${app.async-writes.initial-backoff:100ms}") Duration initialBackoff,
+            @Value("${app.async-writes.max-backoff:10s}") Duration maxBackoff,
+            @Value("${app.async-writes.review-batch-size:50}") int reviewBatchSize,
+            @Value("${app.async-writes.batch-fallback-timeout:30s}") Duration batchFallbackTimeout) {
+        this.store = store;
+        this.integration = integration;
+        this.aggregateStore = aggregateStore;
+        this.productNotFoundCache = productNotFoundCache;
+        this.lastGoodResults = lastGoodResults;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.reviewBatchSize = reviewBatchSize;
+        this.batchFallbackTimeout = batchFallbackTimeout;
+    }
+
+    public WriteStatus submitCreate(ProductAggregate body) {
+        int productId = body.getProductId();
+        if (productId < 1) {
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+        }
+
+        String trackingId = UUID.randomUUID().toString();
+        List<WriteCommand> commands = new ArrayList<>();
+
+        WriteCommand createProduct = new WriteCommand(trackingId, CREATE_PRODUCT, productId);
+        createProduct.setProduct(new Product(productId, body.getName(), body.getWeight(), null));
+        commands.add(createProduct);
+
+        if (body.getRecommendations() != null) {
+            body.getRecommendations().forEach(r -> {
+                WriteCommand command = new WriteCommand(trackingId, CREATE_RECOMMENDATION, productId);
+                command.setRecommendation(new Recommendation(productId, r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null));
+                commands.add(command);
+            });
+        }
+
+        if (body.getReviews() != null) {
+            body.getReviews().forEach(r -> {
+                WriteCommand command = new WriteCommand(trackingId, CREATE_REVIEW, productId);
+                command.setReview(new Review(productId, r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null));
+                commands.add(command);
+            });
+        }
+
+        return submit(new WriteTracking(trackingId, productId, "create", commands.size()), commands);
+    }
+
+    public WriteStatus submitDelete(int productId) {
+        String trackingId = UUID.randomUUID().toString();
+        List<WriteCommand> commands = List.of(
+                new WriteCommand(trackingId, DELETE_PRODUCT, productId),
+                new WriteCommand(trackingId, DELETE_RECOMMENDATIONS, productId),
+                new WriteCommand(trackingId, DELETE_REVIEWS, productId));
+        return submit(new WriteTracking(trackingId, productId, "delete", commands.size()), commands);
+    }
+
+    public WriteStatus getStatus(String trackingId) {
+        return store.findTracking(trackingId)
+                .map(WriteTracking::toStatus)
+                .orElseThrow(() -> NotFoundException.withoutStackTrace("No write found for trackingId: " + trackingId));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        WriteCommand.Target[] targets = WriteCommand.Target.values();
+        consumers = Executors.newFixedThreadPool(targets.length, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (WriteCommand.Target target : targets) {
+            consumers.execute(() -> {
+                Thread.currentThread().setName("async-writes-" + target.name().toLowerCase());
+                consume(target);
+            });
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        consumers.shutdownNow();
+        try {
+            consumers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private WriteStatus submit(WriteTracking tracking, List<WriteCommand> commands) {
+        store.enqueue(tracking, commands);
+        log.debug("submit: accepted {} write {} of {} commands for productId: {}",
+                tracking.getOperation(), tracking.getTrackingId(), commands.size(), tracking.getProductId());
+        return tracking.toStatus();
+    }
+
+    private void consume(WriteCommand.Target target) {
+        int batchSize = target == WriteCommand.Target.REVIEW ? reviewBatchSize : 1;
+        while (running) {
+            try {
+                SortedMap<Long, WriteCommand> commands = store.peek(target, batchSize, POLL_TIMEOUT_MS);
+                if (!commands.isEmpty()) {
+                    apply(commands);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in the {} consumer, will continue", target, e);
+            }
+        }
+    }
+
+    private void apply(SortedMap<Long, WriteCommand> commands) throws InterruptedException {
+        // Consecutive review creates go to the batch endpoint, which creates either all of them or none
+        List<Map.Entry<Long, WriteCommand>> reviewCreates = commands.entrySet().stream()
+                .takeWhile(e -> e.getValue().getType() == CREATE_REVIEW)
+                .toList();
+        if (reviewCreates.size() > 1) {
+            List<Review> reviews = reviewCreates.stream().map(e -> e.getValue().getReview()).toList();
+            String key = "reviews:" + reviewCreates.get(0).getKey() + "-" + reviewCreates.get(reviews.size() - 1).getKey();
+            String error = applyWithRetries("batch of " + reviews.size() + " reviews", key,
+                    () -> integration.createReviews(reviews), () -> false, Instant.MAX);
+            if (error == null) {
+                reviewCreates.forEach(e -> acknowledge(e.getKey(), e.getValue(), null));
+                return;
+            }
+            log.debug("apply: {}, applies the reviews one by one", error);
+            Instant deadline = Instant.now().plus(batchFallbackTimeout);
+            for (Map.Entry<Long, WriteCommand> entry : reviewCreates) {
+                String reviewError = Instant.now().isBefore(deadline)
+                        ? applyWithRetries(entry.getValue(), deadline)
+                        : entry.getValue().idempotencyKey() + ": gave up, the batch ran out of its " + batchFallbackTimeout;
+                acknowledge(entry.getKey(), entry.getValue(), reviewError);
+            }
+            return;
+        }
+
+        long sequence = commands.firstKey();
+        acknowledge(sequence, commands.get(sequence), applyWithRetries(commands.get(sequence), Instant.MAX));
+    }
+
+    private void acknowledge(long sequence, WriteCommand command, String error) {
+        store.acknowledge(sequence, command, error);
+        aggregateStore.evict(command.getProductId());
+        productNotFoundCache.invalidate(command.getProductId());
+        lastGoodResults.evict(command.getProductId());
+    }
+
+    private String applyWithRetries(WriteCommand command, Instant deadline) throws InterruptedException {
+        String key = command.getTrackingId() + ":" + command.idempotencyKey();
+        return applyWithRetries(command.idempotencyKey(), key, () -> switch (command.getType()) {
+            case CREATE_PRODUCT -> integration.createProduct(command.getProduct());
+            case CREATE_RECOMMENDATION -> integration.createRecommendation(command.getRecommendation());
+            case CREATE_REVIEW -> integration.createReview(command.getReview());
+            case DELETE_PRODUCT -> {
+                integration.deleteProduct(command.getProductId());
+                yield null;
+            }
+            case DELETE_RECOMMENDATIONS -> {
+                integration.deleteRecommendations(command.getProductId());
+                yield null;
+            }
+            case DELETE_REVIEWS -> {
+                integration.deleteReviews(command.getProductId());
+                yield null;
+            }
+        }, () -> isStored(command), deadline);
+    }
+
+    /**
+     * Whether the core service stores exactly what the create command would have written.
+     */
+    private boolean isStored(WriteCommand command) {
+        int productId = command.getProductId();
+        try {
+            return switch (command.getType()) {
+                case CREATE_PRODUCT -> {
+                    Product expected = command.getProduct();
+                    Product stored = integration.getProduct(productId);
+                    yield Objects.equals(stored.getName(), expected.getName()) && stored.getWeight() == expected.getWeight();
+                }
+                case CREATE_RECOMMENDATION -> {
+                    Recommendation expected = command.getRecommendation();
+                    yield integration.fetchRecommendations(productId).body().stream().anyMatch(stored ->
+                            stored.getRecommendationId() == expected.getRecommendationId()
+                                    && Objects.equals(stored.getAuthor(), expected.getAuthor())
+                                    && stored.getRate() == expected.getRate()
+                                    && Objects.equals(stored.getContent(), expected.getContent()));
+                }
+                case CREATE_REVIEW -> {
+                    Review expected = command.getReview();
+                    yield integration.fetchReviews(productId).body().stream().anyMatch(stored ->
+                            stored.getReviewId() == expected.getReviewId()
+                                    && Objects.equals(stored.getAuthor(), expected.getAuthor())
+                                    && Objects.equals(stored.getSubject(), expected.getSubject())
+                                    && Objects.equals(stored.getContent(), expected.getContent()));
+                }
+                default -> false;
+            };
+        } catch (RuntimeException e) {
+            log.debug("isStored: failed to read what {} would have written: {}", command.idempotencyKey(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns null once the write is applied, or the reason it was given up. A write rejected as invalid
+     * input still counts as applied if isApplied confirms it. No retry backs off past the deadline.
+     * An interrupt while backing off leaves the command queued for the next start.
+     */
+    private String applyWithRetries(String description, String idempotencyKey, Supplier<?> write,
+                                    BooleanSupplier isApplied, Instant deadline)
+            throws InterruptedException {
+        long backoffMs = initialBackoff.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                IdempotencyContext.callWith(idempotencyKey, write);
+                return null;
+            } catch (InvalidInputException e) {
+                if (isApplied.getAsBoolean()) {
+                    log.debug("applyWithRetries: {} is already applied", description);
+                    return null;
+                }
+                return description + ": " + e.getMessage();
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts || Instant.now().plusMillis(backoffMs).isAfter(deadline)) {
+                    log.warn("Giving up {} after {} attempts: {}", description, attempt, e.getMessage());
+                    return description + ": gave up after " + attempt + " attempts, " + e.getMessage();
+                }
+                log.debug("applyWithRetries: attempt {} of {} failed, retries in {} ms: {}", attempt, description, backoffMs, e.getMessage());
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, maxBackoff.toMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.aasmc.microservices.composite.product.writes;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.api.core.review.Review;
+
+/**
+ * One write against one core service, queued by {@link AsyncWriteService}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class WriteCommand {
+
+    public enum Target {
+        PRODUCT,
+        RECOMMENDATION,
+        REVIEW
+    }
+
+    public enum Type {
+        CREATE_PRODUCT(Target.PRODUCT),
+        CREATE_RECOMMENDATION(Target.RECOMMENDATION),
+        CREATE_REVIEW(Target.REVIEW),
+        DELETE_PRODUCT(Target.PRODUCT),
+        DELETE_RECOMMENDATIONS(Target.RECOMMENDATION),
+        DELETE_REVIEWS(Target.REVIEW);
+
+        private final Target target;
+
+        Type(Target target) {
+            this.target = target;
+        }
+
+        public Target getTarget() {
+            return target;
+        }
+    }
+
+    private String trackingId;
+    private Type type;
+    private int productId;
+    private Product product;
+    private Recommendation recommendation;
+    private Review review;
+
+    public WriteCommand(String trackingId, Type type, int productId) {
+        this.trackingId = trackingId;
+        this.type = type;
+        this.productId = productId;
+    }
+
+    /**
+     * Identifies the entity the command writes, creating it twice is the same as creating it once.
+     */
+    public String idempotencyKey() {
+        return switch (type) {
+            case CREATE_RECOMMENDATION -> type + ":" + productId + ":" + recommendation.getRecommendationId();
+            case CREATE_REVIEW -> type + ":" + productId + ":" + review.getReviewId();
+            default -> type + ":" + productId;
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package ru.aasmc.microservices.composite.product.writes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Durable queues of {@link WriteCommand}s, one per core service, and the {@link WriteTracking} of every write.
+ *
+ * Backed by an H2 MVStore file at app.async-writes.path, or kept in memory when the path is blank.
+ * Every change is committed before it returns, so accepted writes survive a restart of the process;
+ * commits are not forced to disk, a power loss can lose the last ones.
+ */
+@Slf4j
+@Component
+public class WriteQueueStore implements DisposableBean {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+    private static final long PURGE_INTERVAL_MS = 60_000;
+
+    private final MVStore store;
+    private final MVMap<String, String> trackings;
+    private final Map<WriteCommand.Target, MVMap<Long, String>> queues = new EnumMap<>(WriteCommand.Target.class);
+    private final long statusRetentionMs;
+    private long nextSequence = 1;
+    private long lastPurge = 0;
+
+    public WriteQueueStore(
+            @Value("${app.async-writes.path:}") String path,
+            @Value("${app.async-writes.status-retention:1h}") Duration statusRetention,
+            @Value("${app.async-writes.cache-size-mb:16}") int cacheSizeMb) {
+
+        MVStore.Builder builder = new MVStore.Builder().cacheSize(cacheSizeMb);
+        if (!path.isBlank()) {
+            File parent = new File(path).getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            builder.fileName(path);
+        }
+        store = builder.open();
+        trackings = store.openMap("trackings");
+        for (WriteCommand.Target target : WriteCommand.Target.values()) {
+            MVMap<Long, String> queue = store.openMap("queue." + target.name().toLowerCase());
+            queues.put(target, queue);
+            Long last = queue.lastKey();
+            if (last != null) {
+                nextSequence = Math.max(nextSequence, last + 1);
+            }
+            if (!queue.isEmpty()) {
+                log.info("Resuming {} queued {} commands", queue.size(), target);
+            }
+        }
+        statusRetentionMs = statusRetention.toMillis();
+    }
+
+    public synchronized void enqueue(WriteTracking tracking, List<WriteCommand> commands) {
+        purgeFinished();
+        trackings.put(tracking.getTrackingId(), write(tracking));
+        for (WriteCommand command : commands) {
+            queues.get(command.getType().getTarget()).put(nextSequence++, write(command));
+        }
+        store.commit();
+        notifyAll();
+    }
+
+    /**
+     * Returns up to max of the oldest commands for the target, waiting up to timeoutMs for one to arrive.
+     */
+    public synchronized SortedMap<Long, WriteCommand> peek(WriteCommand.Target target, int max, long timeoutMs)
+            throws InterruptedException {
+
+        MVMap<Long, String> queue = queues.get(target);
+        if (queue.isEmpty()) {
+            wait(timeoutMs);
+        }
+        SortedMap<Long, WriteCommand> commands = new TreeMap<>();
+        Iterator<Long> keys = queue.keyIterator(null);
+        while (keys.hasNext() && commands.size() < max) {
+            Long sequence = keys.next();
+            commands.put(sequence, read(queue.get(sequence), WriteCommand.class));
+        }
+        return commands;
+    }
+
+    /**
+     * Removes an applied command from its queue and counts it for its write, error is null on success.
+     */
+    public synchronized void acknowledge(long sequence, WriteCommand command, String error) {
+        queues.get(command.getType().getTarget()).remove(sequence);
+        String json = trackings.get(command.getTrackingId());
+        if (json != null) {
+            WriteTracking tracking = read(json, WriteTracking.class);
+            if (error == null) {
+                tracking.setCompletedCommands(tracking.getCompletedCommands() + 1);
+            } else {
+                tracking.setFailedCommands(tracking.getFailedCommands() + 1);
+                tracking.getErrors().add(error);
+            }
+            if (tracking.isFinished()) {
+                tracking.setFinishedAt(System.currentTimeMillis());
+            }
+            trackings.put(tracking.getTrackingId(), write(tracking));
+        }
+        store.commit();
+    }
+
+    public synchronized Optional<WriteTracking> findTracking(String trackingId) {
+        return Optional.ofNullable(trackings.get(trackingId)).map(json -> read(json, WriteTracking.class));
+    }
+
+    @Override
+    public synchronized void destroy() {
+        store.close();
+    }
+
+    private void purgeFinished() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < PURGE_INTERVAL_MS) {
+            return;
+        }
+        lastPurge = now;
+        List<String> expired = new ArrayList<>();
+        trackings.forEach((id, json) -> {
+            long finishedAt = read(json, WriteTracking.class).getFinishedAt();
+            if (finishedAt > 0 && now - finishedAt > statusRetentionMs) {
+                expired.add(id);
+            }
+        });
+        expired.forEach(trackings::remove);
+        if (!expired.isEmpty()) {
+            log.debug("purgeFinished: removed {} expired write statuses", expired.size());
+        }
+    }
+
+    private static String write(Object value) {
+        try {
+            return MAPPER.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static <T> T read(String json, Class<T> type) {
+        try {
+            return MAPPER.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to deserialize " + type.getSimpleName(), e);
+        }
+    }
+}
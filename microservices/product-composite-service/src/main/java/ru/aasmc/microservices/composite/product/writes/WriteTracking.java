@@ -0,0 +1,48 @@
+package ru.aasmc.microservices.composite.product.writes;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ru.aasmc.api.composite.product.WriteStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stored progress of an asynchronous write, see {@link WriteStatus}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class WriteTracking {
+
+    private String trackingId;
+    private int productId;
+    private String operation;
+    private int totalCommands;
+    private int completedCommands;
+    private int failedCommands;
+    private List<String> errors = new ArrayList<>();
+    private long finishedAt;
+
+    public WriteTracking(String trackingId, int productId, String operation, int totalCommands) {
+        this.trackingId = trackingId;
+        this.productId = productId;
+        this.operation = operation;
+        this.totalCommands = totalCommands;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return completedCommands + failedCommands >= totalCommands;
+    }
+
+    public WriteStatus toStatus() {
+        WriteStatus.State state = !isFinished() ? WriteStatus.State.PENDING
+                : failedCommands > 0 ? WriteStatus.State.FAILED
+                : WriteStatus.State.COMPLETED;
+        return new WriteStatus(trackingId, productId, operation, state,
+                totalCommands, completedCommands, failedCommands, List.copyOf(errors));
+    }
+}
@@ -0,0 +1,164 @@
+package ru.aasmc.microservices.composite.product;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.event.Event;
+import ru.aasmc.microservices.composite.product.readmodel.AggregateStore;
+import ru.aasmc.microservices.composite.product.readmodel.MaterializedAggregate;
+import ru.aasmc.microservices.composite.product.services.ProductCompositeIntegration;
+import ru.aasmc.microservices.composite.product.services.ServiceResponse;
+
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static ru.aasmc.api.event.EventTopics.PRODUCTS;
+import static ru.aasmc.api.event.EventTopics.REVIEWS;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+		"app.aggregate-store.enabled=true",
+		"app.aggregate-store.path=",
+		"app.aggregate-store.follow-events=false",
+		"app.async-writes.path="})
+class AggregateStoreTests {
+
+	private static final int PRODUCT_ID = 1;
+	private static final int PRODUCT_ID_PARTIAL = 2;
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private AggregateStore store;
+
+	@MockBean
+	private ProductCompositeIntegration compositeIntegration;
+
+	@BeforeEach
+	void setUp() {
+		store.clear();
+
+		when(compositeIntegration.getProduct(PRODUCT_ID))
+				.thenReturn(new Product(PRODUCT_ID, "name", 1, "mock-address"));
+		// Products without recommendations or reviews
+		when(compositeIntegration.fetchRecommendations(anyInt()))
+				.thenReturn(new ServiceResponse<>(List.of(), "mock address"));
+		when(compositeIntegration.fetchReviews(anyInt()))
+				.thenReturn(new ServiceResponse<>(List.of(), "mock address"));
+		when(compositeIntegration.fetchRecommendations(PRODUCT_ID))
+				.thenReturn(new ServiceResponse<>(List.of(new Recommendation(PRODUCT_ID, 1, "author", 2, "content", "mock address"),
+						new Recommendation(PRODUCT_ID, 2, "author", 3, "content", "mock address")), "mock address"));
+		when(compositeIntegration.fetchReviews(PRODUCT_ID))
+				.thenReturn(new ServiceResponse<>(singletonList(new Review(PRODUCT_ID, 1, "author", "subject", "content", "mock address")), "mock address"));
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_PARTIAL))
+				.thenReturn(new Product(PRODUCT_ID_PARTIAL, "name", 1, "mock-address"));
+		when(compositeIntegration.fetchReviews(PRODUCT_ID_PARTIAL))
+				.thenThrow(new IllegalStateException("Connection refused"));
+	}
+
+	@Test
+	void servesStoredAggregateAfterMiss() {
+
+		getAndVerifyProduct(PRODUCT_ID + "")
+				.jsonPath("$.recommendations.length()").isEqualTo(2)
+				.jsonPath("$.reviews.length()").isEqualTo(1);
+
+		getAndVerifyProduct(PRODUCT_ID + "?includeRatingSummary=true")
+				.jsonPath("$.recommendations.length()").isEqualTo(2)
+				.jsonPath("$.ratingSummary.count").isEqualTo(2)
+				.jsonPath("$.ratingSummary.averageRate").isEqualTo(2.5)
+				.jsonPath("$.ratingSummary.histogram.3").isEqualTo(1);
+
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID);
+		verify(compositeIntegration, times(1)).fetchRecommendations(PRODUCT_ID);
+		verify(compositeIntegration, never()).getRatingSummary(anyInt());
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	void appliesEventsToStoredAggregate() {
+
+		getAndVerifyProduct(PRODUCT_ID + "");
+
+		store.apply(REVIEWS, new Event<>(Event.Type.CREATE, PRODUCT_ID,
+				new Review(PRODUCT_ID, 2, "author", "subject", "content", null)));
+		getAndVerifyProduct(PRODUCT_ID + "")
+				.jsonPath("$.reviews.length()").isEqualTo(2)
+				.jsonPath("$.reviews[1].reviewId").isEqualTo(2);
+
+		store.apply(REVIEWS, new Event<>(Event.Type.DELETE, PRODUCT_ID, null));
+		getAndVerifyProduct(PRODUCT_ID + "")
+				.jsonPath("$.reviews.length()").isEqualTo(0);
+		verify(compositeIntegration, times(1)).fetchReviews(PRODUCT_ID);
+
+		store.apply(PRODUCTS, new Event<>(Event.Type.DELETE, PRODUCT_ID, null));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	void doesNotStorePartialAggregate() {
+
+		getAndVerifyProduct(PRODUCT_ID_PARTIAL + "")
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_PARTIAL);
+
+		assertEquals(0, store.size());
+		// Once by the materializer, once more by the fallback to the core services
+		verify(compositeIntegration, times(2)).fetchReviews(PRODUCT_ID_PARTIAL);
+	}
+
+	@Test
+	void bumpGenerationsKeepsEntriesButNotLoadsInFlight() {
+
+		getAndVerifyProduct(PRODUCT_ID + "");
+		long generation = store.generation(PRODUCT_ID_PARTIAL);
+
+		store.bumpGenerations();
+
+		assertEquals(1, store.size());
+		assertFalse(store.putIfUnchanged(new MaterializedAggregate(new Product(PRODUCT_ID_PARTIAL, "name", 1, null),
+				new ServiceResponse<>(List.of(), null), new ServiceResponse<>(List.of(), null)), generation));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	void rebuild() {
+
+		when(compositeIntegration.getProducts(0, 100))
+				.thenReturn(List.of(new Product(PRODUCT_ID, "name", 1, "mock-address"),
+						new Product(PRODUCT_ID_PARTIAL, "name", 1, "mock-address")));
+
+		client.post()
+				.uri("/actuator/aggregates")
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectBody()
+				.jsonPath("$.loaded").isEqualTo(1)
+				.jsonPath("$.failed").isEqualTo(1);
+
+		assertEquals(1, store.size());
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyProduct(String productIdPath) {
+		return client.get()
+				.uri("/product-composite/" + productIdPath)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+}
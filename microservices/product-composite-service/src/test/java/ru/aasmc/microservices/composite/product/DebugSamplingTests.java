@@ -0,0 +1,97 @@
+package ru.aasmc.microservices.composite.product;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.microservices.composite.product.services.ProductCompositeIntegration;
+import ru.aasmc.microservices.composite.product.services.ProductCompositeServiceImpl;
+import ru.aasmc.microservices.composite.product.services.ServiceResponse;
+import ru.aasmc.util.logging.SampledDebugTurboFilter;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+		"app.async-writes.path=",
+		"app.logging.debug-sample-rate=1"})
+class DebugSamplingTests {
+
+	private static final int PRODUCT_ID = 1;
+
+	@Autowired
+	private WebTestClient client;
+
+	@MockBean
+	private ProductCompositeIntegration compositeIntegration;
+
+	private final Logger logger = (Logger) LoggerFactory.getLogger(ProductCompositeServiceImpl.class);
+	private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+	private final SampledDebugTurboFilter turboFilter = new SampledDebugTurboFilter();
+	private Level level;
+
+	@BeforeEach
+	void setUp() {
+		when(compositeIntegration.getProduct(PRODUCT_ID))
+				.thenReturn(new Product(PRODUCT_ID, "name", 1, "mock-address"));
+		when(compositeIntegration.fetchRecommendations(anyInt()))
+				.thenReturn(new ServiceResponse<>(List.of(), "mock address"));
+		when(compositeIntegration.fetchReviews(anyInt()))
+				.thenReturn(new ServiceResponse<>(List.of(), "mock address"));
+
+		// As logged with the prod profile, Spring Boot only configures logback for the first context of the JVM
+		level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		turboFilter.start();
+		logger.getLoggerContext().addTurboFilter(turboFilter);
+		appender.start();
+		logger.addAppender(appender);
+	}
+
+	@AfterEach
+	void tearDown() {
+		logger.detachAppender(appender);
+		logger.getLoggerContext().getTurboFilterList().remove(turboFilter);
+		logger.setLevel(level);
+	}
+
+	@Test
+	void logsDebugOfSampledRequest() {
+
+		assertFalse(logger.isDebugEnabled(), "DEBUG is off outside of sampled requests");
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk();
+
+		assertTrue(appender.list.stream().anyMatch(event ->
+				event.getFormattedMessage().equals("getCompositeProduct: lookup a product aggregate for productId: " + PRODUCT_ID)),
+				"debug statement of the sampled request is logged");
+	}
+
+	@Test
+	void doesNotLogDebugOutsideOfRequests() {
+
+		logger.debug("not sampled");
+
+		assertEquals(0, appender.list.size());
+	}
+}
@@ -7,29 +7,60 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
 import ru.aasmc.api.composite.product.ProductAggregate;
 import ru.aasmc.api.composite.product.RecommendationSummary;
 import ru.aasmc.api.composite.product.ReviewSummary;
+import ru.aasmc.api.composite.product.WriteStatus;
 import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.core.recommendation.RatingSummary;
 import ru.aasmc.api.core.recommendation.Recommendation;
 import ru.aasmc.api.core.review.Review;
 import ru.aasmc.api.exceptions.InvalidInputException;
 import ru.aasmc.api.exceptions.NotFoundException;
+import ru.aasmc.api.exceptions.ServiceUnavailableException;
+import ru.aasmc.microservices.composite.product.readmodel.LastGoodResults;
 import ru.aasmc.microservices.composite.product.services.ProductCompositeIntegration;
+import ru.aasmc.microservices.composite.product.services.ServiceResponse;
+import ru.aasmc.util.idempotency.IdempotencyContext;
+
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Collections.singletonList;
-import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT)
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+		"app.async-writes.path=",
+		"app.async-writes.max-attempts=3",
+		"app.async-writes.initial-backoff=10ms",
+		"app.last-good.max-age=0s",
+		"app.last-good.stale-while-revalidate=0s",
+		"app.http-client.read-timeout=300ms"})
 class ProductCompositeServiceApplicationTests {
 
 	private static final int PRODUCT_ID_OK = 1;
 	private static final int PRODUCT_ID_NOT_FOUND = 2;
 	private static final int PRODUCT_ID_INVALID = 3;
+	private static final int PRODUCT_ID_UNAVAILABLE = 4;
+	private static final int PRODUCT_ID_CREATED_LATER = 5;
+	private static final int PRODUCT_ID_SHEDDING = 6;
 
 	@Autowired
 	private WebTestClient client;
@@ -37,26 +68,65 @@ class ProductCompositeServiceApplicationTests {
 	@MockBean
 	private ProductCompositeIntegration compositeIntegration;
 
+	@Autowired
+	private LastGoodResults lastGoodResults;
+
+	@Autowired
+	private RestTemplate restTemplate;
+
 	@BeforeEach
 	void setUp() {
 
+		lastGoodResults.clear();
+
 		when(compositeIntegration.getProduct(PRODUCT_ID_OK))
 				.thenReturn(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"));
-		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK))
-				.thenReturn(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
-		when(compositeIntegration.getReviews(PRODUCT_ID_OK))
-				.thenReturn(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address")));
+		// Products without recommendations or reviews
+		when(compositeIntegration.fetchRecommendations(anyInt()))
+				.thenReturn(new ServiceResponse<>(List.of(), "mock address"));
+		when(compositeIntegration.fetchReviews(anyInt()))
+				.thenReturn(new ServiceResponse<>(List.of(), "mock address"));
+		when(compositeIntegration.fetchRecommendations(PRODUCT_ID_OK))
+				.thenReturn(new ServiceResponse<>(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", null)), "mock address"));
+		when(compositeIntegration.fetchReviews(PRODUCT_ID_OK))
+				.thenReturn(new ServiceResponse<>(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", null)), "mock address"));
+		when(compositeIntegration.fetchTopRecommendations(PRODUCT_ID_OK, 1, "rating"))
+				.thenReturn(new ServiceResponse<>(singletonList(new Recommendation(PRODUCT_ID_OK, 2, "author", 5, "content", null)), "mock address"));
+		when(compositeIntegration.getRatingSummary(PRODUCT_ID_OK))
+				.thenReturn(new RatingSummary(PRODUCT_ID_OK, 2, 2.5, Map.of(2, 1L, 3, 1L), "mock address"));
+
+		when(compositeIntegration.getProducts(0, 2))
+				.thenReturn(List.of(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"),
+						new Product(PRODUCT_ID_NOT_FOUND, "name 2", 2, "mock-address")));
 
 		when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND))
 				.thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
 
 		when(compositeIntegration.getProduct(PRODUCT_ID_INVALID))
 				.thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
+		when(compositeIntegration.createProduct(argThat(p -> p != null && p.getProductId() == PRODUCT_ID_UNAVAILABLE)))
+				.thenThrow(new IllegalStateException("Connection refused"));
 	}
 
 	@Test
 	void contextLoads() {}
 
+	@Test
+	void callsToHungServiceTimeOut() throws Exception {
+
+		// Connections are accepted by the backlog, but never answered
+		try (ServerSocket hung = new ServerSocket(0)) {
+			long start = System.nanoTime();
+			ResourceAccessException ex = assertThrows(ResourceAccessException.class,
+					() -> restTemplate.getForObject("http://localhost:" + hung.getLocalPort() + "/product/1", String.class));
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			assertInstanceOf(SocketTimeoutException.class, ex.getCause());
+			// Three attempts of 300ms, with backoffs of up to 200ms
+			assertTrue(elapsedMs < 3 * (300 + 200) + 1000, "took " + elapsedMs + " ms");
+		}
+	}
+
 	@Test
 	void createCompositeProduct1() {
 
@@ -74,6 +144,46 @@ class ProductCompositeServiceApplicationTests {
 		postAndVerifyProduct(compositeProduct, OK);
 	}
 
+	@Test
+	void createCompositeProductOnceWithIdempotencyKey() {
+		ProductAggregate compositeProduct = new ProductAggregate(1, "name", 1, null, null, null);
+		List<String> keys = new ArrayList<>();
+		when(compositeIntegration.createProduct(any())).thenAnswer(invocation -> {
+			keys.add(IdempotencyContext.current());
+			return invocation.getArgument(0);
+		});
+
+		postWithIdempotencyKey("/product-composite", "composite-1", compositeProduct)
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().doesNotExist("Idempotent-Replayed");
+		postWithIdempotencyKey("/product-composite", "composite-1", compositeProduct)
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().valueEquals("Idempotent-Replayed", "true");
+
+		// The calls to the core services are made with the key of the request
+		verify(compositeIntegration).createProduct(any());
+		assertEquals(List.of("composite-1"), keys);
+	}
+
+	@Test
+	void createCompositeProductAsyncOnceWithIdempotencyKey() {
+		ProductAggregate compositeProduct = new ProductAggregate(PRODUCT_ID_OK, "name", 1, null, null, null);
+
+		WriteStatus first = postWithIdempotencyKey("/product-composite/async", "composite-async-1", compositeProduct)
+				.expectStatus().isEqualTo(ACCEPTED)
+				.expectBody(WriteStatus.class)
+				.returnResult().getResponseBody();
+		WriteStatus replayed = postWithIdempotencyKey("/product-composite/async", "composite-async-1", compositeProduct)
+				.expectStatus().isEqualTo(ACCEPTED)
+				.expectHeader().valueEquals("Idempotent-Replayed", "true")
+				.expectBody(WriteStatus.class)
+				.returnResult().getResponseBody();
+
+		assertEquals(first.getTrackingId(), replayed.getTrackingId());
+		awaitWriteStatus(first.getTrackingId(), "COMPLETED");
+		verify(compositeIntegration).createProduct(any());
+	}
+
 	@Test
 	void deleteCompositeProduct() {
 		ProductAggregate compositeProduct = new ProductAggregate(1, "name", 1,
@@ -86,13 +196,177 @@ class ProductCompositeServiceApplicationTests {
 		deleteAndVerifyProduct(compositeProduct.getProductId(), OK);
 	}
 
+	@Test
+	void createCompositeProductAsync() {
+		ProductAggregate compositeProduct = new ProductAggregate(PRODUCT_ID_OK, "name", 1,
+				singletonList(new RecommendationSummary(1, "a", 1, "c")),
+				List.of(new ReviewSummary(1, "author", "subject", "content"), new ReviewSummary(2, "a", "s", "c")), null);
+
+		when(compositeIntegration.createReviews(anyList()))
+				.thenThrow(new InvalidInputException("Duplicate key in a batch of 2 reviews"));
+		when(compositeIntegration.createReview(argThat(r -> r != null && r.getReviewId() == 1)))
+				.thenThrow(new InvalidInputException("Duplicate key, Product Id: 1, Review Id:1"));
+
+		String trackingId = postAsyncAndVerifyProduct(compositeProduct);
+
+		// Review 1 is already stored as is, the batch falls back to single creates and counts it as applied
+		awaitWriteStatus(trackingId, "COMPLETED")
+				.jsonPath("$.totalCommands").isEqualTo(4)
+				.jsonPath("$.completedCommands").isEqualTo(4)
+				.jsonPath("$.errors.length()").isEqualTo(0);
+
+		verify(compositeIntegration).createProduct(any());
+		verify(compositeIntegration).createRecommendation(any());
+		verify(compositeIntegration, times(2)).createReview(any());
+	}
+
+	@Test
+	void createCompositeProductAsyncFailsOnDifferentDuplicate() {
+		ProductAggregate compositeProduct = new ProductAggregate(PRODUCT_ID_OK, "name", 1, null,
+				singletonList(new ReviewSummary(1, "a", "s", "c")), null);
+
+		when(compositeIntegration.createReview(any()))
+				.thenThrow(new InvalidInputException("Duplicate key, Product Id: 1, Review Id:1"));
+
+		String trackingId = postAsyncAndVerifyProduct(compositeProduct);
+
+		// Review 1 is stored with another content, the create was not applied
+		awaitWriteStatus(trackingId, "FAILED")
+				.jsonPath("$.failedCommands").isEqualTo(1)
+				.jsonPath("$.errors[0]").isEqualTo("CREATE_REVIEW:1:1: Duplicate key, Product Id: 1, Review Id:1");
+	}
+
+	@Test
+	void createCompositeProductAsyncGivesUp() {
+		ProductAggregate compositeProduct = new ProductAggregate(PRODUCT_ID_UNAVAILABLE, "name", 1, null, null, null);
+
+		String trackingId = postAsyncAndVerifyProduct(compositeProduct);
+
+		awaitWriteStatus(trackingId, "FAILED")
+				.jsonPath("$.failedCommands").isEqualTo(1)
+				.jsonPath("$.errors[0]").isEqualTo("CREATE_PRODUCT:4: gave up after 3 attempts, Connection refused");
+
+		verify(compositeIntegration, times(3)).createProduct(any());
+	}
+
+	@Test
+	void deleteCompositeProductAsync() {
+
+		String trackingId = client.delete()
+				.uri("/product-composite/" + PRODUCT_ID_OK + "/async")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(ACCEPTED)
+				.expectBody(WriteStatus.class)
+				.returnResult().getResponseBody().getTrackingId();
+
+		awaitWriteStatus(trackingId, "COMPLETED")
+				.jsonPath("$.operation").isEqualTo("delete")
+				.jsonPath("$.completedCommands").isEqualTo(3);
+
+		verify(compositeIntegration).deleteProduct(PRODUCT_ID_OK);
+		verify(compositeIntegration).deleteRecommendations(PRODUCT_ID_OK);
+		verify(compositeIntegration).deleteReviews(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void getWriteStatusNotFound() {
+
+		client.get()
+				.uri("/product-composite/writes/unknown")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(NOT_FOUND)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("No write found for trackingId: unknown");
+	}
+
 	@Test
 	void getProductById() {
 
 		getAndVerifyProduct(PRODUCT_ID_OK, OK)
 				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
 				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.serviceAddresses.rec").isEqualTo("mock address")
+				.jsonPath("$.serviceAddresses.rev").isEqualTo("mock address");
+	}
+
+	@Test
+	void getProductServesLastGoodResults() {
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().doesNotExist("X-Stale-Parts");
+
+		when(compositeIntegration.fetchReviews(PRODUCT_ID_OK))
+				.thenThrow(new IllegalStateException("Connection refused"));
+		sleep(10);
+
+		// Older than max-age, so reviews are read again and the last good ones are served when that fails
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().valueEquals("X-Stale-Parts", "reviews")
+				.expectHeader().exists("Age")
+				.expectBody()
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
 				.jsonPath("$.reviews.length()").isEqualTo(1);
+		verify(compositeIntegration, times(2)).fetchReviews(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void getProductByIdWithRatingSummary() {
+
+		getAndVerifyProduct(PRODUCT_ID_OK, OK)
+				.jsonPath("$.ratingSummary").doesNotExist();
+
+		getAndVerifyProduct(PRODUCT_ID_OK + "?includeRatingSummary=true", OK)
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+				.jsonPath("$.ratingSummary.count").isEqualTo(2)
+				.jsonPath("$.ratingSummary.averageRate").isEqualTo(2.5)
+				.jsonPath("$.ratingSummary.histogram.3").isEqualTo(1);
+	}
+
+	@Test
+	void getProductByIdWithTopRecommendations() {
+
+		getAndVerifyProduct(PRODUCT_ID_OK + "?recommendationLimit=1", OK)
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.recommendations[0].recommendationId").isEqualTo(2)
+				.jsonPath("$.recommendations[0].rate").isEqualTo(5);
+	}
+
+	@Test
+	void getProductByIdWithInvalidRecommendationLimit() {
+
+		when(compositeIntegration.fetchTopRecommendations(PRODUCT_ID_OK, 0, "rating"))
+				.thenThrow(new InvalidInputException("Invalid limit: 0, must be between 1 and 100"));
+
+		getAndVerifyProduct(PRODUCT_ID_OK + "?recommendationLimit=0", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Invalid limit: 0, must be between 1 and 100");
+	}
+
+	@Test
+	void getProducts() {
+
+		client.get()
+				.uri("/product-composite?limit=2")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[1].productId").isEqualTo(PRODUCT_ID_NOT_FOUND)
+				.jsonPath("$[1].name").isEqualTo("name 2")
+				.jsonPath("$[1].serviceAddress").doesNotExist();
 	}
 
 	@Test
@@ -103,6 +377,26 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.message").isEqualTo("NOT FOUND: " + PRODUCT_ID_NOT_FOUND);
 	}
 
+	@Test
+	void getProductNotFoundFromCache() {
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_CREATED_LATER))
+				.thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_CREATED_LATER));
+
+		getAndVerifyProduct(PRODUCT_ID_CREATED_LATER, NOT_FOUND);
+		getAndVerifyProduct(PRODUCT_ID_CREATED_LATER, NOT_FOUND)
+				.jsonPath("$.message").isEqualTo("NOT FOUND: " + PRODUCT_ID_CREATED_LATER);
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_CREATED_LATER);
+
+		// Creating the product invalidates the entry
+		postAndVerifyProduct(new ProductAggregate(PRODUCT_ID_CREATED_LATER, "name", 1, null, null, null), OK);
+		doReturn(new Product(PRODUCT_ID_CREATED_LATER, "name", 1, "mock-address"))
+				.when(compositeIntegration).getProduct(PRODUCT_ID_CREATED_LATER);
+
+		getAndVerifyProduct(PRODUCT_ID_CREATED_LATER, OK)
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_CREATED_LATER);
+	}
+
 	@Test
 	void getProductInvalidInput() {
 
@@ -111,9 +405,29 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.message").isEqualTo("INVALID: " + PRODUCT_ID_INVALID);
 	}
 
+	@Test
+	void getProductWhileProductServiceShedsLoad() {
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_SHEDDING))
+				.thenThrow(new ServiceUnavailableException("product:8080 is shedding load", 3));
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_SHEDDING)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(SERVICE_UNAVAILABLE)
+				.expectHeader().valueEquals("Retry-After", "3")
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("product:8080 is shedding load");
+	}
+
 	private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
+		return getAndVerifyProduct(String.valueOf(productId), expectedStatus);
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyProduct(String productIdPath, HttpStatus expectedStatus) {
 		return client.get()
-				.uri("/product-composite/" + productId)
+				.uri("/product-composite/" + productIdPath)
 				.accept(APPLICATION_JSON)
 				.exchange()
 				.expectStatus().isEqualTo(expectedStatus)
@@ -129,6 +443,59 @@ class ProductCompositeServiceApplicationTests {
 				.expectStatus().isEqualTo(expectedStatus);
 	}
 
+	private WebTestClient.ResponseSpec postWithIdempotencyKey(String uri, String key, ProductAggregate compositeProduct) {
+		return client.post()
+				.uri(uri)
+				.header("Idempotency-Key", key)
+				.body(just(compositeProduct), ProductAggregate.class)
+				.accept(APPLICATION_JSON)
+				.exchange();
+	}
+
+	private String postAsyncAndVerifyProduct(ProductAggregate compositeProduct) {
+		WriteStatus status = client.post()
+				.uri("/product-composite/async")
+				.body(just(compositeProduct), ProductAggregate.class)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(ACCEPTED)
+				.expectBody(WriteStatus.class)
+				.returnResult().getResponseBody();
+		assertEquals(compositeProduct.getProductId(), status.getProductId());
+		return status.getTrackingId();
+	}
+
+	private WebTestClient.BodyContentSpec awaitWriteStatus(String trackingId, String expectedState) {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			WriteStatus status = client.get()
+					.uri("/product-composite/writes/" + trackingId)
+					.exchange()
+					.expectStatus().isEqualTo(OK)
+					.expectBody(WriteStatus.class)
+					.returnResult().getResponseBody();
+			if (status.getState() != WriteStatus.State.PENDING || System.currentTimeMillis() > deadline) {
+				break;
+			}
+			sleep(20);
+		}
+		return client.get()
+				.uri("/product-composite/writes/" + trackingId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectBody()
+				.jsonPath("$.state").isEqualTo(expectedState);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	private void deleteAndVerifyProduct(int productId, HttpStatus expectedStatus) {
 		client.delete()
 				.uri("/product-composite/" + productId)
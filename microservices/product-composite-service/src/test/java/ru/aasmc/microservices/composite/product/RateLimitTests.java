@@ -0,0 +1,117 @@
+package ru.aasmc.microservices.composite.product;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.microservices.composite.product.services.ProductCompositeIntegration;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+// Two listing requests per client, refilled too slowly to matter during the test
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+		"app.rate-limit.api-keys=client-1,client-2",
+		"app.rate-limit.trusted-proxies=127.0.0.1",
+		"app.rate-limit.routes[0].name=listing",
+		"app.rate-limit.routes[0].path=/product-composite",
+		"app.rate-limit.routes[0].methods=GET",
+		"app.rate-limit.routes[0].capacity=2",
+		"app.rate-limit.routes[0].refill-per-second=0.01",
+		"app.async-writes.path="})
+class RateLimitTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@MockBean
+	private ProductCompositeIntegration compositeIntegration;
+
+	@BeforeEach
+	void setUp() {
+		when(compositeIntegration.getProducts(0, 10))
+				.thenReturn(List.of(new Product(1, "name", 1, "mock-address")));
+	}
+
+	@Test
+	void limitsRequestsPerClient() {
+
+		getProducts("client-1")
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().valueEquals("RateLimit-Limit", "2")
+				.expectHeader().valueEquals("RateLimit-Remaining", "1")
+				.expectHeader().valueEquals("RateLimit-Policy", "2;w=200");
+		getProducts("client-1")
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().valueEquals("RateLimit-Remaining", "0");
+
+		getProducts("client-1")
+				.expectStatus().isEqualTo(TOO_MANY_REQUESTS)
+				.expectHeader().valueEquals("RateLimit-Remaining", "0")
+				.expectHeader().valueEquals("Retry-After", "100")
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Rate limit of listing exceeded");
+
+		// Other clients have their own budget
+		getProducts("client-2")
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().valueEquals("RateLimit-Remaining", "1");
+	}
+
+	@Test
+	void identifiesClientsWithUnknownApiKeysByAddress() {
+
+		getProducts("unknown-1", "10.0.0.1").expectStatus().isEqualTo(OK);
+		getProducts("unknown-2", "10.0.0.1").expectStatus().isEqualTo(OK);
+
+		getProducts("unknown-3", "10.0.0.1").expectStatus().isEqualTo(TOO_MANY_REQUESTS);
+	}
+
+	@Test
+	void followsForwardedForOnlyThroughTrustedProxies() {
+
+		getProducts(null, "10.0.0.2").expectStatus().isEqualTo(OK);
+		getProducts(null, "10.0.0.2").expectStatus().isEqualTo(OK);
+
+		// The client put an address of its own in front, the one the proxy added counts
+		getProducts(null, "10.0.0.99, 10.0.0.2").expectStatus().isEqualTo(TOO_MANY_REQUESTS);
+		getProducts(null, "10.0.0.3").expectStatus().isEqualTo(OK);
+	}
+
+	@Test
+	void doesNotLimitOtherRoutes() {
+
+		client.get()
+				.uri("/actuator/health")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().doesNotExist("RateLimit-Limit");
+	}
+
+	private WebTestClient.ResponseSpec getProducts(String apiKey) {
+		return getProducts(apiKey, null);
+	}
+
+	private WebTestClient.ResponseSpec getProducts(String apiKey, String forwardedFor) {
+		return client.get()
+				.uri("/product-composite?limit=10")
+				.headers(headers -> {
+					if (apiKey != null) {
+						headers.set("X-API-Key", apiKey);
+					}
+					if (forwardedFor != null) {
+						headers.set("X-Forwarded-For", forwardedFor);
+					}
+				})
+				.accept(APPLICATION_JSON)
+				.exchange();
+	}
+}
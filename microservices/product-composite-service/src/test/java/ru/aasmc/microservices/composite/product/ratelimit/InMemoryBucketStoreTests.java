@@ -0,0 +1,110 @@
+package ru.aasmc.microservices.composite.product.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryBucketStoreTests {
+
+    private static final long SECOND = 1_000_000_000L;
+    // Bursts of 3, one token every half second
+    private static final BucketStore.Bandwidth BANDWIDTH = new BucketStore.Bandwidth(3, 2);
+
+    private long now = 1_000 * SECOND;
+    private final InMemoryBucketStore store = new InMemoryBucketStore(2, () -> now);
+
+    @Test
+    void allowsBurstUpToCapacity() {
+
+        assertProbe(store.tryConsume("a", BANDWIDTH), true, 2);
+        assertProbe(store.tryConsume("a", BANDWIDTH), true, 1);
+        assertProbe(store.tryConsume("a", BANDWIDTH), true, 0);
+
+        BucketStore.Probe rejected = store.tryConsume("a", BANDWIDTH);
+        assertProbe(rejected, false, 0);
+        assertEquals(SECOND / 2, rejected.nanosToRefill());
+        assertEquals(3 * SECOND / 2, rejected.nanosToFull());
+    }
+
+    @Test
+    void refillsAtSustainedRate() {
+
+        for (int i = 0; i < 3; i++) {
+            store.tryConsume("a", BANDWIDTH);
+        }
+
+        now += SECOND / 2;
+        assertProbe(store.tryConsume("a", BANDWIDTH), true, 0);
+        assertProbe(store.tryConsume("a", BANDWIDTH), false, 0);
+
+        // A full bucket does not keep filling up
+        now += 60 * SECOND;
+        assertProbe(store.tryConsume("a", BANDWIDTH), true, 2);
+    }
+
+    @Test
+    void keepsBucketPerKey() {
+
+        for (int i = 0; i < 3; i++) {
+            store.tryConsume("a", BANDWIDTH);
+        }
+        assertProbe(store.tryConsume("a", BANDWIDTH), false, 0);
+        assertProbe(store.tryConsume("b", BANDWIDTH), true, 2);
+    }
+
+    @Test
+    void dropsOldestBucketsBeyondMaxBuckets() {
+
+        for (int i = 0; i < 3; i++) {
+            store.tryConsume("a", BANDWIDTH);
+            store.tryConsume("b", BANDWIDTH);
+        }
+
+        store.tryConsume("c", BANDWIDTH);
+        assertEquals(2, store.size());
+
+        // The bucket of a was dropped, b's is still empty
+        assertProbe(store.tryConsume("b", BANDWIDTH), false, 0);
+        assertProbe(store.tryConsume("a", BANDWIDTH), true, 2);
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void takesNoMoreTokensThanCapacityUnderContention() throws InterruptedException {
+
+        InMemoryBucketStore concurrentStore = new InMemoryBucketStore(10, () -> now);
+        BucketStore.Bandwidth bandwidth = new BucketStore.Bandwidth(100, 0.001);
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int j = 0; j < 100; j++) {
+                    if (concurrentStore.tryConsume("a", bandwidth).consumed()) {
+                        consumed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(100, consumed.get());
+    }
+
+    private static void assertProbe(BucketStore.Probe probe, boolean consumed, long remaining) {
+        assertEquals(consumed, probe.consumed());
+        assertEquals(remaining, probe.remaining());
+    }
+}
@@ -0,0 +1,127 @@
+package ru.aasmc.microservices.composite.product.readmodel;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.aasmc.microservices.composite.product.readmodel.LastGoodResults.Source.REVIEWS;
+
+class LastGoodResultsTests {
+
+    private static final int PRODUCT_ID = 1;
+
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private long now;
+    private LastGoodResults results;
+
+    @BeforeEach
+    void setUp() {
+        // max-age 10s, stale-while-revalidate 20s, stale-if-error 60s; refreshes run when the test says so
+        results = new LastGoodResults(true, Duration.ofSeconds(10), Duration.ofSeconds(20), Duration.ofSeconds(60),
+                100, refreshes::add, () -> now);
+    }
+
+    @Test
+    void servesFreshResultsWithinMaxAge() {
+
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("a"), "none"), "a", 0, false);
+
+        now += 10_000;
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("b"), "none"), "a", 10_000, false);
+        assertEquals(1, fetches.get());
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    void servesStaleResultsWhileRevalidating() {
+
+        results.get(REVIEWS, PRODUCT_ID, () -> fetch("a"), "none");
+
+        now += 15_000;
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("b"), "none"), "a", 15_000, true);
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("b"), "none"), "a", 15_000, true);
+        assertEquals(1, refreshes.size());
+
+        refreshes.get(0).run();
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("c"), "none"), "b", 0, false);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void keepsResultsWhenRevalidatingFails() {
+
+        results.get(REVIEWS, PRODUCT_ID, () -> fetch("a"), "none");
+
+        now += 15_000;
+        results.get(REVIEWS, PRODUCT_ID, this::fail, "none");
+        refreshes.get(0).run();
+
+        assertResult(results.get(REVIEWS, PRODUCT_ID, this::fail, "none"), "a", 15_000, true);
+    }
+
+    @Test
+    void servesStaleResultsIfErrorUpToTheirLimit() {
+
+        results.get(REVIEWS, PRODUCT_ID, () -> fetch("a"), "none");
+
+        now += 90_000;
+        assertResult(results.get(REVIEWS, PRODUCT_ID, this::fail, "none"), "a", 90_000, true);
+        assertTrue(refreshes.isEmpty());
+
+        now += 1;
+        assertResult(results.get(REVIEWS, PRODUCT_ID, this::fail, "none"), "none", 0, false);
+    }
+
+    @Test
+    void evictedResultsAreReadAgain() {
+
+        results.get(REVIEWS, PRODUCT_ID, () -> fetch("a"), "none");
+        results.evict(PRODUCT_ID);
+
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("b"), "none"), "b", 0, false);
+    }
+
+    @Test
+    void readsOverlappingAnEvictionAreNotKept() {
+
+        results.get(REVIEWS, PRODUCT_ID, () -> {
+            results.evict(PRODUCT_ID);
+            return fetch("a");
+        }, "none");
+
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("b"), "none"), "b", 0, false);
+    }
+
+    @Test
+    void readsOverlappingAnEvictionOfAnotherProductAreKept() {
+
+        results.get(REVIEWS, PRODUCT_ID, () -> {
+            results.evict(PRODUCT_ID + 1);
+            return fetch("a");
+        }, "none");
+
+        assertResult(results.get(REVIEWS, PRODUCT_ID, () -> fetch("b"), "none"), "a", 0, false);
+        assertEquals(1, fetches.get());
+    }
+
+    private String fetch(String value) {
+        fetches.incrementAndGet();
+        return value;
+    }
+
+    private String fail() {
+        throw new IllegalStateException("Connection refused");
+    }
+
+    private static void assertResult(LastGoodResults.Result<String> result, String value, long ageMs, boolean stale) {
+        assertEquals(value, result.value());
+        assertEquals(ageMs, result.ageMs());
+        assertEquals(stale, result.stale());
+    }
+}
@@ -0,0 +1,66 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import ru.aasmc.util.idempotency.IdempotencyContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.ExpectedCount.manyTimes;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class IdempotencyKeyInterceptorTests {
+
+    private static final String REVIEW = "http://review:8080/review";
+
+    private final List<String> keys = new ArrayList<>();
+    private RestTemplate restTemplate;
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        restTemplate.getInterceptors().add(new IdempotencyKeyInterceptor());
+        server.expect(manyTimes(), requestTo(REVIEW)).andExpect(request ->
+                keys.add(request.getHeaders().getFirst(IdempotencyContext.HEADER))).andRespond(withSuccess("{}", null));
+    }
+
+    @Test
+    void derivesSameKeyForSameCall() {
+
+        IdempotencyContext.runWith("request-1", () -> post("{\"reviewId\":1}"));
+        IdempotencyContext.runWith("request-1", () -> post("{\"reviewId\":1}"));
+
+        assertNotNull(keys.get(0));
+        assertEquals(keys.get(0), keys.get(1));
+    }
+
+    @Test
+    void derivesKeyPerCallAndRequest() {
+
+        IdempotencyContext.runWith("request-1", () -> post("{\"reviewId\":1}"));
+        IdempotencyContext.runWith("request-1", () -> post("{\"reviewId\":2}"));
+        IdempotencyContext.runWith("request-2", () -> post("{\"reviewId\":1}"));
+
+        assertEquals(3, keys.stream().distinct().count());
+    }
+
+    @Test
+    void sendsNoKeyOutsideKeyedRequest() {
+
+        post("{\"reviewId\":1}");
+
+        assertNull(keys.get(0));
+        assertNull(IdempotencyContext.current());
+    }
+
+    private void post(String body) {
+        restTemplate.postForObject(REVIEW, body, String.class);
+    }
+}
@@ -0,0 +1,81 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import ru.aasmc.api.exceptions.ServiceUnavailableException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class LoadSheddingInterceptorTests {
+
+    private static final String REVIEWS = "http://review:8080/review?productId=1";
+    private static final String PRODUCT = "http://product:8080/product/1";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private long now;
+    private RestTemplate restTemplate;
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+        restTemplate.getInterceptors().add(new LoadSheddingInterceptor(registry, () -> now));
+    }
+
+    @Test
+    void opensCircuitForRetryAfter() {
+
+        HttpHeaders retryAfter = new HttpHeaders();
+        retryAfter.set(HttpHeaders.RETRY_AFTER, "2");
+        server.expect(once(), requestTo(REVIEWS)).andRespond(withStatus(SERVICE_UNAVAILABLE).headers(retryAfter));
+
+        ServiceUnavailableException rejected = assertThrows(ServiceUnavailableException.class, () -> get(REVIEWS));
+        assertEquals(2, rejected.getRetryAfterSeconds());
+
+        // No call reaches the service until Retry-After has passed
+        now += 1_500;
+        ServiceUnavailableException shortCircuited = assertThrows(ServiceUnavailableException.class, () -> get(REVIEWS));
+        assertEquals(1, shortCircuited.getRetryAfterSeconds());
+        server.verify();
+
+        server.reset();
+        server.expect(once(), requestTo(REVIEWS)).andRespond(withSuccess("[]", null));
+        now += 500;
+        assertEquals("[]", get(REVIEWS));
+        server.verify();
+
+        assertEquals(1, count("rejected"));
+        assertEquals(1, count("short-circuited"));
+    }
+
+    @Test
+    void keepsCircuitsPerService() {
+
+        server.expect(once(), requestTo(REVIEWS)).andRespond(withStatus(SERVICE_UNAVAILABLE));
+        server.expect(once(), requestTo(PRODUCT)).andRespond(withSuccess("{}", null));
+
+        ServiceUnavailableException rejected = assertThrows(ServiceUnavailableException.class, () -> get(REVIEWS));
+        assertEquals(1, rejected.getRetryAfterSeconds());
+        assertEquals("{}", get(PRODUCT));
+        server.verify();
+    }
+
+    private String get(String url) {
+        return restTemplate.getForObject(url, String.class);
+    }
+
+    private double count(String result) {
+        return registry.counter("composite.load-shedding", "service", "review:8080", "result", result).count();
+    }
+}
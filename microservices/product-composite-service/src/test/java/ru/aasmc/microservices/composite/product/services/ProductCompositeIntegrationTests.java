@@ -0,0 +1,59 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import ru.aasmc.api.exceptions.InvalidInputException;
+import ru.aasmc.api.exceptions.NotFoundException;
+import ru.aasmc.util.http.HttpErrorInfoJson;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+
+class ProductCompositeIntegrationTests {
+
+    private static final String RECOMMENDATION = "http://recommendation:8080/recommendation";
+    private static final String REVIEW = "http://review:8080/review";
+
+    private MockRestServiceServer server;
+    private ProductCompositeIntegration integration;
+
+    @BeforeEach
+    void setUp() {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        integration = new ProductCompositeIntegration(restTemplate, new ObjectMapper(),
+                "product", 8080, "recommendation", 8080, "review", 8080);
+    }
+
+    @Test
+    void fetchTopRecommendationsMapsUnprocessableEntity() {
+
+        String message = "Invalid limit: 0, must be between 1 and 100";
+        server.expect(requestTo(RECOMMENDATION + "/top?productId=1&limit=0&orderBy=rating"))
+                .andRespond(withStatus(UNPROCESSABLE_ENTITY).contentType(APPLICATION_JSON)
+                        .body(HttpErrorInfoJson.write(UNPROCESSABLE_ENTITY, "/recommendation/top", message)));
+
+        InvalidInputException ex = assertThrows(InvalidInputException.class,
+                () -> integration.fetchTopRecommendations(1, 0, "rating"));
+        assertEquals(message, ex.getMessage());
+        server.verify();
+    }
+
+    @Test
+    void fetchReviewsMapsNotFound() {
+
+        server.expect(requestTo(REVIEW + "?productId=1"))
+                .andRespond(withStatus(NOT_FOUND).contentType(APPLICATION_JSON)
+                        .body(HttpErrorInfoJson.write(NOT_FOUND, "/review", "No reviews")));
+
+        assertThrows(NotFoundException.class, () -> integration.fetchReviews(1));
+        server.verify();
+    }
+}
@@ -0,0 +1,160 @@
+package ru.aasmc.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.http.HttpMethod.DELETE;
+import static org.springframework.http.HttpMethod.POST;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
+
+class RetryInterceptorTests {
+
+    private static final String REVIEWS = "http://review:8080/review?productId=1";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Long> backoffs = new ArrayList<>();
+    private RestTemplate restTemplate;
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        setUp(new RetryBudget(0.1, 20));
+    }
+
+    private void setUp(RetryBudget budget) {
+        setUp(budget, Duration.ofMillis(100), Duration.ofMillis(150));
+    }
+
+    private void setUp(RetryBudget budget, Duration initialBackoff, Duration maxBackoff) {
+        restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        restTemplate.getInterceptors().add(new RetryInterceptor(3, initialBackoff, maxBackoff,
+                budget, registry, backoffs::add));
+    }
+
+    @Test
+    void retriesConnectionResets() {
+
+        server.expect(times(2), requestTo(REVIEWS)).andRespond(withException(new SocketException("Connection reset")));
+        server.expect(once(), requestTo(REVIEWS)).andRespond(withSuccess("[]", null));
+
+        assertEquals("[]", restTemplate.getForObject(REVIEWS, String.class));
+        server.verify();
+
+        assertEquals(2, backoffs.size());
+        assertTrue(backoffs.get(0) <= 100);
+        // Capped at max-backoff
+        assertTrue(backoffs.get(1) <= 150);
+        assertEquals(2, count("retried"));
+    }
+
+    @Test
+    void capsLongBackoffsThatWouldBlockTheEventLoop() {
+
+        setUp(new RetryBudget(0.1, 20), Duration.ofSeconds(1), Duration.ofSeconds(10));
+
+        server.expect(times(2), requestTo(REVIEWS)).andRespond(withException(new SocketException("Connection reset")));
+        server.expect(once(), requestTo(REVIEWS)).andRespond(withSuccess("[]", null));
+
+        assertEquals("[]", restTemplate.getForObject(REVIEWS, String.class));
+        server.verify();
+        assertEquals(2, backoffs.size());
+        backoffs.forEach(backoff -> assertTrue(backoff <= RetryInterceptor.MAX_BACKOFF.toMillis()));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+
+        server.expect(times(3), requestTo(REVIEWS)).andRespond(withException(new SocketException("Connection reset")));
+
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(REVIEWS, String.class));
+        server.verify();
+        assertEquals(2, count("retried"));
+        assertEquals(1, count("attempts-exhausted"));
+    }
+
+    @Test
+    void retriesDeletes() {
+
+        server.expect(once(), requestTo(REVIEWS)).andExpect(method(DELETE))
+                .andRespond(withException(new SocketException("Connection reset")));
+        server.expect(once(), requestTo(REVIEWS)).andExpect(method(DELETE)).andRespond(withSuccess());
+
+        restTemplate.delete(REVIEWS);
+        server.verify();
+    }
+
+    @Test
+    void doesNotRetryPosts() {
+
+        server.expect(once(), requestTo(REVIEWS)).andExpect(method(POST))
+                .andRespond(withException(new SocketException("Connection reset")));
+
+        assertThrows(ResourceAccessException.class, () -> restTemplate.postForObject(REVIEWS, "{}", String.class));
+        server.verify();
+        assertTrue(backoffs.isEmpty());
+    }
+
+    @Test
+    void retriesPostsWithIdempotencyKey() {
+
+        server.expect(once(), requestTo(REVIEWS)).andExpect(method(POST))
+                .andRespond(withException(new SocketException("Connection reset")));
+        server.expect(once(), requestTo(REVIEWS)).andExpect(method(POST)).andExpect(header("Idempotency-Key", "key-1"))
+                .andRespond(withSuccess("{}", null));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", "key-1");
+        assertEquals("{}", restTemplate.postForObject(REVIEWS, new HttpEntity<>("{}", headers), String.class));
+        server.verify();
+        assertEquals(1, backoffs.size());
+    }
+
+    @Test
+    void doesNotRetryErrorResponses() {
+
+        server.expect(once(), requestTo(REVIEWS)).andRespond(withStatus(INTERNAL_SERVER_ERROR));
+
+        assertThrows(RuntimeException.class, () -> restTemplate.getForObject(REVIEWS, String.class));
+        server.verify();
+        assertTrue(backoffs.isEmpty());
+    }
+
+    @Test
+    void stopsRetryingWhenBudgetIsSpent() {
+
+        // One retry to start with, and a tenth of one per call
+        setUp(new RetryBudget(0.1, 1));
+
+        server.expect(times(2), requestTo(REVIEWS)).andRespond(withException(new SocketException("Connection reset")));
+        server.expect(once(), requestTo(REVIEWS)).andRespond(withException(new SocketException("Connection reset")));
+
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(REVIEWS, String.class));
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(REVIEWS, String.class));
+        server.verify();
+        assertEquals(1, count("retried"));
+        assertEquals(2, count("budget-exhausted"));
+    }
+
+    private double count(String result) {
+        return registry.counter("composite.retries", "service", "review:8080", "result", result).count();
+    }
+}
@@ -2,8 +2,11 @@ package ru.aasmc.microservices.core.product;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.event.ContextRefreshedEvent;
@@ -23,7 +26,10 @@ import ru.aasmc.microservices.core.product.persistence.ProductEntity;
 public class ProductServiceApplication {
 
     public static void main(String[] args) {
-        ConfigurableApplicationContext ctx = SpringApplication.run(ProductServiceApplication.class, args);
+        SpringApplication application = new SpringApplication(ProductServiceApplication.class);
+        // Records the startup phases for the startup actuator endpoint and the application.startup.phase metrics
+        application.setApplicationStartup(new BufferingApplicationStartup(4096));
+        ConfigurableApplicationContext ctx = application.run(args);
         String mongoDbHost = ctx.getEnvironment().getProperty("spring.data.mongodb.host");
         String mongoDbPort = ctx.getEnvironment().getProperty("spring.data.mongodb.port");
         log.info("Connected to MongoDb: {}:{}", mongoDbHost, mongoDbPort);
@@ -32,8 +38,35 @@ public class ProductServiceApplication {
     @Autowired
     MongoOperations mongoTemplate;
 
+    // With background-indexes the service takes traffic before the unique index on productId exists,
+    // duplicates written in between make its creation fail until they are removed
+    @Value("${app.startup.background-indexes:false}")
+    boolean backgroundIndexes;
+
     @EventListener(ContextRefreshedEvent.class)
     public void initIndicesAfterStartup() {
+        if (!backgroundIndexes) {
+            ensureIndices();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initIndicesInBackground() {
+        if (backgroundIndexes) {
+            Thread thread = new Thread(() -> {
+                try {
+                    ensureIndices();
+                    log.info("Created the indices of {}", ProductEntity.class.getSimpleName());
+                } catch (RuntimeException ex) {
+                    log.error("Could not create the indices of {}", ProductEntity.class.getSimpleName(), ex);
+                }
+            }, "index-init");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void ensureIndices() {
         MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext =
                 mongoTemplate.getConverter().getMappingContext();
         IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
@@ -1,9 +1,17 @@
 package ru.aasmc.microservices.core.product.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.List;
 import java.util.Optional;
 
-public interface ProductRepository extends PagingAndSortingRepository<ProductEntity, String> {
+public interface ProductRepository extends PagingAndSortingRepository<ProductEntity, String>, ProductRepositoryCustom {
     Optional<ProductEntity> findByProductId(int productId);
+
+    /**
+     * Keyset page of products, pass the sort by productId and the page size in the pageable.
+     * Served by the unique productId index, so the cost does not grow with the depth of the page.
+     */
+    List<ProductEntity> findByProductIdGreaterThan(int afterProductId, Pageable pageable);
 }
@@ -0,0 +1,12 @@
+package ru.aasmc.microservices.core.product.persistence;
+
+public interface ProductRepositoryCustom {
+
+    /**
+     * Atomically replaces the product with its productId, bumping its version, or creates it at version 0.
+     * With mustExist only an existing product is replaced, with expectedVersion only one at that version.
+     *
+     * @return the stored product, or null if it did not meet the condition
+     */
+    ProductEntity upsert(ProductEntity entity, boolean mustExist, Integer expectedVersion);
+}
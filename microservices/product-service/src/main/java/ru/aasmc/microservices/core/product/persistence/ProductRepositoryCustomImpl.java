@@ -0,0 +1,44 @@
+package ru.aasmc.microservices.core.product.persistence;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.springframework.data.mongodb.core.aggregation.LiteralOperators.Literal.asLiteral;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    // A document the upsert inserts starts at version 0, like a saved one
+    private static final AggregationExpression NEXT_VERSION =
+            ArithmeticOperators.valueOf(ConditionalOperators.ifNull("version").then(-1)).add(1);
+
+    private final MongoOperations mongoOperations;
+
+    @Override
+    public ProductEntity upsert(ProductEntity entity, boolean mustExist, Integer expectedVersion) {
+        Query query = query(where("productId").is(entity.getProductId()));
+        if (expectedVersion != null) {
+            query.addCriteria(where("version").is(expectedVersion));
+        }
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("name").toValue(asLiteral(entity.getName()))
+                .set("weight").toValue(entity.getWeight())
+                .set("version").toValue(NEXT_VERSION);
+        FindAndModifyOptions options = FindAndModifyOptions.options().returnNew(true).upsert(!mustExist);
+        try {
+            return mongoOperations.findAndModify(query, update, options, ProductEntity.class);
+        } catch (DuplicateKeyException ex) {
+            // A concurrent upsert inserted the product first, it is replaced now
+            return mongoOperations.findAndModify(query, update, options, ProductEntity.class);
+        }
+    }
+}
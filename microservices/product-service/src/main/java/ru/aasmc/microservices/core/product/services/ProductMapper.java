@@ -6,6 +6,8 @@ import org.mapstruct.Mappings;
 import ru.aasmc.api.core.product.Product;
 import ru.aasmc.microservices.core.product.persistence.ProductEntity;
 
+import java.util.List;
+
 @Mapper(componentModel = "spring")
 public interface ProductMapper {
 
@@ -19,4 +21,6 @@ public interface ProductMapper {
             @Mapping(target = "version", ignore = true)
     })
     ProductEntity apiToEntity(Product api);
+
+    List<Product> entityListToApiList(List<ProductEntity> entity);
 }
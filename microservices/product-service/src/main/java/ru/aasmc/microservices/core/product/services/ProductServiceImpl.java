@@ -1,57 +1,150 @@
 package ru.aasmc.microservices.core.product.services;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import ru.aasmc.api.core.product.Product;
 import ru.aasmc.api.core.product.ProductService;
+import ru.aasmc.api.event.Event;
 import ru.aasmc.api.exceptions.InvalidInputException;
 import ru.aasmc.api.exceptions.NotFoundException;
+import ru.aasmc.api.exceptions.PreconditionFailedException;
 import ru.aasmc.microservices.core.product.persistence.ProductEntity;
 import ru.aasmc.microservices.core.product.persistence.ProductRepository;
+import ru.aasmc.util.cache.NegativeCache;
+import ru.aasmc.util.cache.TwoTierCache;
+import ru.aasmc.util.cache.TwoTierCacheFactory;
+import ru.aasmc.util.events.EventPublisher;
+import ru.aasmc.util.http.IfMatch;
 import ru.aasmc.util.http.ServiceUtil;
 
+import java.util.List;
+
+import static ru.aasmc.api.event.EventTopics.PRODUCTS;
+
 @RestController
 @Slf4j
-@RequiredArgsConstructor
 public class ProductServiceImpl implements ProductService {
     private final ServiceUtil serviceUtil;
     private final ProductRepository repository;
     private final ProductMapper mapper;
+    private final EventPublisher eventPublisher;
+    private final TwoTierCache<Integer, ProductEntity> cache;
+    private final NegativeCache<Integer> notFoundCache;
+    private final int maxPageSize;
+
+    public ProductServiceImpl(
+            ServiceUtil serviceUtil,
+            ProductRepository repository,
+            ProductMapper mapper,
+            EventPublisher eventPublisher,
+            TwoTierCacheFactory cacheFactory,
+            @Value("${app.product.max-page-size:1000}") int maxPageSize) {
+        this.serviceUtil = serviceUtil;
+        this.repository = repository;
+        this.mapper = mapper;
+        this.eventPublisher = eventPublisher;
+        this.cache = cacheFactory.create("products", ProductEntity.class);
+        this.notFoundCache = cacheFactory.createNegative("products");
+        this.maxPageSize = maxPageSize;
+    }
 
     @Override
     public Product createProduct(Product body) {
         try {
             ProductEntity entity = mapper.apiToEntity(body);
             ProductEntity newEntity = repository.save(entity);
+            cache.evict(newEntity.getProductId());
+            notFoundCache.invalidate(newEntity.getProductId());
             log.debug("createProduct: entity created for productId: {}", body.getProductId());
-            return mapper.entityToApi(newEntity);
+            Product product = mapper.entityToApi(newEntity);
+            eventPublisher.publish(PRODUCTS, new Event<>(Event.Type.CREATE, product.getProductId(), product));
+            return product;
         } catch (DuplicateKeyException dke) {
-            throw new InvalidInputException("Duplicate key, Product Id: " + body.getProductId());
+            throw InvalidInputException.withoutStackTrace("Duplicate key, Product Id: " + body.getProductId());
+        }
+    }
+
+    @Override
+    public ResponseEntity<Product> upsertProduct(String ifMatch, Product body) {
+        if (body.getProductId() < 1) {
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + body.getProductId());
+        }
+        IfMatch condition = IfMatch.parse(ifMatch);
+
+        ProductEntity entity = repository.upsert(mapper.apiToEntity(body), condition.mustExist(), condition.version());
+        if (entity == null) {
+            throw new PreconditionFailedException("No product found for productId: " + body.getProductId()
+                    + (condition.version() == null ? "" : " at version " + condition.version()));
         }
+        cache.evict(entity.getProductId());
+        notFoundCache.invalidate(entity.getProductId());
+        log.debug("upsertProduct: stored productId: {} at version {}", entity.getProductId(), entity.getVersion());
+
+        Product product = mapper.entityToApi(entity);
+        eventPublisher.publish(PRODUCTS, new Event<>(Event.Type.CREATE, product.getProductId(), product));
+        return ResponseEntity.ok().eTag(IfMatch.eTag(entity.getVersion())).body(product);
     }
 
     @Override
     public Product getProduct(int productId) {
         if (productId < 1) {
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+        }
+
+        String notFound = notFoundCache.getMissing(productId);
+        if (notFound != null) {
+            throw NotFoundException.withoutStackTrace(notFound);
         }
 
-        ProductEntity entity = repository.findByProductId(productId)
-                .orElseThrow(() -> new NotFoundException("No product found for productId: " + productId));
+        ProductEntity entity = cache.get(productId, () -> repository.findByProductId(productId).orElse(null));
+        if (entity == null) {
+            String message = "No product found for productId: " + productId;
+            notFoundCache.recordMissing(productId, message);
+            throw NotFoundException.withoutStackTrace(message);
+        }
 
         Product response = mapper.entityToApi(entity);
         response.setServiceAddress(serviceUtil.getServiceAddress());
 
-        log.debug("getProduct: found productId: {}", response.getProductId());
+        if (log.isDebugEnabled()) {
+            log.debug("getProduct: found productId: {}", response.getProductId());
+        }
 
         return response;
     }
 
+    @Override
+    public List<Product> getProducts(int afterProductId, int limit) {
+        if (afterProductId < 0) {
+            throw InvalidInputException.withoutStackTrace("Invalid afterProductId: " + afterProductId);
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            throw InvalidInputException.withoutStackTrace("Invalid limit: " + limit + ", must be between 1 and " + maxPageSize);
+        }
+
+        List<ProductEntity> entityList = repository.findByProductIdGreaterThan(afterProductId,
+                PageRequest.of(0, limit, Sort.by("productId")));
+        List<Product> list = mapper.entityListToApiList(entityList);
+
+        if (log.isDebugEnabled()) {
+            log.debug("getProducts: response size: {}", list.size());
+        }
+
+        return list;
+    }
+
     @Override
     public void deleteProduct(int productId) {
         log.debug("deleteProduct: tries to delete an entity with productId: {}", productId);
-        repository.findByProductId(productId).ifPresent(repository::delete);
+        repository.findByProductId(productId).ifPresent(entity -> {
+            repository.delete(entity);
+            cache.evict(productId);
+            eventPublisher.publish(PRODUCTS, new Event<>(Event.Type.DELETE, productId, null));
+        });
     }
 }
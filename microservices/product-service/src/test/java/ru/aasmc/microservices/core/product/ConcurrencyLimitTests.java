@@ -0,0 +1,54 @@
+package ru.aasmc.microservices.core.product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+// A limit of zero rejects every request, as if the service was saturated
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"app.concurrency-limit.initial-limit=0",
+		"app.concurrency-limit.min-limit=0",
+		"app.concurrency-limit.max-limit=0",
+		"app.concurrency-limit.retry-after=2s"})
+class ConcurrencyLimitTests extends MongoDbTestBase {
+
+	@Autowired
+	private WebTestClient client;
+	@Autowired
+	private MeterRegistry registry;
+
+	@Test
+	void rejectsRequestsBeyondLimit() {
+
+		double rejected = registry.counter("concurrency.rejected").count();
+
+		client.get()
+				.uri("/product/1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(SERVICE_UNAVAILABLE)
+				.expectHeader().valueEquals("Retry-After", "2")
+				.expectBody()
+				.jsonPath("$.path").isEqualTo("/product/1")
+				.jsonPath("$.message").isEqualTo("Too many concurrent requests, limit: 0");
+
+		assertEquals(rejected + 1, registry.counter("concurrency.rejected").count());
+		assertEquals(0, registry.get("concurrency.limit").gauge().value());
+		assertEquals(0, registry.get("concurrency.in-flight").gauge().value());
+	}
+
+	@Test
+	void doesNotLimitActuator() {
+
+		client.get()
+				.uri("/actuator/health")
+				.exchange()
+				.expectStatus().isOk();
+	}
+}
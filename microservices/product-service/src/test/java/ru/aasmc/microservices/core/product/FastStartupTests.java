@@ -0,0 +1,79 @@
+package ru.aasmc.microservices.core.product;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ru.aasmc.api.core.product.Product;
+import ru.aasmc.microservices.core.product.persistence.ProductEntity;
+import ru.aasmc.microservices.core.product.persistence.ProductRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static reactor.core.publisher.Mono.just;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("fast-startup")
+class FastStartupTests extends MongoDbTestBase {
+
+	@Autowired
+	private WebTestClient client;
+	@Autowired
+	private ProductRepository repository;
+	@Autowired
+	private MongoOperations mongoTemplate;
+
+	@BeforeEach
+	void setupDb() {
+		repository.deleteAll();
+	}
+
+	@Test
+	void readyWithoutWaitingForIndices() {
+
+		client.get()
+				.uri("/actuator/health/readiness")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.status").isEqualTo("UP");
+	}
+
+	@Test
+	void createsIndicesInBackground() throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!hasUniqueProductIdIndex() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertTrue(hasUniqueProductIdIndex());
+
+		postAndVerifyProduct(1, OK);
+		postAndVerifyProduct(1, UNPROCESSABLE_ENTITY);
+	}
+
+	private boolean hasUniqueProductIdIndex() {
+		return mongoTemplate.indexOps(ProductEntity.class).getIndexInfo().stream()
+				.filter(IndexInfo::isUnique)
+				.anyMatch(index -> index.isIndexForFields(List.of("productId")));
+	}
+
+	private void postAndVerifyProduct(int productId, HttpStatus expectedStatus) {
+		Product product = new Product(productId, "Name " + productId, productId, "SA");
+		client.post()
+				.uri("/product")
+				.body(just(product), Product.class)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus);
+	}
+}
@@ -124,6 +124,29 @@ public class PersistenceTests extends MongoDbTestBase {
         nextPage = testNextPage(nextPage, "[1009, 1010]", false);
     }
 
+    @Test
+    void keysetPaging() {
+
+        repository.deleteAll();
+
+        List<ProductEntity> newProducts = rangeClosed(1001, 1010)
+                .mapToObj(i -> new ProductEntity(i, "name " + i, i))
+                .collect(Collectors.toList());
+        repository.saveAll(newProducts);
+
+        int afterProductId = testNextKeysetPage(0, "[1001, 1002, 1003, 1004]");
+        afterProductId = testNextKeysetPage(afterProductId, "[1005, 1006, 1007, 1008]");
+        afterProductId = testNextKeysetPage(afterProductId, "[1009, 1010]");
+        testNextKeysetPage(afterProductId, "[]");
+    }
+
+    private int testNextKeysetPage(int afterProductId, String expectedProductIds) {
+        List<ProductEntity> products = repository.findByProductIdGreaterThan(afterProductId, PageRequest.of(0, 4, ASC, "productId"));
+        assertEquals(expectedProductIds, products.stream()
+                .map(p -> p.getProductId()).toList().toString());
+        return products.isEmpty() ? afterProductId : products.get(products.size() - 1).getProductId();
+    }
+
     private Pageable testNextPage(Pageable nextPage, String expectedProductIds, boolean expectsNextPage) {
         Page<ProductEntity> productPage = repository.findAll(nextPage);
         assertEquals(expectedProductIds, productPage.getContent().stream()
@@ -1,5 +1,6 @@
 package ru.aasmc.microservices.core.product;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,13 +8,24 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import ru.aasmc.api.core.product.Product;
+import ru.aasmc.api.event.Event;
+import ru.aasmc.microservices.core.product.persistence.ProductEntity;
 import ru.aasmc.microservices.core.product.persistence.ProductRepository;
+import ru.aasmc.util.cache.TwoTierCacheFactory;
+import ru.aasmc.util.events.InMemoryEventBroker;
+import ru.aasmc.util.events.TopicEvent;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
+import static ru.aasmc.api.event.EventTopics.PRODUCTS;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 class ProductServiceApplicationTests extends MongoDbTestBase {
@@ -22,10 +34,17 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
 	private WebTestClient client;
 	@Autowired
 	private ProductRepository repository;
+	@Autowired
+	private InMemoryEventBroker broker;
+	@Autowired
+	private TwoTierCacheFactory cacheFactory;
+	@Autowired
+	private MeterRegistry meterRegistry;
 
 	@BeforeEach
 	void setupDb() {
 		repository.deleteAll();
+		cacheFactory.clearAll();
 	}
 
 	@Test
@@ -40,6 +59,27 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
 		getAndVerifyProduct(productId, OK).jsonPath("$.productId").isEqualTo(productId);
 	}
 
+	@Test
+	void getProductsByKeyset() {
+
+		postAndVerifyProduct(3, OK);
+		postAndVerifyProduct(1, OK);
+		postAndVerifyProduct(2, OK);
+
+		getAndVerifyProduct("?limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].productId").isEqualTo(1)
+				.jsonPath("$[1].productId").isEqualTo(2);
+
+		getAndVerifyProduct("?afterProductId=2&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].productId").isEqualTo(3);
+
+		getAndVerifyProduct("?limit=0", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/product")
+				.jsonPath("$.message").isEqualTo("Invalid limit: 0, must be between 1 and 1000");
+	}
+
 	@Test
 	void duplicateError() {
 
@@ -54,6 +94,98 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
 				.jsonPath("$.message").isEqualTo("Duplicate key, Product Id: " + productId);
 	}
 
+	@Test
+	void upsertProduct() {
+
+		int productId = 1;
+
+		// Created at version 0 like a POST
+		putAndVerifyProduct(null, new Product(productId, "Name", 1, null), OK)
+				.expectHeader().valueEquals("ETag", "\"0\"")
+				.expectBody().jsonPath("$.name").isEqualTo("Name");
+
+		// Replaces the product without a delete
+		putAndVerifyProduct("\"0\"", new Product(productId, "New name", 2, null), OK)
+				.expectHeader().valueEquals("ETag", "\"1\"");
+		getAndVerifyProduct(productId, OK)
+				.jsonPath("$.name").isEqualTo("New name")
+				.jsonPath("$.weight").isEqualTo(2);
+
+		// Unconditional upserts replace created products as well
+		postAndVerifyProduct(2, OK);
+		putAndVerifyProduct(null, new Product(2, "Name 2", 2, null), OK)
+				.expectHeader().valueEquals("ETag", "\"1\"");
+		assertEquals(2, repository.count());
+	}
+
+	@Test
+	void upsertProductPreconditionFailed() {
+
+		int productId = 1;
+
+		putAndVerifyProduct("*", new Product(productId, "Name", 1, null), PRECONDITION_FAILED)
+				.expectBody().jsonPath("$.message").isEqualTo("No product found for productId: " + productId);
+		assertFalse(repository.findByProductId(productId).isPresent());
+
+		putAndVerifyProduct(null, new Product(productId, "Name", 1, null), OK);
+		putAndVerifyProduct("\"0\"", new Product(productId, "First", 1, null), OK);
+
+		// A writer that read version 0 lost the race
+		putAndVerifyProduct("\"0\"", new Product(productId, "Second", 1, null), PRECONDITION_FAILED)
+				.expectBody().jsonPath("$.message").isEqualTo("No product found for productId: 1 at version 0");
+		getAndVerifyProduct(productId, OK).jsonPath("$.name").isEqualTo("First");
+
+		putAndVerifyProduct("version 2", new Product(productId, "Name", 1, null), BAD_REQUEST)
+				.expectBody().jsonPath("$.message").isEqualTo("Invalid If-Match: version 2, must be a version like \"3\" or *");
+	}
+
+	@Test
+	void replaysCreateWithIdempotencyKey() {
+
+		int productId = 1;
+
+		postWithIdempotencyKey("create-1", new Product(productId, "Name", 1, null))
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().doesNotExist("Idempotent-Replayed")
+				.expectBody().jsonPath("$.productId").isEqualTo(productId);
+
+		// A retry gets the original response instead of a duplicate key error
+		postWithIdempotencyKey("create-1", new Product(productId, "Name", 1, null))
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().valueEquals("Idempotent-Replayed", "true")
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody().jsonPath("$.productId").isEqualTo(productId);
+
+		assertEquals(1, repository.count());
+	}
+
+	@Test
+	void rejectsIdempotencyKeyOfAnotherRequest() {
+
+		postWithIdempotencyKey("create-2", new Product(1, "Name", 1, null))
+				.expectStatus().isEqualTo(OK);
+
+		postWithIdempotencyKey("create-2", new Product(2, "Name", 1, null))
+				.expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+				.expectBody()
+				.jsonPath("$.path").isEqualTo("/product")
+				.jsonPath("$.message").isEqualTo("Idempotency-Key create-2 was used for another request");
+
+		assertFalse(repository.findByProductId(2).isPresent());
+	}
+
+	@Test
+	void rejectsTooLargeRequestWithIdempotencyKey() {
+
+		// Beyond the 256KB max-request-size
+		postWithIdempotencyKey("create-3", new Product(1, "N".repeat(300 * 1024), 1, null))
+				.expectStatus().isEqualTo(PAYLOAD_TOO_LARGE)
+				.expectBody()
+				.jsonPath("$.path").isEqualTo("/product");
+
+		assertFalse(repository.findByProductId(1).isPresent());
+	}
+
 	@Test
 	void deleteProduct() {
 
@@ -68,6 +200,44 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
 		deleteAndVerifyProduct(productId, OK);
 	}
 
+	@Test
+	void getProductFromCache() {
+
+		int productId = 1;
+		double hitsBefore = nearHits();
+
+		postAndVerifyProduct(productId, OK);
+		getAndVerifyProduct(productId, OK);
+
+		// Removed behind the service's back, the cached product is still served
+		repository.deleteAll();
+		getAndVerifyProduct(productId, OK).jsonPath("$.productId").isEqualTo(productId);
+		assertEquals(hitsBefore + 1, nearHits());
+
+		// Writes through the service evict it
+		postAndVerifyProduct(productId, OK);
+		deleteAndVerifyProduct(productId, OK);
+		getAndVerifyProduct(productId, NOT_FOUND);
+	}
+
+	@Test
+	void publishesEventsInOrder() throws Exception {
+
+		int productId = 1;
+		CompletableFuture<List<TopicEvent>> events = broker.events(PRODUCTS).take(2).collectList().toFuture();
+
+		postAndVerifyProduct(productId, OK);
+		postAndVerifyProduct(productId, UNPROCESSABLE_ENTITY);
+		deleteAndVerifyProduct(productId, OK);
+		deleteAndVerifyProduct(productId, OK);
+
+		List<TopicEvent> received = events.get(5, TimeUnit.SECONDS);
+		assertEquals(Event.Type.CREATE, received.get(0).event().getEventType());
+		assertEquals(productId, ((Product) received.get(0).event().getData()).getProductId());
+		assertEquals(Event.Type.DELETE, received.get(1).event().getEventType());
+		assertEquals(productId, received.get(1).event().getKey());
+	}
+
 	@Test
 	void getProductInvalidParameterString() {
 
@@ -81,10 +251,29 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
 
 		int productIdNotFound = 13;
 		getAndVerifyProduct(productIdNotFound, NOT_FOUND)
+				.jsonPath("$.httpStatus").isEqualTo("NOT_FOUND")
+				.jsonPath("$.timestamp").exists()
 				.jsonPath("$.path").isEqualTo("/product/" + productIdNotFound)
 				.jsonPath("$.message").isEqualTo("No product found for productId: " + productIdNotFound);
 	}
 
+	@Test
+	void getProductNotFoundFromCache() {
+
+		int productIdNotFound = 13;
+		getAndVerifyProduct(productIdNotFound, NOT_FOUND);
+
+		// Created behind the service's back, the product is still reported missing
+		repository.save(new ProductEntity(productIdNotFound, "Name " + productIdNotFound, 1));
+		getAndVerifyProduct(productIdNotFound, NOT_FOUND)
+				.jsonPath("$.message").isEqualTo("No product found for productId: " + productIdNotFound);
+		repository.deleteAll();
+
+		// Creating it through the service invalidates the entry
+		postAndVerifyProduct(productIdNotFound, OK);
+		getAndVerifyProduct(productIdNotFound, OK).jsonPath("$.productId").isEqualTo(productIdNotFound);
+	}
+
 	@Test
 	void getProductInvalidParameterNegativeValue() {
 
@@ -95,6 +284,12 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
 				.jsonPath("$.message").isEqualTo("Invalid productId: " + productIdInvalid);
 	}
 
+	private double nearHits() {
+		return meterRegistry.get("cache.gets")
+				.tags("cache", "products", "tier", "near", "result", "hit")
+				.counter().count();
+	}
+
 	private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
 		return getAndVerifyProduct("/" + productId, expectedStatus);
 	}
@@ -121,6 +316,29 @@ class ProductServiceApplicationTests extends MongoDbTestBase {
 				.expectBody();
 	}
 
+	private WebTestClient.ResponseSpec putAndVerifyProduct(String ifMatch, Product product, HttpStatus expectedStatus) {
+		return client.put()
+				.uri("/product")
+				.headers(headers -> {
+					if (ifMatch != null) {
+						headers.setIfMatch(ifMatch);
+					}
+				})
+				.body(just(product), Product.class)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus);
+	}
+
+	private WebTestClient.ResponseSpec postWithIdempotencyKey(String key, Product product) {
+		return client.post()
+				.uri("/product")
+				.header("Idempotency-Key", key)
+				.body(just(product), Product.class)
+				.accept(APPLICATION_JSON)
+				.exchange();
+	}
+
 	private WebTestClient.BodyContentSpec deleteAndVerifyProduct(int productId, HttpStatus expectedStatus) {
 		return client.delete()
 				.uri("/product/" + productId)
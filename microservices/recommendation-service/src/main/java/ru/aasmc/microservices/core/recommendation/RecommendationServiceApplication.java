@@ -2,8 +2,11 @@ package ru.aasmc.microservices.core.recommendation;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.event.ContextRefreshedEvent;
@@ -15,15 +18,20 @@ import org.springframework.data.mongodb.core.index.IndexResolver;
 import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
 import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
 import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationEntity;
 
 @SpringBootApplication
+@EnableScheduling
 @ComponentScan("ru.aasmc")
 @Slf4j
 public class RecommendationServiceApplication {
 
 	public static void main(String[] args) {
-		ConfigurableApplicationContext ctx = SpringApplication.run(RecommendationServiceApplication.class, args);
+		SpringApplication application = new SpringApplication(RecommendationServiceApplication.class);
+		// Records the startup phases for the startup actuator endpoint and the application.startup.phase metrics
+		application.setApplicationStartup(new BufferingApplicationStartup(4096));
+		ConfigurableApplicationContext ctx = application.run(args);
 		String mongodDbHost = ctx.getEnvironment().getProperty("spring.data.mongodb.host");
 		String mongodDbPort = ctx.getEnvironment().getProperty("spring.data.mongodb.port");
 		log.info("Connected to MongoDb: " + mongodDbHost + ":" + mongodDbPort);
@@ -32,8 +40,35 @@ public class RecommendationServiceApplication {
 	@Autowired
 	MongoOperations mongoTemplate;
 
+	// With background-indexes the service takes traffic before its indices exist, until then reads by productId
+	// scan the collection and duplicate recommendations are not rejected, making the unique index fail to build
+	@Value("${app.startup.background-indexes:false}")
+	boolean backgroundIndexes;
+
 	@EventListener(ContextRefreshedEvent.class)
 	public void initIndicesAfterStartup() {
+		if (!backgroundIndexes) {
+			ensureIndices();
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void initIndicesInBackground() {
+		if (backgroundIndexes) {
+			Thread thread = new Thread(() -> {
+				try {
+					ensureIndices();
+					log.info("Created the indices of {}", RecommendationEntity.class.getSimpleName());
+				} catch (RuntimeException ex) {
+					log.error("Could not create the indices of {}", RecommendationEntity.class.getSimpleName(), ex);
+				}
+			}, "index-init");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void ensureIndices() {
 
 		MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext = mongoTemplate.getConverter().getMappingContext();
 		IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
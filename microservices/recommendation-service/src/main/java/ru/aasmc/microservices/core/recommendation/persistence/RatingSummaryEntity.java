@@ -0,0 +1,36 @@
+package ru.aasmc.microservices.core.recommendation.persistence;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rating statistics of a product, kept up to date with $inc updates as recommendations are
+ * created and deleted. The histogram is keyed by the rating as a string, Mongo field names must be strings.
+ */
+@Document(collection = RatingSummaryEntity.COLLECTION)
+@NoArgsConstructor
+@Getter
+@Setter
+public class RatingSummaryEntity {
+    public static final String COLLECTION = "rating_summaries";
+
+    @Id
+    private int productId;
+
+    private long count;
+    private long ratingSum;
+    private Map<String, Long> histogram = new HashMap<>();
+
+    public RatingSummaryEntity(int productId, long count, long ratingSum, Map<String, Long> histogram) {
+        this.productId = productId;
+        this.count = count;
+        this.ratingSum = ratingSum;
+        this.histogram = histogram;
+    }
+}
@@ -0,0 +1,6 @@
+package ru.aasmc.microservices.core.recommendation.persistence;
+
+import org.springframework.data.repository.CrudRepository;
+
+public interface RatingSummaryRepository extends CrudRepository<RatingSummaryEntity, Integer>, RatingSummaryRepositoryCustom {
+}
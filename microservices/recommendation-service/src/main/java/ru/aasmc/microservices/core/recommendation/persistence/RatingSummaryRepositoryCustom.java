@@ -0,0 +1,27 @@
+package ru.aasmc.microservices.core.recommendation.persistence;
+
+import java.util.Collection;
+
+public interface RatingSummaryRepositoryCustom {
+
+    /**
+     * Atomically adds a rating to the summary of its product, creating the summary if needed.
+     */
+    void addRating(int productId, int rating);
+
+    /**
+     * Atomically moves a rating of a replaced recommendation from its old to its new value.
+     */
+    void replaceRating(int productId, int oldRating, int newRating);
+
+    /**
+     * Atomically subtracts the ratings of deleted recommendations from the summary of their product,
+     * the summary is removed once no recommendations are left.
+     */
+    void removeRatings(int productId, Collection<Integer> ratings);
+
+    /**
+     * Recomputes all summaries from the recommendations collection and replaces the summary collection with the result.
+     */
+    void rebuildAll();
+}
@@ -0,0 +1,73 @@
+package ru.aasmc.microservices.core.recommendation.persistence;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@RequiredArgsConstructor
+public class RatingSummaryRepositoryCustomImpl implements RatingSummaryRepositoryCustom {
+
+    private final MongoOperations mongoOperations;
+
+    @Override
+    public void addRating(int productId, int rating) {
+        Update update = new Update()
+                .inc("count", 1)
+                .inc("ratingSum", rating)
+                .inc("histogram." + rating, 1);
+        mongoOperations.upsert(query(where("_id").is(productId)), update, RatingSummaryEntity.class);
+    }
+
+    @Override
+    public void replaceRating(int productId, int oldRating, int newRating) {
+        if (oldRating == newRating) {
+            return;
+        }
+
+        Update update = new Update()
+                .inc("ratingSum", newRating - oldRating)
+                .inc("histogram." + oldRating, -1)
+                .inc("histogram." + newRating, 1);
+        mongoOperations.updateFirst(query(where("_id").is(productId)), update, RatingSummaryEntity.class);
+    }
+
+    @Override
+    public void removeRatings(int productId, Collection<Integer> ratings) {
+        if (ratings.isEmpty()) {
+            return;
+        }
+
+        Update update = new Update()
+                .inc("count", -ratings.size())
+                .inc("ratingSum", -ratings.stream().mapToLong(Integer::longValue).sum());
+        ratings.stream()
+                .distinct()
+                .forEach(rating -> update.inc("histogram." + rating, -ratings.stream().filter(rating::equals).count()));
+        mongoOperations.updateFirst(query(where("_id").is(productId)), update, RatingSummaryEntity.class);
+        mongoOperations.remove(query(where("_id").is(productId).and("count").lte(0)), RatingSummaryEntity.class);
+    }
+
+    @Override
+    public void rebuildAll() {
+        Aggregation aggregation = newAggregation(
+                group("productId", "rating").count().as("count"),
+                group("_id.productId")
+                        .sum("count").as("count")
+                        .sum(ArithmeticOperators.Multiply.valueOf("count").multiplyBy("$_id.rating")).as("ratingSum")
+                        .push(new Document("k", new Document("$toString", "$_id.rating")).append("v", "$count")).as("histogram"),
+                project("count", "ratingSum")
+                        .and(ArrayOperators.ArrayToObject.arrayValueOfToObject("histogram")).as("histogram"),
+                out(RatingSummaryEntity.COLLECTION));
+        mongoOperations.aggregate(aggregation, RecommendationEntity.class, Document.class);
+    }
+}
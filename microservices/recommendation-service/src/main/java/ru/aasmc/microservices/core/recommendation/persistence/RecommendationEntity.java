@@ -6,10 +6,15 @@ import lombok.Setter;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "recommendations")
-@CompoundIndex(name = "prod-rec-id", unique = true, def = "{'productId' : 1, 'recommendationId' : 1}")
+@CompoundIndexes({
+        @CompoundIndex(name = "prod-rec-id", unique = true, def = "{'productId' : 1, 'recommendationId' : 1}"),
+        @CompoundIndex(name = "prod-rating", def = "{'productId' : 1, 'rating' : -1}"),
+        @CompoundIndex(name = "prod-recent", def = "{'productId' : 1, '_id' : -1}")
+})
 @NoArgsConstructor
 @Getter
 @Setter
@@ -1,9 +1,15 @@
 package ru.aasmc.microservices.core.recommendation.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.CrudRepository;
 
 import java.util.List;
 
-public interface RecommendationRepository extends CrudRepository<RecommendationEntity, String> {
+public interface RecommendationRepository extends CrudRepository<RecommendationEntity, String>, RecommendationRepositoryCustom {
     List<RecommendationEntity> findByProductId(int productId);
+
+    /**
+     * Sort and limit are applied by Mongo, sorting on rating or _id is served by the prod-rating and prod-recent indexes.
+     */
+    List<RecommendationEntity> findByProductId(int productId, Pageable pageable);
 }
@@ -0,0 +1,19 @@
+package ru.aasmc.microservices.core.recommendation.persistence;
+
+public interface RecommendationRepositoryCustom {
+
+    /**
+     * The recommendation an upsert replaced, null if it created one, and the one it stored.
+     */
+    record Upserted(RecommendationEntity previous, RecommendationEntity stored) {
+    }
+
+    /**
+     * Atomically replaces the recommendation with its productId and recommendationId, bumping its version, or
+     * creates it at version 0. With mustExist only an existing recommendation is replaced, with expectedVersion only one at
+     * that version.
+     *
+     * @return the replaced and the stored recommendation, or null if it did not meet the condition
+     */
+    Upserted upsert(RecommendationEntity entity, boolean mustExist, Integer expectedVersion);
+}
@@ -0,0 +1,57 @@
+package ru.aasmc.microservices.core.recommendation.persistence;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.springframework.data.mongodb.core.aggregation.LiteralOperators.Literal.asLiteral;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@RequiredArgsConstructor
+public class RecommendationRepositoryCustomImpl implements RecommendationRepositoryCustom {
+
+    // A document the upsert inserts starts at version 0, like a saved one
+    private static final AggregationExpression NEXT_VERSION =
+            ArithmeticOperators.valueOf(ConditionalOperators.ifNull("version").then(-1)).add(1);
+
+    private final MongoOperations mongoOperations;
+
+    @Override
+    public Upserted upsert(RecommendationEntity entity, boolean mustExist, Integer expectedVersion) {
+        Query query = query(where("productId").is(entity.getProductId())
+                .and("recommendationId").is(entity.getRecommendationId()));
+        if (expectedVersion != null) {
+            query.addCriteria(where("version").is(expectedVersion));
+        }
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("author").toValue(asLiteral(entity.getAuthor()))
+                .set("rating").toValue(entity.getRating())
+                .set("content").toValue(asLiteral(entity.getContent()))
+                .set("version").toValue(NEXT_VERSION);
+        // The previous document is returned, its rating is taken out of the rating summary
+        FindAndModifyOptions options = FindAndModifyOptions.options().returnNew(false).upsert(!mustExist);
+        RecommendationEntity previous;
+        try {
+            previous = mongoOperations.findAndModify(query, update, options, RecommendationEntity.class);
+        } catch (DuplicateKeyException ex) {
+            // A concurrent upsert inserted the recommendation first, it is replaced now
+            previous = mongoOperations.findAndModify(query, update, options, RecommendationEntity.class);
+        }
+        if (previous == null && mustExist) {
+            return null;
+        }
+
+        RecommendationEntity stored = new RecommendationEntity(entity.getProductId(), entity.getRecommendationId(),
+                entity.getAuthor(), entity.getRating(), entity.getContent());
+        stored.setId(previous == null ? null : previous.getId());
+        stored.setVersion(previous == null || previous.getVersion() == null ? 0 : previous.getVersion() + 1);
+        return new Upserted(previous, stored);
+    }
+}
@@ -0,0 +1,38 @@
+package ru.aasmc.microservices.core.recommendation.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.aasmc.microservices.core.recommendation.persistence.RatingSummaryRepository;
+
+/**
+ * Recomputes all rating summaries from the recommendations, repairing any drift of the incremental updates.
+ *
+ * Runs on app.rating-summary.rebuild-cron, disabled by default, or on demand through the ratingsummaries
+ * endpoint. It is an unauthenticated write that aggregates the whole collection, so it is only exposed over JMX,
+ * or with the management-port profile by "curl -X POST $HOST:7102/actuator/ratingsummaries" on a port kept off
+ * the public network. Ratings added while a rebuild is running may be missing from its result until the next
+ * rebuild.
+ */
+@Slf4j
+@Component
+// Scheduled methods of lazy beans are never scheduled, see the fast-startup profile
+@Lazy(false)
+@Endpoint(id = "ratingsummaries")
+@RequiredArgsConstructor
+public class RatingSummaryRebuildJob {
+
+    private final RatingSummaryRepository ratingSummaryRepository;
+
+    @WriteOperation
+    @Scheduled(cron = "${app.rating-summary.rebuild-cron:-}")
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        ratingSummaryRepository.rebuildAll();
+        log.info("Rebuilt {} rating summaries in {} ms", ratingSummaryRepository.count(), System.currentTimeMillis() - start);
+    }
+}
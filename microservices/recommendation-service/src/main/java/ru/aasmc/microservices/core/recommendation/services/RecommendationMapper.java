@@ -3,7 +3,9 @@ package ru.aasmc.microservices.core.recommendation.services;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
+import ru.aasmc.api.core.recommendation.RatingSummary;
 import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.microservices.core.recommendation.persistence.RatingSummaryEntity;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationEntity;
 
 import java.util.List;
@@ -24,6 +26,12 @@ public interface RecommendationMapper {
     })
     RecommendationEntity apiToEntity(Recommendation api);
 
+    @Mappings({
+            @Mapping(target = "averageRate", expression = "java(entity.getCount() == 0 ? 0 : (double) entity.getRatingSum() / entity.getCount())"),
+            @Mapping(target = "serviceAddress", ignore = true)
+    })
+    RatingSummary summaryEntityToApi(RatingSummaryEntity entity);
+
     List<Recommendation> entityListToApiList(List<RecommendationEntity> entity);
 
     List<RecommendationEntity> apiListToEntityList(List<Recommendation> api);
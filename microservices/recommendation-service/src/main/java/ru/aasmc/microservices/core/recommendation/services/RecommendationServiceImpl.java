@@ -1,59 +1,179 @@
 package ru.aasmc.microservices.core.recommendation.services;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import ru.aasmc.api.core.recommendation.RatingSummary;
 import ru.aasmc.api.core.recommendation.Recommendation;
 import ru.aasmc.api.core.recommendation.RecommendationService;
+import ru.aasmc.api.event.Event;
 import ru.aasmc.api.exceptions.InvalidInputException;
+import ru.aasmc.api.exceptions.PreconditionFailedException;
+import ru.aasmc.microservices.core.recommendation.persistence.RatingSummaryRepository;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationEntity;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationRepository;
+import ru.aasmc.microservices.core.recommendation.persistence.RecommendationRepositoryCustom.Upserted;
+import ru.aasmc.util.cache.TwoTierCache;
+import ru.aasmc.util.cache.TwoTierCacheFactory;
+import ru.aasmc.util.events.EventPublisher;
+import ru.aasmc.util.http.IfMatch;
 import ru.aasmc.util.http.ServiceUtil;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static ru.aasmc.api.event.EventTopics.RECOMMENDATIONS;
 
 @Slf4j
 @RestController
-@RequiredArgsConstructor
 public class RecommendationServiceImpl implements RecommendationService {
 
     private final ServiceUtil serviceUtil;
     private final RecommendationRepository repository;
+    private final RatingSummaryRepository ratingSummaryRepository;
     private final RecommendationMapper mapper;
+    private final EventPublisher eventPublisher;
+    private final TwoTierCache<Integer, List<RecommendationEntity>> cache;
+    private final int maxTopLimit;
+
+    public RecommendationServiceImpl(
+            ServiceUtil serviceUtil,
+            RecommendationRepository repository,
+            RatingSummaryRepository ratingSummaryRepository,
+            RecommendationMapper mapper,
+            EventPublisher eventPublisher,
+            TwoTierCacheFactory cacheFactory,
+            @Value("${app.recommendation.max-top-limit:100}") int maxTopLimit) {
+        this.serviceUtil = serviceUtil;
+        this.repository = repository;
+        this.ratingSummaryRepository = ratingSummaryRepository;
+        this.mapper = mapper;
+        this.eventPublisher = eventPublisher;
+        this.cache = cacheFactory.create("recommendations", new TypeReference<>() {});
+        this.maxTopLimit = maxTopLimit;
+    }
 
     @Override
     public Recommendation createRecommendation(Recommendation body) {
         try {
             RecommendationEntity entity = mapper.apiToEntity(body);
             RecommendationEntity newEntity = repository.save(entity);
+            ratingSummaryRepository.addRating(newEntity.getProductId(), newEntity.getRating());
+            cache.evict(newEntity.getProductId());
 
             log.debug("createRecommendation: created a recommendation entity: {}/{}", body.getProductId(), body.getRecommendationId());
-            return mapper.entityToApi(newEntity);
+            Recommendation recommendation = mapper.entityToApi(newEntity);
+            eventPublisher.publish(RECOMMENDATIONS, new Event<>(Event.Type.CREATE, recommendation.getProductId(), recommendation));
+            return recommendation;
 
         } catch (DuplicateKeyException dke) {
-            throw new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Recommendation Id:" + body.getRecommendationId());
+            throw InvalidInputException.withoutStackTrace("Duplicate key, Product Id: " + body.getProductId() + ", Recommendation Id:" + body.getRecommendationId());
         }
     }
 
+    @Override
+    public ResponseEntity<Recommendation> upsertRecommendation(String ifMatch, Recommendation body) {
+        if (body.getProductId() < 1) {
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + body.getProductId());
+        }
+        IfMatch condition = IfMatch.parse(ifMatch);
+
+        Upserted upserted = repository.upsert(mapper.apiToEntity(body), condition.mustExist(), condition.version());
+        if (upserted == null) {
+            throw new PreconditionFailedException("No recommendation found for Product Id: " + body.getProductId()
+                    + ", Recommendation Id:" + body.getRecommendationId()
+                    + (condition.version() == null ? "" : " at version " + condition.version()));
+        }
+        RecommendationEntity entity = upserted.stored();
+        if (upserted.previous() == null) {
+            ratingSummaryRepository.addRating(entity.getProductId(), entity.getRating());
+        } else {
+            ratingSummaryRepository.replaceRating(entity.getProductId(), upserted.previous().getRating(), entity.getRating());
+        }
+        cache.evict(entity.getProductId());
+
+        log.debug("upsertRecommendation: stored {}/{} at version {}", entity.getProductId(), entity.getRecommendationId(), entity.getVersion());
+        Recommendation recommendation = mapper.entityToApi(entity);
+        eventPublisher.publish(RECOMMENDATIONS, new Event<>(Event.Type.CREATE, recommendation.getProductId(), recommendation));
+        return ResponseEntity.ok().eTag(IfMatch.eTag(entity.getVersion())).body(recommendation);
+    }
+
     @Override
     public List<Recommendation> getRecommendations(int productId) {
         if (productId < 1) {
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
         }
 
-        List<RecommendationEntity> entityList = repository.findByProductId(productId);
+        List<RecommendationEntity> entityList = cache.get(productId, () -> repository.findByProductId(productId));
         List<Recommendation> list = mapper.entityListToApiList(entityList);
-        list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
 
-        log.debug("getRecommendations: response size: {}", list.size());
+        if (log.isDebugEnabled()) {
+            log.debug("getRecommendations: response size: {}", list.size());
+        }
 
         return list;
     }
 
+    @Override
+    public List<Recommendation> getTopRecommendations(int productId, int limit, String orderBy) {
+        if (productId < 1) {
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+        }
+        if (limit < 1 || limit > maxTopLimit) {
+            throw InvalidInputException.withoutStackTrace("Invalid limit: " + limit + ", must be between 1 and " + maxTopLimit);
+        }
+
+        Sort sort = switch (orderBy) {
+            case "rating" -> Sort.by(Sort.Direction.DESC, "rating");
+            case "recent" -> Sort.by(Sort.Direction.DESC, "id");
+            default -> throw InvalidInputException.withoutStackTrace("Invalid orderBy: " + orderBy + ", must be rating or recent");
+        };
+
+        List<RecommendationEntity> entityList = repository.findByProductId(productId, PageRequest.of(0, limit, sort));
+        List<Recommendation> list = mapper.entityListToApiList(entityList);
+
+        if (log.isDebugEnabled()) {
+            log.debug("getTopRecommendations: response size: {}", list.size());
+        }
+
+        return list;
+    }
+
+    @Override
+    public RatingSummary getRatingSummary(int productId) {
+        if (productId < 1) {
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+        }
+
+        RatingSummary summary = ratingSummaryRepository.findById(productId)
+                .map(mapper::summaryEntityToApi)
+                .orElseGet(() -> new RatingSummary(productId, 0, 0, Map.of(), null));
+        summary.setServiceAddress(serviceUtil.getServiceAddress());
+
+        if (log.isDebugEnabled()) {
+            log.debug("getRatingSummary: {} recommendations summarized", summary.getCount());
+        }
+
+        return summary;
+    }
+
     @Override
     public void deleteRecommendations(int productId) {
         log.debug("deleteRecommendations: tries to delete recommendations for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+        List<RecommendationEntity> entityList = repository.findByProductId(productId);
+        if (entityList.isEmpty()) {
+            return;
+        }
+        repository.deleteAll(entityList);
+        ratingSummaryRepository.removeRatings(productId,
+                entityList.stream().map(RecommendationEntity::getRating).collect(Collectors.toList()));
+        cache.evict(productId);
+        eventPublisher.publish(RECOMMENDATIONS, new Event<>(Event.Type.DELETE, productId, null));
     }
 }
@@ -2,12 +2,15 @@ package ru.aasmc.microservices.core.recommendation;
 
 import org.junit.jupiter.api.Test;
 import org.mapstruct.factory.Mappers;
+import ru.aasmc.api.core.recommendation.RatingSummary;
 import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.microservices.core.recommendation.persistence.RatingSummaryEntity;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationEntity;
 import ru.aasmc.microservices.core.recommendation.services.RecommendationMapper;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +42,22 @@ public class MapperTests {
         assertNull(api2.getServiceAddress());
     }
 
+    @Test
+    void mapperSummaryTests() {
+
+        assertNotNull(mapper);
+
+        RatingSummaryEntity entity = new RatingSummaryEntity(1, 4, 14, Map.of("3", 1L, "4", 3L));
+
+        RatingSummary api = mapper.summaryEntityToApi(entity);
+
+        assertEquals(entity.getProductId(), api.getProductId());
+        assertEquals(entity.getCount(), api.getCount());
+        assertEquals(3.5, api.getAverageRate());
+        assertEquals(Map.of(3, 1L, 4, 3L), api.getHistogram());
+        assertNull(api.getServiceAddress());
+    }
+
     @Test
     void mapperListTests() {
 
@@ -7,6 +7,10 @@ import org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoCo
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import ru.aasmc.microservices.core.recommendation.persistence.RatingSummaryEntity;
+import ru.aasmc.microservices.core.recommendation.persistence.RatingSummaryRepository;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationEntity;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationRepository;
 
@@ -16,6 +20,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.data.domain.Sort.Direction.DESC;
 
 @DataMongoTest(excludeAutoConfiguration = EmbeddedMongoAutoConfiguration.class)
 class PersistenceTests extends MongoDbTestBase {
@@ -23,11 +28,15 @@ class PersistenceTests extends MongoDbTestBase {
     @Autowired
     private RecommendationRepository repository;
 
+    @Autowired
+    private RatingSummaryRepository ratingSummaryRepository;
+
     private RecommendationEntity savedEntity;
 
     @BeforeEach
     void setupDb() {
         repository.deleteAll();
+        ratingSummaryRepository.deleteAll();
 
         RecommendationEntity entity = new RecommendationEntity(1, 2, "a", 3, "c");
         savedEntity = repository.save(entity);
@@ -72,6 +81,21 @@ class PersistenceTests extends MongoDbTestBase {
         assertEqualsRecommendation(savedEntity, entityList.get(0));
     }
 
+    @Test
+    void getTopByProductId() {
+        repository.save(new RecommendationEntity(1, 3, "a", 5, "c"));
+        repository.save(new RecommendationEntity(1, 4, "a", 1, "c"));
+
+        List<RecommendationEntity> topRated = repository.findByProductId(1, PageRequest.of(0, 2, Sort.by(DESC, "rating")));
+        assertThat(topRated, hasSize(2));
+        assertEquals(5, topRated.get(0).getRating());
+        assertEquals(3, topRated.get(1).getRating());
+
+        List<RecommendationEntity> mostRecent = repository.findByProductId(1, PageRequest.of(0, 1, Sort.by(DESC, "id")));
+        assertThat(mostRecent, hasSize(1));
+        assertEquals(4, mostRecent.get(0).getRecommendationId());
+    }
+
     @Test
     void duplicateError() {
         assertThrows(DuplicateKeyException.class, () -> {
@@ -80,6 +104,44 @@ class PersistenceTests extends MongoDbTestBase {
         });
     }
 
+    @Test
+    void ratingSummary() {
+        ratingSummaryRepository.addRating(1, 3);
+        ratingSummaryRepository.addRating(1, 5);
+        ratingSummaryRepository.addRating(1, 5);
+
+        RatingSummaryEntity summary = ratingSummaryRepository.findById(1).get();
+        assertEquals(3, summary.getCount());
+        assertEquals(13, summary.getRatingSum());
+        assertEquals(2, summary.getHistogram().get("5"));
+
+        ratingSummaryRepository.removeRatings(1, List.of(5, 3));
+        summary = ratingSummaryRepository.findById(1).get();
+        assertEquals(1, summary.getCount());
+        assertEquals(5, summary.getRatingSum());
+        assertEquals(0, summary.getHistogram().get("3"));
+
+        ratingSummaryRepository.removeRatings(1, List.of(5));
+        assertFalse(ratingSummaryRepository.existsById(1));
+    }
+
+    @Test
+    void rebuildRatingSummaries() {
+        repository.save(new RecommendationEntity(1, 3, "a", 5, "c"));
+        repository.save(new RecommendationEntity(2, 1, "a", 4, "c"));
+        ratingSummaryRepository.addRating(3, 1);
+
+        ratingSummaryRepository.rebuildAll();
+
+        assertEquals(2, ratingSummaryRepository.count());
+        RatingSummaryEntity summary = ratingSummaryRepository.findById(1).get();
+        assertEquals(2, summary.getCount());
+        assertEquals(8, summary.getRatingSum());
+        assertEquals(1, summary.getHistogram().get("3"));
+        assertEquals(1, summary.getHistogram().get("5"));
+        assertFalse(ratingSummaryRepository.existsById(3));
+    }
+
     @Test
     void optimisticLockError() {
 
@@ -1,5 +1,6 @@
 package ru.aasmc.microservices.core.recommendation;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,15 +8,29 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import ru.aasmc.api.core.recommendation.Recommendation;
+import ru.aasmc.microservices.core.recommendation.persistence.RatingSummaryRepository;
+import ru.aasmc.microservices.core.recommendation.persistence.RecommendationEntity;
 import ru.aasmc.microservices.core.recommendation.persistence.RecommendationRepository;
+import ru.aasmc.util.cache.InMemorySharedCache;
+import ru.aasmc.util.cache.TwoTierCache;
+import ru.aasmc.util.cache.TwoTierCacheFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"app.cache.shared.type=in-memory",
+		// Spring Boot turns JMX off in tests
+		"spring.jmx.enabled=true"})
 class RecommendationServiceApplicationTests extends MongoDbTestBase {
 
 	@Autowired
@@ -24,9 +39,21 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase {
 	@Autowired
 	private RecommendationRepository repository;
 
+	@Autowired
+	private RatingSummaryRepository ratingSummaryRepository;
+
+	@Autowired
+	private TwoTierCacheFactory cacheFactory;
+
+	@Autowired
+	private InMemorySharedCache sharedCache;
+
 	@BeforeEach
 	void setupDb() {
 		repository.deleteAll();
+		ratingSummaryRepository.deleteAll();
+		cacheFactory.clearAll();
+		sharedCache.clear();
 	}
 
 	@Test
@@ -65,6 +92,92 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase {
 		assertEquals(1, repository.count());
 	}
 
+	@Test
+	void getTopRecommendations() {
+
+		int productId = 1;
+
+		postAndVerifyRecommendation(productId, 2, OK);
+		postAndVerifyRecommendation(productId, 5, OK);
+		postAndVerifyRecommendation(productId, 1, OK);
+		postAndVerifyRecommendation(productId, 4, OK);
+
+		getAndVerifyTopRecommendations("?productId=" + productId + "&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].rate").isEqualTo(5)
+				.jsonPath("$[1].rate").isEqualTo(4);
+
+		getAndVerifyTopRecommendations("?productId=" + productId + "&limit=3&orderBy=recent", OK)
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].recommendationId").isEqualTo(4)
+				.jsonPath("$[2].recommendationId").isEqualTo(5);
+	}
+
+	@Test
+	void getTopRecommendationsInvalidParameters() {
+
+		getAndVerifyTopRecommendations("?productId=1&limit=0", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/recommendation/top")
+				.jsonPath("$.message").isEqualTo("Invalid limit: 0, must be between 1 and 100");
+
+		getAndVerifyTopRecommendations("?productId=1&orderBy=author", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/recommendation/top")
+				.jsonPath("$.message").isEqualTo("Invalid orderBy: author, must be rating or recent");
+	}
+
+	@Test
+	void getRatingSummary() {
+
+		int productId = 1;
+
+		getAndVerifyRatingSummary(productId, OK)
+				.jsonPath("$.count").isEqualTo(0);
+
+		postAndVerifyRecommendation(productId, 1, OK);
+		postAndVerifyRecommendation(productId, 3, OK);
+		postAndVerifyRecommendation(productId, 3, UNPROCESSABLE_ENTITY);
+		postAndVerifyRecommendation(productId, 5, OK);
+
+		getAndVerifyRatingSummary(productId, OK)
+				.jsonPath("$.productId").isEqualTo(productId)
+				.jsonPath("$.count").isEqualTo(3)
+				.jsonPath("$.averageRate").isEqualTo(3.0)
+				.jsonPath("$.histogram.3").isEqualTo(1);
+
+		deleteAndVerifyRecommendationsByProductId(productId, OK);
+
+		getAndVerifyRatingSummary(productId, OK)
+				.jsonPath("$.count").isEqualTo(0);
+		assertEquals(0, ratingSummaryRepository.count());
+	}
+
+	@Test
+	void upsertRecommendation() {
+
+		int productId = 1;
+
+		postAndVerifyRecommendation(productId, 1, OK);
+		postAndVerifyRecommendation(productId, 3, OK);
+
+		// Replaces recommendation 3 and moves its rate in the summary
+		putAndVerifyRecommendation("\"0\"", new Recommendation(productId, 3, "Author", 5, "Content", null), OK)
+				.expectHeader().valueEquals("ETag", "\"1\"");
+		// Created at version 0 like a POST
+		putAndVerifyRecommendation(null, new Recommendation(productId, 4, "Author", 3, "Content", null), OK)
+				.expectHeader().valueEquals("ETag", "\"0\"");
+
+		getAndVerifyRatingSummary(productId, OK)
+				.jsonPath("$.count").isEqualTo(3)
+				.jsonPath("$.averageRate").isEqualTo(3.0)
+				.jsonPath("$.histogram.3").isEqualTo(1)
+				.jsonPath("$.histogram.5").isEqualTo(1);
+		assertEquals(3, repository.findByProductId(productId).size());
+
+		putAndVerifyRecommendation("\"0\"", new Recommendation(productId, 3, "Author", 1, "Content", null), PRECONDITION_FAILED)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("No recommendation found for Product Id: 1, Recommendation Id:3 at version 0");
+	}
+
 	@Test
 	void deleteRecommendations() {
 
@@ -80,6 +193,31 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase {
 		deleteAndVerifyRecommendationsByProductId(productId, OK);
 	}
 
+	@Test
+	void getRecommendationsFromSharedCache() {
+
+		int productId = 1;
+
+		postAndVerifyRecommendation(productId, 1, OK);
+		getAndVerifyRecommendationsByProductId(productId, OK);
+
+		// A cache of the same name stands in for the near tier of another instance
+		TwoTierCache<Integer, List<RecommendationEntity>> otherInstance =
+				cacheFactory.create("recommendations", new TypeReference<>() {});
+		List<RecommendationEntity> cached = otherInstance.get(productId, () -> fail("Not served from the shared tier"));
+		assertEquals(1, cached.size());
+		assertEquals(1, cached.get(0).getRecommendationId());
+		assertEquals(1, otherInstance.getSharedHits());
+
+		deleteAndVerifyRecommendationsByProductId(productId, OK);
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(0);
+
+		TwoTierCache<Integer, List<RecommendationEntity>> thirdInstance =
+				cacheFactory.create("recommendations", new TypeReference<>() {});
+		assertEquals(0, thirdInstance.get(productId, () -> repository.findByProductId(productId)).size());
+	}
+
 	@Test
 	void getRecommendationsMissingParameter() {
 
@@ -113,6 +251,22 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase {
 				.jsonPath("$.message").isEqualTo("Invalid productId: " + productIdInvalid);
 	}
 
+	@Test
+	void ratingSummaryRebuildIsNotExposedOverHttp() {
+
+		client.post()
+				.uri("/actuator/ratingsummaries")
+				.exchange()
+				.expectStatus().isEqualTo(NOT_FOUND);
+	}
+
+	@Test
+	void ratingSummaryRebuildIsExposedOverJmx() throws Exception {
+
+		ObjectName name = new ObjectName("org.springframework.boot:type=Endpoint,name=Ratingsummaries,*");
+		assertFalse(ManagementFactory.getPlatformMBeanServer().queryNames(name, null).isEmpty());
+	}
+
 	private WebTestClient.BodyContentSpec getAndVerifyRecommendationsByProductId(int productId, HttpStatus expectedStatus) {
 		return getAndVerifyRecommendationsByProductId("?productId=" + productId, expectedStatus);
 	}
@@ -127,6 +281,26 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase {
 				.expectBody();
 	}
 
+	private WebTestClient.BodyContentSpec getAndVerifyTopRecommendations(String query, HttpStatus expectedStatus) {
+		return client.get()
+				.uri("/recommendation/top" + query)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyRatingSummary(int productId, HttpStatus expectedStatus) {
+		return client.get()
+				.uri("/recommendation/summary?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
 	private WebTestClient.BodyContentSpec postAndVerifyRecommendation(int productId, int recommendationId, HttpStatus expectedStatus) {
 		Recommendation recommendation = new Recommendation(productId, recommendationId, "Author " + recommendationId, recommendationId, "Content " + recommendationId, "SA");
 		return client.post()
@@ -139,6 +313,20 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase {
 				.expectBody();
 	}
 
+	private WebTestClient.ResponseSpec putAndVerifyRecommendation(String ifMatch, Recommendation recommendation, HttpStatus expectedStatus) {
+		return client.put()
+				.uri("/recommendation")
+				.headers(headers -> {
+					if (ifMatch != null) {
+						headers.setIfMatch(ifMatch);
+					}
+				})
+				.body(just(recommendation), Recommendation.class)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus);
+	}
+
 	private WebTestClient.BodyContentSpec deleteAndVerifyRecommendationsByProductId(int productId, HttpStatus expectedStatus) {
 		return client.delete()
 				.uri("/recommendation?productId=" + productId)
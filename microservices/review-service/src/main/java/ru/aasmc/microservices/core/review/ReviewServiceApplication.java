@@ -3,16 +3,22 @@ package ru.aasmc.microservices.core.review;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @ComponentScan("ru.aasmc")
+@EnableScheduling
 @Slf4j
 public class ReviewServiceApplication {
 
 	public static void main(String[] args) {
-		ConfigurableApplicationContext ctx = SpringApplication.run(ReviewServiceApplication.class, args);
+		SpringApplication application = new SpringApplication(ReviewServiceApplication.class);
+		// Records the startup phases for the startup actuator endpoint and the application.startup.phase metrics
+		application.setApplicationStartup(new BufferingApplicationStartup(4096));
+		ConfigurableApplicationContext ctx = application.run(args);
 
 		String mysqlUri = ctx.getEnvironment().getProperty("spring.datasource.url");
 		log.info("Connected to MySQL: " + mysqlUri);
@@ -0,0 +1,53 @@
+package ru.aasmc.microservices.core.review.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the products that were written to during the last
+ * app.datasource.replica-routing.read-your-writes-window, so that their reads can be sent
+ * to the primary until the replicas have caught up. A window of zero disables the tracking.
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final long windowNanos;
+    private final Map<Integer, Long> writtenUntil = new ConcurrentHashMap<>();
+
+    public ReadYourWritesTracker(
+            @Value("${app.datasource.replica-routing.read-your-writes-window:0s}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void recordWrite(int productId) {
+        if (windowNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (writtenUntil.size() >= PURGE_THRESHOLD) {
+            writtenUntil.values().removeIf(until -> now - until > 0);
+        }
+        writtenUntil.put(productId, now + windowNanos);
+    }
+
+    public boolean isRecentlyWritten(int productId) {
+        if (windowNanos <= 0) {
+            return false;
+        }
+        Long until = writtenUntil.get(productId);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until > 0) {
+            writtenUntil.remove(productId, until);
+            return false;
+        }
+        return true;
+    }
+}
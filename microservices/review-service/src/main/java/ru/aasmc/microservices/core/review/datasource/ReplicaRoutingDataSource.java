@@ -0,0 +1,82 @@
+package ru.aasmc.microservices.core.review.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends work in read-only transactions to one of the replicas, round robin,
+ * and everything else to the primary.
+ *
+ * The routing decision is taken when a connection is fetched, so this data source must be
+ * wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * the transaction manager obtains its connection before the transaction is marked read-only.
+ * Closing it closes the pools it routes to.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PRIMARY_FORCED = new ThreadLocal<>();
+
+    private final String[] replicaKeys;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicaKeys = new String[replicas.size()];
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys[i] = "replica-" + i;
+            targets.put(replicaKeys[i], replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Runs the given work against the primary, even if it uses read-only transactions.
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        Boolean previous = PRIMARY_FORCED.get();
+        PRIMARY_FORCED.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_FORCED.remove();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        getResolvedDataSources().forEach((key, dataSource) -> {
+            if (dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception ex) {
+                    log.warn("Failed to close the {} data source: {}", key, ex.toString());
+                }
+            }
+        });
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicaKeys.length == 0
+                || PRIMARY_FORCED.get() != null
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        return replicaKeys[Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.length)];
+    }
+}
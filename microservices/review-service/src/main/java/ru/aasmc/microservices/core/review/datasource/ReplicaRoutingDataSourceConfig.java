@@ -0,0 +1,122 @@
+package ru.aasmc.microservices.core.review.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured data source with a {@link ReplicaRoutingDataSource}
+ * when app.datasource.replica-routing.enabled is set.
+ *
+ * Every route gets its own Hikari pool, configured from spring.datasource.hikari and
+ * named review-primary, review-replica-0, ... which is also the pool tag of its metrics.
+ * The pools are no beans of their own, they are closed with the data source on shutdown.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@Profile("!r2dbc")
+@ConditionalOnProperty(prefix = "app.datasource.replica-routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties({DataSourceProperties.class, ReplicaRoutingProperties.class})
+public class ReplicaRoutingDataSourceConfig {
+
+    @Bean
+    public DataSource dataSource(
+            DataSourceProperties primaryProperties,
+            ReplicaRoutingProperties routingProperties,
+            Environment environment,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+
+        Binder binder = Binder.get(environment);
+        // Pools start after this bean exists, resolving the registry there avoids a cycle through its pool metrics
+        MetricsTrackerFactory metricsTrackerFactory = (poolName, poolStats) -> {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            return registry != null
+                    ? new MicrometerMetricsTrackerFactory(registry).create(poolName, poolStats)
+                    : new IMetricsTracker() {};
+        };
+
+        HikariDataSource primary = createPool(binder, "review-primary", primaryProperties.determineUrl(),
+                primaryProperties.determineUsername(), primaryProperties.determinePassword(), null, metricsTrackerFactory);
+
+        List<DataSource> replicas = new ArrayList<>();
+        List<ReplicaRoutingProperties.Replica> replicaProperties = routingProperties.getReplicas();
+        for (int i = 0; i < replicaProperties.size(); i++) {
+            ReplicaRoutingProperties.Replica replica = replicaProperties.get(i);
+            replicas.add(createPool(binder, "review-replica-" + i, replica.getUrl(),
+                    replica.getUsername() != null ? replica.getUsername() : primaryProperties.determineUsername(),
+                    replica.getPassword() != null ? replica.getPassword() : primaryProperties.determinePassword(),
+                    replica.getMaximumPoolSize(), metricsTrackerFactory));
+        }
+        log.info("Routing read-only transactions to {} replica(s)", replicas.size());
+
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary, replicas);
+        routingDataSource.afterPropertiesSet();
+
+        // Known defaults keep the proxy from fetching a connection just to look them up
+        LazyConnectionDataSourceProxy lazyDataSource = new ClosingDataSourceProxy(routingDataSource);
+        lazyDataSource.setDefaultAutoCommit(true);
+        lazyDataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        lazyDataSource.afterPropertiesSet();
+        return lazyDataSource;
+    }
+
+    /**
+     * Inferred as the destroy method of the data source bean, closes the pools behind the proxy.
+     */
+    static class ClosingDataSourceProxy extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+        private final ReplicaRoutingDataSource routingDataSource;
+
+        ClosingDataSourceProxy(ReplicaRoutingDataSource routingDataSource) {
+            // Not the super constructor taking the target, it would look up the defaults on a connection
+            setTargetDataSource(routingDataSource);
+            this.routingDataSource = routingDataSource;
+        }
+
+        @Override
+        public void close() {
+            routingDataSource.close();
+        }
+    }
+
+    private HikariDataSource createPool(
+            Binder binder,
+            String poolName,
+            String url,
+            String username,
+            String password,
+            Integer maximumPoolSize,
+            MetricsTrackerFactory metricsTrackerFactory) {
+
+        HikariDataSource pool = new HikariDataSource();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(poolName);
+        pool.setJdbcUrl(url);
+        pool.setUsername(username);
+        pool.setPassword(password);
+        if (maximumPoolSize != null) {
+            pool.setMaximumPoolSize(maximumPoolSize);
+        }
+        pool.setMetricsTrackerFactory(metricsTrackerFactory);
+        return pool;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.aasmc.microservices.core.review.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "app.datasource.replica-routing")
+@Getter
+@Setter
+public class ReplicaRoutingProperties {
+
+    private boolean enabled;
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private String url;
+        /**
+         * Defaults to spring.datasource.username.
+         */
+        private String username;
+        /**
+         * Defaults to spring.datasource.password.
+         */
+        private String password;
+        /**
+         * Defaults to spring.datasource.hikari.maximum-pool-size.
+         */
+        private Integer maximumPoolSize;
+    }
+}
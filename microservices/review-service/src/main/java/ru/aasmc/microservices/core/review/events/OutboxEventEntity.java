@@ -0,0 +1,39 @@
+package ru.aasmc.microservices.core.review.events;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * A row of the transactional outbox, holding the events of one write as a JSON array.
+ *
+ * The id comes from an AUTO_INCREMENT column so that it follows insert order,
+ * which is the order {@link OutboxRelay} delivers the events in. Rows are not consumed
+ * by delivery, every instance reads them, they are deleted once older than
+ * app.events.outbox.retention.
+ */
+@Entity
+@Table(name = "review_outbox")
+@NoArgsConstructor
+@Getter
+@Setter
+public class OutboxEventEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+    private String topic;
+    @Lob
+    @Column(nullable = false)
+    private String payload;
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public OutboxEventEntity(String topic, String payload) {
+        this.topic = topic;
+        this.payload = payload;
+        this.createdAt = Instant.now();
+    }
+}
@@ -0,0 +1,43 @@
+package ru.aasmc.microservices.core.review.events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.aasmc.api.event.Event;
+import ru.aasmc.util.events.EventPublisher;
+
+import java.util.List;
+
+/**
+ * Writes events to the outbox table in the transaction of the change they describe, so an event is stored if
+ * and only if its change is committed. {@link OutboxRelay} delivers it, late and out of order if its transaction
+ * commits after the relay moved past its id.
+ */
+@Component
+@Profile("!r2dbc")
+@ConditionalOnProperty(prefix = "app.events", name = "transport", havingValue = "outbox")
+@RequiredArgsConstructor
+public class OutboxEventPublisher implements EventPublisher {
+
+    private final OutboxEventRepository repository;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(String topic, Event<Integer, ?> event) {
+        publishAll(topic, List.of(event));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishAll(String topic, List<? extends Event<Integer, ?>> events) {
+        try {
+            repository.save(new OutboxEventEntity(topic, OutboxPayloads.write(events)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize " + events.size() + " events of topic " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.aasmc.microservices.core.review.events;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEventEntity, Long> {
+
+    Optional<OutboxEventEntity> findTopByOrderByIdDesc();
+
+    List<OutboxEventEntity> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    List<OutboxEventEntity> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("delete from OutboxEventEntity e where e.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") Instant before);
+
+}
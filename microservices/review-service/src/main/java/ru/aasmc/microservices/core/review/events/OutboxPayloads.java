@@ -0,0 +1,33 @@
+package ru.aasmc.microservices.core.review.events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.event.Event;
+
+import java.util.List;
+
+/**
+ * JSON format of the outbox payload column. It has its own mapper since the rows
+ * must stay readable whatever the web layer's Jackson settings are.
+ */
+final class OutboxPayloads {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private static final TypeReference<List<Event<Integer, Review>>> EVENT_LIST = new TypeReference<>() {};
+
+    private OutboxPayloads() {
+    }
+
+    static String write(List<? extends Event<Integer, ?>> events) throws JsonProcessingException {
+        return MAPPER.writeValueAsString(events);
+    }
+
+    static List<Event<Integer, Review>> read(String payload) throws JsonProcessingException {
+        return MAPPER.readValue(payload, EVENT_LIST);
+    }
+}
@@ -0,0 +1,158 @@
+package ru.aasmc.microservices.core.review.events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.aasmc.util.events.InMemoryEventBroker;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Tails the outbox table and hands its events to the {@link InMemoryEventBroker} of this instance, oldest first.
+ *
+ * Every instance runs its own relay with its own position in the table, so every instance sees every event.
+ * It starts at the newest row, subscribers only get the events written after they subscribed.
+ *
+ * Ids are handed out on insert but become visible on commit, so a missing id may still be committing. The relay
+ * waits up to app.events.outbox.gap-timeout for it, then moves on and keeps the id pending: a row that shows up
+ * later, within app.events.outbox.retention, is still delivered. Most gaps are rolled back writes whose ids never
+ * show up, at most max-pending of them are remembered, the lowest ids are given up first.
+ *
+ * Events are delivered in insert order unless a write commits after gap-timeout, its events then come after
+ * those of later writes. Writes to the same review lock its row and commit in order, so they are delivered in
+ * order too, but events of other reviews of the product may overtake a late one. It assumes
+ * auto_increment_increment is 1.
+ */
+@Slf4j
+@Component
+// Scheduled methods of lazy beans are never scheduled, see the fast-startup profile
+@Lazy(false)
+@Profile("!r2dbc")
+@ConditionalOnProperty(prefix = "app.events", name = "transport", havingValue = "outbox")
+public class OutboxRelay {
+
+    private final OutboxEventRepository repository;
+    private final InMemoryEventBroker broker;
+    private final int batchSize;
+    private final Duration gapTimeout;
+    private final Duration retention;
+    private final int maxPending;
+    private final LongSupplier nanoClock;
+
+    // Only touched by the scheduler thread
+    private long lastId = -1;
+    private long gapSeenAt = -1;
+    // Skipped ids, to the time they were skipped at
+    private final TreeMap<Long, Long> pending = new TreeMap<>();
+
+    @Autowired
+    public OutboxRelay(
+            OutboxEventRepository repository,
+            InMemoryEventBroker broker,
+            @Value("${app.events.outbox.batch-size:100}") int batchSize,
+            @Value("${app.events.outbox.gap-timeout:500ms}") Duration gapTimeout,
+            @Value("${app.events.outbox.retention:1h}") Duration retention,
+            @Value("${app.events.outbox.max-pending:1000}") int maxPending) {
+        this(repository, broker, batchSize, gapTimeout, retention, maxPending, System::nanoTime);
+    }
+
+    OutboxRelay(OutboxEventRepository repository, InMemoryEventBroker broker, int batchSize, Duration gapTimeout,
+                Duration retention, int maxPending, LongSupplier nanoClock) {
+        this.repository = repository;
+        this.broker = broker;
+        this.batchSize = batchSize;
+        this.gapTimeout = gapTimeout;
+        this.retention = retention;
+        this.maxPending = maxPending;
+        this.nanoClock = nanoClock;
+    }
+
+    @Scheduled(fixedDelayString = "${app.events.outbox.poll-interval-ms:200}")
+    public void relay() {
+        if (lastId < 0) {
+            lastId = repository.findTopByOrderByIdDesc().map(OutboxEventEntity::getId).orElse(0L);
+        }
+        relayPending();
+        List<OutboxEventEntity> rows;
+        do {
+            rows = repository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, batchSize));
+            for (OutboxEventEntity row : rows) {
+                if (row.getId() != lastId + 1) {
+                    if (!gapTimedOut()) {
+                        return;
+                    }
+                    skip(lastId + 1, row.getId());
+                }
+                deliver(row);
+                lastId = row.getId();
+                gapSeenAt = -1;
+            }
+        } while (rows.size() == batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${app.events.outbox.cleanup-interval-ms:60000}")
+    public void deleteExpired() {
+        int deleted = repository.deleteCreatedBefore(Instant.now().minus(retention));
+        log.debug("deleteExpired: deleted {} outbox rows", deleted);
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    private void relayPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long expiredBefore = nanoClock.getAsLong() - retention.toNanos();
+        pending.values().removeIf(skippedAt -> skippedAt - expiredBefore < 0);
+        for (OutboxEventEntity row : repository.findByIdInOrderByIdAsc(pending.keySet())) {
+            log.info("Relaying outbox row {}, it committed after it was skipped", row.getId());
+            deliver(row);
+            pending.remove(row.getId());
+        }
+    }
+
+    private boolean gapTimedOut() {
+        long now = nanoClock.getAsLong();
+        if (gapSeenAt < 0) {
+            gapSeenAt = now;
+        }
+        return now - gapSeenAt >= gapTimeout.toNanos();
+    }
+
+    // Keeps the ids from up to but not including to pending
+    private void skip(long from, long to) {
+        log.debug("Skipping outbox ids {} to {} for now, they did not commit within {}", from, to - 1, gapTimeout);
+        long now = nanoClock.getAsLong();
+        for (long id = Math.max(from, to - maxPending); id < to; id++) {
+            pending.put(id, now);
+        }
+        if (pending.size() > maxPending || to - from > maxPending) {
+            while (pending.size() > maxPending) {
+                pending.pollFirstEntry();
+            }
+            log.warn("More than {} outbox ids are pending, giving up those below {}", maxPending,
+                    pending.isEmpty() ? to : pending.firstKey());
+        }
+    }
+
+    private void deliver(OutboxEventEntity row) {
+        try {
+            OutboxPayloads.read(row.getPayload()).forEach(event -> broker.emit(row.getTopic(), event));
+        } catch (JsonProcessingException e) {
+            log.error("Dropping unreadable outbox row {}: {}", row.getId(), e.getMessage());
+        }
+    }
+}
@@ -14,8 +14,19 @@ import javax.persistence.*;
 @Getter
 @Setter
 public class ReviewEntity {
+    static final String ID_SEQUENCE_TABLE = "review_id_sequence";
+    static final String ID_SEQUENCE_NAME = "reviews";
+    static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * Ids are allocated in blocks from a generator table instead of an IDENTITY column,
+     * which would force Hibernate to execute every insert on its own to learn the id.
+     * {@link ReviewIdSequenceInitializer} moves the table past the ids already in use.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "review_id_generator")
+    @TableGenerator(name = "review_id_generator", table = ID_SEQUENCE_TABLE, pkColumnValue = ID_SEQUENCE_NAME,
+            allocationSize = ID_ALLOCATION_SIZE)
     private int id;
     @Version
     private int version;
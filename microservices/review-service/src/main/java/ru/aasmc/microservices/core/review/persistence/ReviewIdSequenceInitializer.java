@@ -0,0 +1,38 @@
+package ru.aasmc.microservices.core.review.persistence;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import static ru.aasmc.microservices.core.review.persistence.ReviewEntity.ID_ALLOCATION_SIZE;
+import static ru.aasmc.microservices.core.review.persistence.ReviewEntity.ID_SEQUENCE_NAME;
+import static ru.aasmc.microservices.core.review.persistence.ReviewEntity.ID_SEQUENCE_TABLE;
+
+/**
+ * Moves the id generator of {@link ReviewEntity} past the ids in the reviews table. A generator table created
+ * next to existing reviews, e.g. those of an IDENTITY column, would otherwise hand out their ids again.
+ *
+ * The next value only ever grows, so instances that start at the same time do not hand out a block twice.
+ * It is the upper end of the next block, the block after MAX(id) starts at MAX(id) + 1.
+ */
+@Slf4j
+@Component
+@Profile("!r2dbc")
+@RequiredArgsConstructor
+public class ReviewIdSequenceInitializer {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void moveSequencePastExistingIds() {
+        Long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from reviews", Long.class);
+        long nextValue = maxId + ID_ALLOCATION_SIZE;
+        jdbcTemplate.update("insert into " + ID_SEQUENCE_TABLE + " (sequence_name, next_val) values (?, ?) " +
+                "on duplicate key update next_val = greatest(next_val, values(next_val))", ID_SEQUENCE_NAME, nextValue);
+        log.info("The review id sequence is at {} or later, past the largest review id {}", nextValue, maxId);
+    }
+}
@@ -5,7 +5,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
-public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
+public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer>, ReviewRepositoryCustom {
+
+    @Override
+    <S extends ReviewEntity> List<S> saveAll(Iterable<S> entities);
 
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
@@ -0,0 +1,25 @@
+package ru.aasmc.microservices.core.review.persistence;
+
+import java.util.List;
+
+public interface ReviewRepositoryCustom {
+
+    List<ReviewView> findViewsByProductId(int productId);
+
+    /**
+     * Full-text search over subject and content backed by the reviews_fulltext_idx index,
+     * most relevant first.
+     */
+    List<ReviewView> searchViews(String query, int page, int size);
+
+    /**
+     * Creates the review or replaces the one with its productId and reviewId in one statement on the
+     * reviews_unique_idx index, bumping its version. With mustExist only an existing review is replaced,
+     * with expectedVersion only one at that version. A replaced review is read back in a second statement, for
+     * its id and version.
+     *
+     * @return the stored review, or null if it did not meet the condition
+     */
+    ReviewEntity upsert(ReviewEntity entity, boolean mustExist, Integer expectedVersion);
+
+}
@@ -0,0 +1,131 @@
+package ru.aasmc.microservices.core.review.persistence;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ReviewRepositoryCustomImpl implements ReviewRepositoryCustom {
+
+    private static final String VIEWS_BY_PRODUCT_ID_QUERY =
+            "select new ru.aasmc.microservices.core.review.persistence.ReviewView(" +
+                    "r.productId, r.reviewId, r.author, r.subject, r.content) " +
+                    "from ReviewEntity r where r.productId = :productId";
+
+    private static final String SEARCH_QUERY =
+            "select product_id, review_id, author, subject, content, " +
+                    "match(subject, content) against (:query in natural language mode) as score " +
+                    "from reviews " +
+                    "where match(subject, content) against (:query in natural language mode) " +
+                    "order by score desc, id " +
+                    "limit :limit offset :offset";
+
+    // The id is only used if the review is new, a replaced review keeps its own
+    private static final String UPSERT_STATEMENT =
+            "insert into reviews (id, version, product_id, review_id, author, subject, content) " +
+                    "values (:id, 0, :productId, :reviewId, :author, :subject, :content) " +
+                    "on duplicate key update version = version + 1, " +
+                    "author = values(author), subject = values(subject), content = values(content)";
+
+    private static final String REPLACE_STATEMENT =
+            "update reviews set version = version + 1, author = :author, subject = :subject, content = :content " +
+                    "where product_id = :productId and review_id = :reviewId";
+
+    private static final String BY_KEY_QUERY =
+            "select r from ReviewEntity r where r.productId = :productId and r.reviewId = :reviewId";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final int fetchSize;
+
+    public ReviewRepositoryCustomImpl(@Value("${app.review.fetch-size:0}") int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ReviewView> findViewsByProductId(int productId) {
+        TypedQuery<ReviewView> query = entityManager
+                .createQuery(VIEWS_BY_PRODUCT_ID_QUERY, ReviewView.class)
+                .setParameter("productId", productId)
+                .setHint(QueryHints.HINT_READONLY, true);
+        if (fetchSize > 0) {
+            query.setHint(QueryHints.HINT_FETCH_SIZE, fetchSize);
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    @Transactional
+    public ReviewEntity upsert(ReviewEntity entity, boolean mustExist, Integer expectedVersion) {
+        Query statement;
+        Integer newId = null;
+        if (mustExist) {
+            statement = entityManager.createNativeQuery(
+                    expectedVersion == null ? REPLACE_STATEMENT : REPLACE_STATEMENT + " and version = :version");
+            if (expectedVersion != null) {
+                statement.setParameter("version", expectedVersion);
+            }
+        } else {
+            newId = nextId(entity);
+            statement = entityManager.createNativeQuery(UPSERT_STATEMENT).setParameter("id", newId);
+        }
+        int rows = statement
+                .setParameter("productId", entity.getProductId())
+                .setParameter("reviewId", entity.getReviewId())
+                .setParameter("author", entity.getAuthor())
+                .setParameter("subject", entity.getSubject())
+                .setParameter("content", entity.getContent())
+                .executeUpdate();
+        if (rows == 0) {
+            return null;
+        }
+        // The upsert inserted the review, everything it stored is known. MySQL counts a row it replaced twice,
+        // a replaced review is read back for its id and version, in a second statement of the transaction.
+        if (newId != null && rows == 1) {
+            ReviewEntity inserted = new ReviewEntity(entity.getProductId(), entity.getReviewId(),
+                    entity.getAuthor(), entity.getSubject(), entity.getContent());
+            inserted.setId(newId);
+            return inserted;
+        }
+        return entityManager.createQuery(BY_KEY_QUERY, ReviewEntity.class)
+                .setParameter("productId", entity.getProductId())
+                .setParameter("reviewId", entity.getReviewId())
+                .getSingleResult();
+    }
+
+    // Taken from the pooled review_id_generator, like the ids of saved reviews
+    private int nextId(ReviewEntity entity) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        return ((Number) session.getFactory().getMetamodel().entityPersister(ReviewEntity.class)
+                .getIdentifierGenerator().generate(session, entity)).intValue();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public List<ReviewView> searchViews(String query, int page, int size) {
+        List<Object[]> rows = entityManager
+                .createNativeQuery(SEARCH_QUERY)
+                .setParameter("query", query)
+                .setParameter("limit", size)
+                .setParameter("offset", (long) page * size)
+                .getResultList();
+        return rows.stream()
+                .map(row -> new ReviewView(
+                        ((Number) row[0]).intValue(),
+                        ((Number) row[1]).intValue(),
+                        (String) row[2],
+                        (String) row[3],
+                        (String) row[4]))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,40 @@
+package ru.aasmc.microservices.core.review.persistence;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the FULLTEXT index behind review search, JPA can only declare regular indexes.
+ *
+ * Adding the first FULLTEXT index rebuilds the table, on large existing tables
+ * create it up front and let this initializer find it in place.
+ */
+@Slf4j
+@Component
+@Profile("!r2dbc")
+@ConditionalOnProperty(prefix = "app.review.search", name = "create-index", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ReviewSearchIndexInitializer {
+
+    public static final String INDEX_NAME = "reviews_fulltext_idx";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void createIndexIfMissing() {
+        Integer existing = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.statistics " +
+                        "where table_schema = database() and table_name = 'reviews' and index_name = ?",
+                Integer.class, INDEX_NAME);
+        if (existing == null || existing == 0) {
+            log.info("Creating full-text index {} on reviews(subject, content)", INDEX_NAME);
+            jdbcTemplate.execute("alter table reviews add fulltext index " + INDEX_NAME + " (subject, content)");
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ru.aasmc.microservices.core.review.persistence;
+
+/**
+ * Read-only view of a review. It is selected with a constructor expression,
+ * so Hibernate neither manages nor snapshots the rows it is built from.
+ */
+public record ReviewView(int productId, int reviewId, String author, String subject, String content) {
+}
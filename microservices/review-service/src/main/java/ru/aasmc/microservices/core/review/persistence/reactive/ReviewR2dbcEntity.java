@@ -0,0 +1,38 @@
+package ru.aasmc.microservices.core.review.persistence.reactive;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * R2DBC mapping of the reviews table used by the r2dbc profile.
+ *
+ * Ids come from the AUTO_INCREMENT column created by schema-r2dbc.sql,
+ * the (productId, reviewId) uniqueness is enforced by its reviews_unique_idx constraint.
+ */
+@Table("reviews")
+@NoArgsConstructor
+@Getter
+@Setter
+public class ReviewR2dbcEntity {
+    @Id
+    private Integer id;
+    @Version
+    private int version;
+    private int productId;
+    private int reviewId;
+    private String author;
+    private String subject;
+    private String content;
+
+    public ReviewR2dbcEntity(int productId, int reviewId, String author, String subject, String content) {
+        this.productId = productId;
+        this.reviewId = reviewId;
+        this.author = author;
+        this.subject = subject;
+        this.content = content;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.aasmc.microservices.core.review.persistence.reactive;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReviewR2dbcRepository extends ReactiveCrudRepository<ReviewR2dbcEntity, Integer> {
+
+    Flux<ReviewR2dbcEntity> findByProductId(int productId);
+
+    @Modifying
+    @Query("DELETE FROM reviews WHERE product_id = :productId")
+    Mono<Integer> deleteByProductId(int productId);
+
+}
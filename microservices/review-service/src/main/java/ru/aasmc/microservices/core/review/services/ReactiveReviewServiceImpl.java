@@ -0,0 +1,81 @@
+package ru.aasmc.microservices.core.review.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.aasmc.api.core.review.ReactiveReviewService;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.event.Event;
+import ru.aasmc.api.exceptions.InvalidInputException;
+import ru.aasmc.microservices.core.review.persistence.reactive.ReviewR2dbcRepository;
+import ru.aasmc.util.events.EventPublisher;
+
+import java.util.List;
+
+import static ru.aasmc.api.event.EventTopics.REVIEWS;
+
+/**
+ * Review endpoints on top of R2DBC, replaces {@link ReviewServiceImpl} when the r2dbc profile is active.
+ *
+ * There is no outbox on this stack, events are published once a write has completed.
+ */
+@Slf4j
+@Profile("r2dbc")
+@RequiredArgsConstructor
+@RestController
+public class ReactiveReviewServiceImpl implements ReactiveReviewService {
+
+    private final ReviewR2dbcRepository repository;
+    private final ReviewMapper mapper;
+    private final TransactionalOperator transactionalOperator;
+    private final EventPublisher eventPublisher;
+
+    @Override
+    public Mono<Review> createReview(Review body) {
+        return repository.save(mapper.apiToR2dbcEntity(body))
+                .doOnNext(e -> log.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId()))
+                .map(mapper::r2dbcEntityToApi)
+                .doOnNext(review -> eventPublisher.publish(REVIEWS, new Event<>(Event.Type.CREATE, review.getProductId(), review)))
+                .onErrorMap(DataIntegrityViolationException.class,
+                        ex -> InvalidInputException.withoutStackTrace("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId()));
+    }
+
+    @Override
+    public Flux<Review> createReviews(List<Review> body) {
+        return repository.saveAll(Flux.fromIterable(body).map(mapper::apiToR2dbcEntity))
+                .as(transactionalOperator::transactional)
+                .map(mapper::r2dbcEntityToApi)
+                // Collected so that nothing is published before the batch has committed
+                .collectList()
+                .doOnNext(reviews -> eventPublisher.publishAll(REVIEWS, reviews.stream()
+                        .map(review -> new Event<>(Event.Type.CREATE, review.getProductId(), review))
+                        .toList()))
+                .flatMapMany(Flux::fromIterable)
+                .onErrorMap(DataIntegrityViolationException.class,
+                        ex -> InvalidInputException.withoutStackTrace("Duplicate key in a batch of " + body.size() + " reviews"));
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId) {
+        if (productId < 1) {
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+        }
+
+        return repository.findByProductId(productId)
+                .map(mapper::r2dbcEntityToApi);
+    }
+
+    @Override
+    public Mono<Void> deleteReviews(int productId) {
+        log.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
+        return repository.deleteByProductId(productId)
+                .filter(deleted -> deleted > 0)
+                .doOnNext(deleted -> eventPublisher.publish(REVIEWS, new Event<>(Event.Type.DELETE, productId, null)))
+                .then();
+    }
+}
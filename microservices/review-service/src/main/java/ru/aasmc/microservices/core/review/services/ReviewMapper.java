@@ -5,6 +5,8 @@ import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
 import ru.aasmc.api.core.review.Review;
 import ru.aasmc.microservices.core.review.persistence.ReviewEntity;
+import ru.aasmc.microservices.core.review.persistence.ReviewView;
+import ru.aasmc.microservices.core.review.persistence.reactive.ReviewR2dbcEntity;
 
 import java.util.List;
 
@@ -22,7 +24,25 @@ public interface ReviewMapper {
     })
     ReviewEntity apiToEntity(Review api);
 
+    @Mappings({
+            @Mapping(target = "serviceAddress", ignore = true)
+    })
+    Review viewToApi(ReviewView view);
+
+    @Mappings({
+            @Mapping(target = "serviceAddress", ignore = true)
+    })
+    Review r2dbcEntityToApi(ReviewR2dbcEntity entity);
+
+    @Mappings({
+            @Mapping(target = "id", ignore = true),
+            @Mapping(target = "version", ignore = true)
+    })
+    ReviewR2dbcEntity apiToR2dbcEntity(Review api);
+
     List<Review> entityListToApiList(List<ReviewEntity> entity);
 
+    List<Review> viewListToApiList(List<ReviewView> views);
+
     List<ReviewEntity> apiListToEntityList(List<Review> api);
 }
@@ -1,53 +1,175 @@
 package ru.aasmc.microservices.core.review.services;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RestController;
 import ru.aasmc.api.core.review.Review;
 import ru.aasmc.api.core.review.ReviewService;
+import ru.aasmc.api.event.Event;
 import ru.aasmc.api.exceptions.InvalidInputException;
+import ru.aasmc.api.exceptions.PreconditionFailedException;
+import ru.aasmc.microservices.core.review.datasource.ReadYourWritesTracker;
+import ru.aasmc.microservices.core.review.datasource.ReplicaRoutingDataSource;
 import ru.aasmc.microservices.core.review.persistence.ReviewEntity;
 import ru.aasmc.microservices.core.review.persistence.ReviewRepository;
-import ru.aasmc.util.http.ServiceUtil;
+import ru.aasmc.microservices.core.review.persistence.ReviewView;
+import ru.aasmc.util.cache.TwoTierCache;
+import ru.aasmc.util.cache.TwoTierCacheFactory;
+import ru.aasmc.util.events.EventPublisher;
+import ru.aasmc.util.http.IfMatch;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import static ru.aasmc.api.event.EventTopics.REVIEWS;
+
 @Slf4j
-@RequiredArgsConstructor
+@Profile("!r2dbc")
 @RestController
 public class ReviewServiceImpl implements ReviewService {
 
-    private final ServiceUtil serviceUtil;
     private final ReviewRepository repository;
     private final ReviewMapper mapper;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final EventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final TwoTierCache<Integer, List<ReviewView>> cache;
+    private final int maxSearchPageSize;
+
+    public ReviewServiceImpl(
+            ReviewRepository repository,
+            ReviewMapper mapper,
+            ReadYourWritesTracker readYourWritesTracker,
+            EventPublisher eventPublisher,
+            TransactionTemplate transactionTemplate,
+            TwoTierCacheFactory cacheFactory,
+            @Value("${app.review.search.max-page-size:100}") int maxSearchPageSize) {
+        this.repository = repository;
+        this.mapper = mapper;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.cache = cacheFactory.create("reviews", new TypeReference<>() {});
+        this.maxSearchPageSize = maxSearchPageSize;
+    }
 
     @Override
     public Review createReview(Review body) {
         try {
-            ReviewEntity entity = mapper.apiToEntity(body);
-            ReviewEntity newEntity = repository.save(entity);
+            // The event is written in the same transaction, a duplicate key surfaces at its commit
+            Review review = transactionTemplate.execute(status -> {
+                ReviewEntity newEntity = repository.save(mapper.apiToEntity(body));
+                Review created = mapper.entityToApi(newEntity);
+                eventPublisher.publish(REVIEWS, new Event<>(Event.Type.CREATE, created.getProductId(), created));
+                return created;
+            });
+            readYourWritesTracker.recordWrite(body.getProductId());
+            cache.evict(body.getProductId());
 
             log.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId());
-            return mapper.entityToApi(newEntity);
+            return review;
 
         } catch (DataIntegrityViolationException dive) {
-            throw new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId());
+            throw InvalidInputException.withoutStackTrace("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId());
+        }
+    }
+
+    @Override
+    public ResponseEntity<Review> upsertReview(String ifMatch, Review body) {
+        if (body.getProductId() < 1) {
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + body.getProductId());
+        }
+        IfMatch condition = IfMatch.parse(ifMatch);
+
+        ReviewEntity entity = transactionTemplate.execute(status -> {
+            ReviewEntity stored = repository.upsert(mapper.apiToEntity(body), condition.mustExist(), condition.version());
+            if (stored != null) {
+                Review review = mapper.entityToApi(stored);
+                eventPublisher.publish(REVIEWS, new Event<>(Event.Type.CREATE, review.getProductId(), review));
+            }
+            return stored;
+        });
+        if (entity == null) {
+            throw new PreconditionFailedException("No review found for Product Id: " + body.getProductId()
+                    + ", Review Id:" + body.getReviewId()
+                    + (condition.version() == null ? "" : " at version " + condition.version()));
+        }
+        readYourWritesTracker.recordWrite(body.getProductId());
+        cache.evict(body.getProductId());
+
+        log.debug("upsertReview: stored {}/{} at version {}", entity.getProductId(), entity.getReviewId(), entity.getVersion());
+        return ResponseEntity.ok().eTag(IfMatch.eTag(entity.getVersion())).body(mapper.entityToApi(entity));
+    }
+
+    @Override
+    public List<Review> createReviews(List<Review> body) {
+        try {
+            List<Review> reviews = transactionTemplate.execute(status -> {
+                List<ReviewEntity> newEntityList = repository.saveAll(mapper.apiListToEntityList(body));
+                List<Review> created = mapper.entityListToApiList(newEntityList);
+                eventPublisher.publishAll(REVIEWS, created.stream()
+                        .map(review -> new Event<>(Event.Type.CREATE, review.getProductId(), review))
+                        .toList());
+                return created;
+            });
+            reviews.stream().mapToInt(Review::getProductId).distinct().forEach(productId -> {
+                readYourWritesTracker.recordWrite(productId);
+                cache.evict(productId);
+            });
+
+            log.debug("createReviews: created {} review entities", reviews.size());
+            return reviews;
+
+        } catch (DataIntegrityViolationException dive) {
+            throw InvalidInputException.withoutStackTrace("Duplicate key in a batch of " + body.size() + " reviews");
         }
     }
 
     @Override
     public List<Review> getReviews(int productId) {
         if (productId < 1) {
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+        }
+
+        // Until the replicas have caught up with a recent write the cache is bypassed as well
+        List<ReviewView> viewList = readYourWritesTracker.isRecentlyWritten(productId)
+                ? ReplicaRoutingDataSource.onPrimary(() -> repository.findViewsByProductId(productId))
+                : cache.get(productId, () -> repository.findViewsByProductId(productId));
+        List<Review> list = mapper.viewListToApiList(viewList);
+
+        if (log.isDebugEnabled()) {
+            log.debug("getReviews: response size: {}", list.size());
         }
 
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
-        List<Review> list = mapper.entityListToApiList(entityList);
-        list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
+        return list;
+    }
 
-        log.debug("getReviews: response size: {}", list.size());
+    @Override
+    public List<Review> searchReviews(String query, int page, int size) {
+        if (query == null || query.isBlank()) {
+            throw InvalidInputException.withoutStackTrace("Invalid query: must not be blank");
+        }
+        if (page < 0) {
+            throw InvalidInputException.withoutStackTrace("Invalid page: " + page);
+        }
+        if (size < 1 || size > maxSearchPageSize) {
+            throw InvalidInputException.withoutStackTrace("Invalid size: " + size + ", must be between 1 and " + maxSearchPageSize);
+        }
+        // The offset page * size has to fit the int of the query
+        if (page > Integer.MAX_VALUE / size) {
+            throw InvalidInputException.withoutStackTrace("Invalid page: " + page + ", must be at most " + Integer.MAX_VALUE / size);
+        }
+
+        List<Review> list = mapper.viewListToApiList(repository.searchViews(query, page, size));
+
+        if (log.isDebugEnabled()) {
+            log.debug("searchReviews: response size: {}", list.size());
+        }
 
         return list;
     }
@@ -55,6 +177,15 @@ public class ReviewServiceImpl implements ReviewService {
     @Override
     public void deleteReviews(int productId) {
         log.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+        // A read-write transaction, so the reviews are read from the primary
+        transactionTemplate.executeWithoutResult(status -> {
+            List<ReviewEntity> entityList = repository.findByProductId(productId);
+            if (!entityList.isEmpty()) {
+                repository.deleteAll(entityList);
+                eventPublisher.publish(REVIEWS, new Event<>(Event.Type.DELETE, productId, null));
+            }
+        });
+        readYourWritesTracker.recordWrite(productId);
+        cache.evict(productId);
     }
 }
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 import org.mapstruct.factory.Mappers;
 import ru.aasmc.api.core.review.Review;
 import ru.aasmc.microservices.core.review.persistence.ReviewEntity;
+import ru.aasmc.microservices.core.review.persistence.ReviewView;
+import ru.aasmc.microservices.core.review.persistence.reactive.ReviewR2dbcEntity;
 import ru.aasmc.microservices.core.review.services.ReviewMapper;
 
 import java.util.Collections;
@@ -39,6 +41,51 @@ public class MapperTests {
         assertNull(api2.getServiceAddress());
     }
 
+    @Test
+    void mapperViewTests() {
+
+        assertNotNull(mapper);
+
+        ReviewView view = new ReviewView(1, 2, "a", "s", "C");
+        List<Review> apiList = mapper.viewListToApiList(Collections.singletonList(view));
+        assertEquals(1, apiList.size());
+
+        Review api = apiList.get(0);
+
+        assertEquals(view.productId(), api.getProductId());
+        assertEquals(view.reviewId(), api.getReviewId());
+        assertEquals(view.author(), api.getAuthor());
+        assertEquals(view.subject(), api.getSubject());
+        assertEquals(view.content(), api.getContent());
+        assertNull(api.getServiceAddress());
+    }
+
+    @Test
+    void mapperR2dbcTests() {
+
+        assertNotNull(mapper);
+
+        Review api = new Review(1, 2, "a", "s", "C", "adr");
+
+        ReviewR2dbcEntity entity = mapper.apiToR2dbcEntity(api);
+
+        assertNull(entity.getId());
+        assertEquals(api.getProductId(), entity.getProductId());
+        assertEquals(api.getReviewId(), entity.getReviewId());
+        assertEquals(api.getAuthor(), entity.getAuthor());
+        assertEquals(api.getSubject(), entity.getSubject());
+        assertEquals(api.getContent(), entity.getContent());
+
+        Review api2 = mapper.r2dbcEntityToApi(entity);
+
+        assertEquals(api.getProductId(), api2.getProductId());
+        assertEquals(api.getReviewId(), api2.getReviewId());
+        assertEquals(api.getAuthor(), api2.getAuthor());
+        assertEquals(api.getSubject(), api2.getSubject());
+        assertEquals(api.getContent(), api2.getContent());
+        assertNull(api2.getServiceAddress());
+    }
+
     @Test
     void mapperListTests() {
 
@@ -7,19 +7,25 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.annotation.Transactional;
 import ru.aasmc.microservices.core.review.persistence.ReviewEntity;
+import ru.aasmc.microservices.core.review.persistence.ReviewIdSequenceInitializer;
 import ru.aasmc.microservices.core.review.persistence.ReviewRepository;
+import ru.aasmc.microservices.core.review.persistence.ReviewView;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
+import static java.util.stream.IntStream.rangeClosed;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
 
-@DataJpaTest
+// The slice has no use for events, the direct transport keeps the outbox relay and its polling out of it
+@DataJpaTest(properties = "app.events.transport=direct")
 @Transactional(propagation = NOT_SUPPORTED)
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
 class PersistenceTests extends MySqlTestBase {
@@ -27,6 +33,9 @@ class PersistenceTests extends MySqlTestBase {
     @Autowired
     private ReviewRepository repository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private ReviewEntity savedEntity;
 
     @BeforeEach
@@ -51,6 +60,32 @@ class PersistenceTests extends MySqlTestBase {
         assertEquals(2, repository.count());
     }
 
+    @Test
+    void createInBatch() {
+
+        List<ReviewEntity> newEntities = rangeClosed(3, 102)
+                .mapToObj(i -> new ReviewEntity(1, i, "a", "s", "c"))
+                .collect(Collectors.toList());
+        List<ReviewEntity> savedEntities = repository.saveAll(newEntities);
+
+        assertEquals(100, savedEntities.size());
+        assertEquals(100, savedEntities.stream().map(ReviewEntity::getId).distinct().count());
+        assertEquals(101, repository.count());
+    }
+
+    @Test
+    void createInBatchDuplicateError() {
+
+        List<ReviewEntity> newEntities = List.of(
+                new ReviewEntity(1, 3, "a", "s", "c"),
+                new ReviewEntity(1, 2, "a", "s", "c"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> repository.saveAll(newEntities));
+
+        // The batch is stored in one transaction, so the first review must not be stored either
+        assertEquals(1, repository.count());
+    }
+
     @Test
     void update() {
         savedEntity.setAuthor("a2");
@@ -75,6 +110,19 @@ class PersistenceTests extends MySqlTestBase {
         assertEqualsReview(savedEntity, entityList.get(0));
     }
 
+    @Test
+    void getViewsByProductId() {
+        List<ReviewView> viewList = repository.findViewsByProductId(savedEntity.getProductId());
+
+        assertThat(viewList, hasSize(1));
+        ReviewView view = viewList.get(0);
+        assertEquals(savedEntity.getProductId(), view.productId());
+        assertEquals(savedEntity.getReviewId(), view.reviewId());
+        assertEquals(savedEntity.getAuthor(), view.author());
+        assertEquals(savedEntity.getSubject(), view.subject());
+        assertEquals(savedEntity.getContent(), view.content());
+    }
+
     @Test
     void duplicateError() {
         assertThrows(DataIntegrityViolationException.class, () -> {
@@ -108,6 +156,29 @@ class PersistenceTests extends MySqlTestBase {
         assertEquals("a1", updatedEntity.getAuthor());
     }
 
+    @Test
+    void idSequenceMovesPastExistingIds() {
+
+        // A review of an older schema, with an id the generator table has not handed out yet
+        long existingId = nextSequenceValue() + 1000;
+        jdbcTemplate.update("insert into reviews (id, version, product_id, review_id, author, subject, content) " +
+                "values (?, 0, 1, 10, 'a', 's', 'c')", existingId);
+        ReviewIdSequenceInitializer initializer = new ReviewIdSequenceInitializer(jdbcTemplate);
+
+        initializer.moveSequencePastExistingIds();
+        assertEquals(existingId + 50, nextSequenceValue());
+
+        // Never moves back
+        jdbcTemplate.update("delete from reviews where id = ?", existingId);
+        initializer.moveSequencePastExistingIds();
+        assertEquals(existingId + 50, nextSequenceValue());
+    }
+
+    private long nextSequenceValue() {
+        return jdbcTemplate.queryForObject(
+                "select next_val from review_id_sequence where sequence_name = 'reviews'", Long.class);
+    }
+
     private void assertEqualsReview(ReviewEntity expectedEntity, ReviewEntity actualEntity) {
         assertEquals(expectedEntity.getId(), actualEntity.getId());
         assertEquals(expectedEntity.getVersion(), actualEntity.getVersion());
@@ -0,0 +1,167 @@
+package ru.aasmc.microservices.core.review;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.microservices.core.review.persistence.reactive.ReviewR2dbcRepository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.*;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static reactor.core.publisher.Mono.just;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+		"spring.r2dbc.url=r2dbc:h2:mem:///review-db;MODE=MySQL",
+		"spring.r2dbc.username=sa",
+		"spring.r2dbc.password="})
+@ActiveProfiles("r2dbc")
+class ReactiveReviewServiceApplicationTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ReviewR2dbcRepository repository;
+
+	@BeforeEach
+	void setupDb() {
+		repository.deleteAll().block();
+	}
+
+	@Test
+	void getReviewsByProductId() {
+
+		int productId = 1;
+
+		assertEquals(0, countReviews(productId));
+
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 2, OK);
+		postAndVerifyReview(productId, 3, OK);
+
+		assertEquals(3, countReviews(productId));
+
+		getAndVerifyReviewsByProductId("?productId=" + productId, OK)
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[2].productId").isEqualTo(productId)
+				.jsonPath("$[2].reviewId").isEqualTo(3);
+	}
+
+	@Test
+	void duplicateError() {
+
+		int productId = 1;
+		int reviewId = 1;
+
+		postAndVerifyReview(productId, reviewId, OK)
+				.jsonPath("$.productId").isEqualTo(productId)
+				.jsonPath("$.reviewId").isEqualTo(reviewId);
+
+		postAndVerifyReview(productId, reviewId, UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review")
+				.jsonPath("$.message").isEqualTo("Duplicate key, Product Id: 1, Review Id:1");
+
+		assertEquals(1, countReviews(productId));
+	}
+
+	@Test
+	void createReviewsInBatchDuplicateError() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 2, OK);
+
+		postAndVerifyReviews(productId, new int[]{1, 2, 3}, UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review/batch")
+				.jsonPath("$.message").isEqualTo("Duplicate key in a batch of 3 reviews");
+
+		assertEquals(1, countReviews(productId));
+
+		postAndVerifyReviews(productId, new int[]{1, 3}, OK)
+				.jsonPath("$.length()").isEqualTo(2);
+
+		assertEquals(3, countReviews(productId));
+	}
+
+	@Test
+	void deleteReviews() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+		assertEquals(1, countReviews(productId));
+
+		deleteAndVerifyReviewsByProductId(productId, OK);
+		assertEquals(0, countReviews(productId));
+
+		deleteAndVerifyReviewsByProductId(productId, OK);
+	}
+
+	@Test
+	void getReviewsInvalidParameterNegativeValue() {
+
+		getAndVerifyReviewsByProductId("?productId=-1", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review")
+				.jsonPath("$.message").isEqualTo("Invalid productId: -1");
+	}
+
+	private long countReviews(int productId) {
+		return repository.findByProductId(productId).count().block();
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyReviewsByProductId(String productIdQuery, HttpStatus expectedStatus) {
+		return client.get()
+				.uri("/review" + productIdQuery)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
+	private WebTestClient.BodyContentSpec postAndVerifyReview(int productId, int reviewId, HttpStatus expectedStatus) {
+		Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+		return client.post()
+				.uri("/review")
+				.body(just(review), Review.class)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
+	private WebTestClient.BodyContentSpec postAndVerifyReviews(int productId, int[] reviewIds, HttpStatus expectedStatus) {
+		List<Review> reviews = Arrays.stream(reviewIds)
+				.mapToObj(reviewId -> new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA"))
+				.collect(Collectors.toList());
+		return client.post()
+				.uri("/review/batch")
+				.bodyValue(reviews)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
+	private WebTestClient.BodyContentSpec deleteAndVerifyReviewsByProductId(int productId, HttpStatus expectedStatus) {
+		return client.delete()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectBody();
+	}
+
+}
@@ -0,0 +1,108 @@
+package ru.aasmc.microservices.core.review;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.aasmc.microservices.core.review.datasource.ReadYourWritesTracker;
+import ru.aasmc.microservices.core.review.datasource.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingTests {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica1 = mock(DataSource.class);
+    private final DataSource replica2 = mock(DataSource.class);
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        for (DataSource dataSource : List.of(primary, replica1, replica2)) {
+            when(dataSource.getConnection()).thenReturn(mock(Connection.class));
+        }
+        routingDataSource = new ReplicaRoutingDataSource(primary, List.of(replica1, replica2));
+        routingDataSource.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void readWriteWorkGoesToPrimary() throws SQLException {
+        routingDataSource.getConnection();
+
+        verify(primary).getConnection();
+        verifyNoInteractions(replica1, replica2);
+    }
+
+    @Test
+    void readOnlyWorkIsSpreadOverReplicas() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        routingDataSource.getConnection();
+        routingDataSource.getConnection();
+        routingDataSource.getConnection();
+
+        verify(replica1, times(2)).getConnection();
+        verify(replica2, times(1)).getConnection();
+        verifyNoInteractions(primary);
+    }
+
+    @Test
+    void readOnlyWorkCanBeForcedToPrimary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        Connection connection = ReplicaRoutingDataSource.onPrimary(this::getConnection);
+
+        assertNotNull(connection);
+        verify(primary).getConnection();
+        verifyNoInteractions(replica1, replica2);
+    }
+
+    @Test
+    void closesPoolsOnClose() throws Exception {
+        AutoCloseablePool pool = mock(AutoCloseablePool.class);
+        ReplicaRoutingDataSource closing = new ReplicaRoutingDataSource(pool, List.of(replica1));
+        closing.afterPropertiesSet();
+
+        closing.close();
+
+        verify(pool).close();
+    }
+
+    @Test
+    void readYourWritesWindow() {
+        ReadYourWritesTracker tracker = new ReadYourWritesTracker(Duration.ofMinutes(1));
+        assertFalse(tracker.isRecentlyWritten(1));
+
+        tracker.recordWrite(1);
+        assertTrue(tracker.isRecentlyWritten(1));
+        assertFalse(tracker.isRecentlyWritten(2));
+
+        ReadYourWritesTracker disabledTracker = new ReadYourWritesTracker(Duration.ZERO);
+        disabledTracker.recordWrite(1);
+        assertFalse(disabledTracker.isRecentlyWritten(1));
+    }
+
+    private Connection getConnection() {
+        try {
+            return routingDataSource.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    interface AutoCloseablePool extends DataSource, AutoCloseable {
+    }
+}
@@ -7,7 +7,17 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.event.Event;
 import ru.aasmc.microservices.core.review.persistence.ReviewRepository;
+import ru.aasmc.util.cache.TwoTierCacheFactory;
+import ru.aasmc.util.events.InMemoryEventBroker;
+import ru.aasmc.util.events.TopicEvent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -15,6 +25,8 @@ import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
+import static ru.aasmc.api.event.EventTopics.REVIEWS;
+import static ru.aasmc.util.http.ServiceAddressWebFilter.SERVICE_ADDRESS_HEADER;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT)
 class ReviewServiceApplicationTests extends MySqlTestBase {
@@ -25,9 +37,16 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 	@Autowired
 	private ReviewRepository repository;
 
+	@Autowired
+	private InMemoryEventBroker broker;
+
+	@Autowired
+	private TwoTierCacheFactory cacheFactory;
+
 	@BeforeEach
 	void setupDb() {
 		repository.deleteAll();
+		cacheFactory.clearAll();
 	}
 
 	@Test
@@ -49,6 +68,26 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 				.jsonPath("$[2].reviewId").isEqualTo(3);
 	}
 
+	@Test
+	void getReviewsTellsServiceAddressOnce() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 2, OK);
+
+		client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().exists(SERVICE_ADDRESS_HEADER)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].serviceAddress").doesNotExist()
+				.jsonPath("$[1].serviceAddress").doesNotExist();
+	}
+
 	@Test
 	void duplicateError() {
 
@@ -70,6 +109,105 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 		assertEquals(1, repository.count());
 	}
 
+	@Test
+	void upsertReview() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+
+		putAndVerifyReview(null, new Review(productId, 1, "Author", "New subject", "Content", null), OK)
+				.expectHeader().valueEquals("ETag", "\"1\"");
+		putAndVerifyReview("\"1\"", new Review(productId, 1, "Author", "Newer subject", "Content", null), OK)
+				.expectHeader().valueEquals("ETag", "\"2\"");
+		putAndVerifyReview(null, new Review(productId, 2, "Author", "Subject", "Content", null), OK)
+				.expectHeader().valueEquals("ETag", "\"0\"");
+
+		getAndVerifyReviewsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(2);
+		assertEquals("Newer subject", repository.findByProductId(productId).stream()
+				.filter(review -> review.getReviewId() == 1).findFirst().orElseThrow().getSubject());
+	}
+
+	@Test
+	void upsertReviewPreconditionFailed() {
+
+		int productId = 1;
+
+		putAndVerifyReview("*", new Review(productId, 1, "Author", "Subject", "Content", null), PRECONDITION_FAILED)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("No review found for Product Id: 1, Review Id:1");
+
+		postAndVerifyReview(productId, 1, OK);
+		putAndVerifyReview("\"3\"", new Review(productId, 1, "Author", "Subject", "Content", null), PRECONDITION_FAILED)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("No review found for Product Id: 1, Review Id:1 at version 3");
+		assertEquals(0, repository.findByProductId(productId).get(0).getVersion());
+	}
+
+	@Test
+	void createReviewsInBatch() {
+
+		int productId = 1;
+
+		postAndVerifyReviews(productId, new int[]{1, 2, 3}, OK)
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[2].productId").isEqualTo(productId)
+				.jsonPath("$[2].reviewId").isEqualTo(3);
+
+		assertEquals(3, repository.findByProductId(productId).size());
+	}
+
+	@Test
+	void createReviewsInBatchDuplicateError() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 2, OK);
+
+		postAndVerifyReviews(productId, new int[]{1, 2, 3}, UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review/batch")
+				.jsonPath("$.message").isEqualTo("Duplicate key in a batch of 3 reviews");
+
+		assertEquals(1, repository.findByProductId(productId).size());
+	}
+
+	@Test
+	void searchReviews() {
+
+		postAndVerifyReview(new Review(1, 1, "a", "Great battery life", "Charges fast and lasts for days", null), OK);
+		postAndVerifyReview(new Review(1, 2, "a", "Cracked screen", "The screen cracked after a week", null), OK);
+		postAndVerifyReview(new Review(2, 1, "a", "Battery drains", "The battery drains quickly, weak battery", null), OK);
+
+		searchAndVerifyReviews("?query=battery", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].productId").isEqualTo(2)
+				.jsonPath("$[1].productId").isEqualTo(1);
+
+		searchAndVerifyReviews("?query=battery&page=1&size=1", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].productId").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(1);
+
+		searchAndVerifyReviews("?query=keyboard", OK)
+				.jsonPath("$.length()").isEqualTo(0);
+	}
+
+	@Test
+	void searchReviewsInvalidParameters() {
+
+		searchAndVerifyReviews("?query=", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review/search")
+				.jsonPath("$.message").isEqualTo("Invalid query: must not be blank");
+
+		searchAndVerifyReviews("?query=battery&size=0", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review/search")
+				.jsonPath("$.message").isEqualTo("Invalid size: 0, must be between 1 and 100");
+
+		searchAndVerifyReviews("?query=battery&page=30000000&size=100", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Invalid page: 30000000, must be at most 21474836");
+	}
+
 	@Test
 	void deleteReviews() {
 
@@ -85,6 +223,29 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 		deleteAndVerifyReviewsByProductId(productId, OK);
 	}
 
+	@Test
+	void publishesEventsThroughOutbox() throws Exception {
+
+		// Not used by other tests, the relay may still be delivering their events
+		int productId = 7;
+		CompletableFuture<List<TopicEvent>> events = broker.events(REVIEWS)
+				.filter(e -> e.event().getKey() == productId)
+				.take(4).collectList().toFuture();
+
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 1, UNPROCESSABLE_ENTITY);
+		postAndVerifyReviews(productId, new int[]{2, 3}, OK);
+		deleteAndVerifyReviewsByProductId(productId, OK);
+		deleteAndVerifyReviewsByProductId(productId, OK);
+
+		List<TopicEvent> received = events.get(10, TimeUnit.SECONDS);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(Event.Type.CREATE, received.get(i).event().getEventType());
+			assertEquals(i + 1, ((Review) received.get(i).event().getData()).getReviewId());
+		}
+		assertEquals(Event.Type.DELETE, received.get(3).event().getEventType());
+	}
+
 	@Test
 	void getReviewsMissingParameter() {
 
@@ -132,8 +293,22 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 				.expectBody();
 	}
 
+	private WebTestClient.BodyContentSpec searchAndVerifyReviews(String query, HttpStatus expectedStatus) {
+		return client.get()
+				.uri("/review/search" + query)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
 	private WebTestClient.BodyContentSpec postAndVerifyReview(int productId, int reviewId, HttpStatus expectedStatus) {
 		Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+		return postAndVerifyReview(review, expectedStatus);
+	}
+
+	private WebTestClient.BodyContentSpec postAndVerifyReview(Review review, HttpStatus expectedStatus) {
 		return client.post()
 				.uri("/review")
 				.body(just(review), Review.class)
@@ -144,6 +319,34 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 				.expectBody();
 	}
 
+	private WebTestClient.BodyContentSpec postAndVerifyReviews(int productId, int[] reviewIds, HttpStatus expectedStatus) {
+		List<Review> reviews = Arrays.stream(reviewIds)
+				.mapToObj(reviewId -> new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA"))
+				.collect(Collectors.toList());
+		return client.post()
+				.uri("/review/batch")
+				.bodyValue(reviews)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
+	private WebTestClient.ResponseSpec putAndVerifyReview(String ifMatch, Review review, HttpStatus expectedStatus) {
+		return client.put()
+				.uri("/review")
+				.headers(headers -> {
+					if (ifMatch != null) {
+						headers.setIfMatch(ifMatch);
+					}
+				})
+				.body(just(review), Review.class)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus);
+	}
+
 	private WebTestClient.BodyContentSpec deleteAndVerifyReviewsByProductId(int productId, HttpStatus expectedStatus) {
 		return client.delete()
 				.uri("/review?productId=" + productId)
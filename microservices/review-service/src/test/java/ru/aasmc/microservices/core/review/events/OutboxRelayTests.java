@@ -0,0 +1,137 @@
+package ru.aasmc.microservices.core.review.events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import ru.aasmc.api.core.review.Review;
+import ru.aasmc.api.event.Event;
+import ru.aasmc.util.events.InMemoryEventBroker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static ru.aasmc.api.event.EventTopics.REVIEWS;
+
+class OutboxRelayTests {
+
+    private static final Duration GAP_TIMEOUT = Duration.ofMillis(500);
+    private static final Duration RETENTION = Duration.ofHours(1);
+
+    private final TreeMap<Long, OutboxEventEntity> table = new TreeMap<>();
+    private final List<Integer> delivered = new ArrayList<>();
+    private long now = 0;
+
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        setUp(1000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setUp(int maxPending) {
+        OutboxEventRepository repository = mock(OutboxEventRepository.class);
+        when(repository.findTopByOrderByIdDesc()).thenReturn(Optional.empty());
+        when(repository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class))).thenAnswer(invocation ->
+                table.tailMap(invocation.<Long>getArgument(0), false).values().stream()
+                        .limit(invocation.<Pageable>getArgument(1).getPageSize()).toList());
+        when(repository.findByIdInOrderByIdAsc(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<Long>>getArgument(0).stream().sorted()
+                        .filter(table::containsKey).map(table::get).toList());
+
+        InMemoryEventBroker broker = mock(InMemoryEventBroker.class);
+        doAnswer(invocation -> delivered.add(invocation.<Event<Integer, ?>>getArgument(1).getKey()))
+                .when(broker).emit(eq(REVIEWS), any(Event.class));
+
+        relay = new OutboxRelay(repository, broker, 100, GAP_TIMEOUT, RETENTION, maxPending, () -> now);
+    }
+
+    @Test
+    void waitsForMissingIdUpToGapTimeout() throws Exception {
+
+        commit(1);
+        commit(3);
+        relay.relay();
+        now += GAP_TIMEOUT.toNanos() / 2;
+        relay.relay();
+
+        assertEquals(List.of(1), delivered);
+        assertEquals(0, relay.pendingCount());
+
+        commit(2);
+        relay.relay();
+
+        assertEquals(List.of(1, 2, 3), delivered);
+    }
+
+    @Test
+    void deliversRowThatCommitsAfterItWasSkipped() throws Exception {
+
+        commit(1);
+        commit(3);
+        relay.relay();
+        now += GAP_TIMEOUT.toNanos();
+        relay.relay();
+
+        assertEquals(List.of(1, 3), delivered);
+        assertEquals(1, relay.pendingCount());
+
+        commit(2);
+        relay.relay();
+
+        assertEquals(List.of(1, 3, 2), delivered);
+        assertEquals(0, relay.pendingCount());
+    }
+
+    @Test
+    void forgetsSkippedIdsAfterRetention() throws Exception {
+
+        commit(1);
+        commit(3);
+        relay.relay();
+        now += GAP_TIMEOUT.toNanos();
+        relay.relay();
+
+        now += RETENTION.toNanos() + 1;
+        commit(2);
+        relay.relay();
+
+        assertEquals(List.of(1, 3), delivered);
+        assertEquals(0, relay.pendingCount());
+    }
+
+    @Test
+    void keepsAtMostMaxPendingIds() throws Exception {
+
+        setUp(2);
+        commit(1);
+        commit(10);
+        relay.relay();
+        now += GAP_TIMEOUT.toNanos();
+        relay.relay();
+        assertEquals(2, relay.pendingCount());
+
+        // The lowest ids were given up
+        commit(2);
+        commit(9);
+        relay.relay();
+
+        assertEquals(List.of(1, 10, 9), delivered);
+        assertEquals(1, relay.pendingCount());
+    }
+
+    private void commit(long id) throws JsonProcessingException {
+        OutboxEventEntity row = new OutboxEventEntity(REVIEWS, OutboxPayloads.write(List.of(
+                new Event<>(Event.Type.CREATE, (int) id, new Review((int) id, 1, "a", "s", "c", null)))));
+        row.setId(id);
+        table.put(id, row);
+    }
+}
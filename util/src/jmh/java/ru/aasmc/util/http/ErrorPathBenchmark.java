@@ -0,0 +1,110 @@
+package ru.aasmc.util.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import ru.aasmc.api.exceptions.NotFoundException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The 404 of an unknown product end to end: thrown by a controller, answered by the exception handler through
+ * the WebFlux dispatcher, and the message read back from the body the way the composite does. Compares the
+ * stackless exception with the lean error JSON to a stack-capturing exception with an HttpErrorInfo serialized
+ * and parsed by Jackson, as before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorPathBenchmark {
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private AnnotationConfigApplicationContext leanContext;
+    private AnnotationConfigApplicationContext classicContext;
+    private HttpHandler lean;
+    private HttpHandler classic;
+
+    @Setup
+    public void setUp() {
+        leanContext = context(true, GlobalControllerExceptionHandler.class);
+        classicContext = context(false, ClassicExceptionHandler.class);
+        lean = WebHttpHandlerBuilder.applicationContext(leanContext).build();
+        classic = WebHttpHandlerBuilder.applicationContext(classicContext).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        leanContext.close();
+        classicContext.close();
+    }
+
+    @Benchmark
+    public String notFoundLean() {
+        return HttpErrorInfoJson.readMessage(mapper.getFactory(), get(lean, "/product/13"), null);
+    }
+
+    @Benchmark
+    public String notFoundClassic() throws IOException {
+        return mapper.readValue(get(classic, "/product/13"), HttpErrorInfo.class).getMessage();
+    }
+
+    private static byte[] get(HttpHandler handler, String path) {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        handler.handle(MockServerHttpRequest.get(path).build(), response).block();
+        return response.getBodyAsString().block().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static AnnotationConfigApplicationContext context(boolean stackless, Class<?> exceptionHandler) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.register(WebConfig.class, exceptionHandler);
+        context.registerBean(ProductController.class, () -> new ProductController(stackless));
+        context.refresh();
+        return context;
+    }
+
+    @EnableWebFlux
+    static class WebConfig {
+    }
+
+    @RestController
+    static class ProductController {
+
+        private final boolean stackless;
+
+        ProductController(boolean stackless) {
+            this.stackless = stackless;
+        }
+
+        @GetMapping("/product/{productId}")
+        public String getProduct(@PathVariable int productId) {
+            String message = "No product found for productId: " + productId;
+            throw stackless ? NotFoundException.withoutStackTrace(message) : new NotFoundException(message);
+        }
+    }
+
+    @RestControllerAdvice
+    static class ClassicExceptionHandler {
+
+        @ResponseStatus(HttpStatus.NOT_FOUND)
+        @ExceptionHandler(NotFoundException.class)
+        public HttpErrorInfo handleNotFoundExceptions(ServerHttpRequest request, NotFoundException ex) {
+            return new HttpErrorInfo(HttpStatus.NOT_FOUND, request.getPath().pathWithinApplication().value(),
+                    ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.aasmc.util.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Stand-in for a real {@link SharedCache}, selected with app.cache.shared.type=in-memory.
+ *
+ * It is only shared within one process, which is enough for tests and for trying out the shared tier.
+ * An eviction leaves a tombstone holding the bumped version for app.cache.shared.tombstone-ttl, a load
+ * that takes longer than that may store what the eviction removed. Expired entries are dropped when
+ * they are read.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.cache.shared", name = "type", havingValue = "in-memory")
+public class InMemorySharedCache implements SharedCache {
+
+    private record Entry(byte[] value, long version, long expiresAt) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long tombstoneTtlMs;
+    private final LongSupplier clock;
+
+    @Autowired
+    public InMemorySharedCache(@Value("${app.cache.shared.tombstone-ttl:1m}") Duration tombstoneTtl) {
+        this(tombstoneTtl, System::currentTimeMillis);
+    }
+
+    InMemorySharedCache(Duration tombstoneTtl, LongSupplier clock) {
+        this.tombstoneTtlMs = tombstoneTtl.toMillis();
+        this.clock = clock;
+    }
+
+    @Override
+    public Versioned get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return new Versioned(null, 0);
+        }
+        if (clock.getAsLong() > entry.expiresAt()) {
+            entries.remove(key, entry);
+            return new Versioned(null, 0);
+        }
+        return new Versioned(entry.value(), entry.version());
+    }
+
+    @Override
+    public boolean putIfVersion(String key, byte[] value, long version, Duration ttl) {
+        Entry stored = new Entry(value, version, clock.getAsLong() + ttl.toMillis());
+        return entries.compute(key, (k, current) -> version(current) == version ? stored : current) == stored;
+    }
+
+    @Override
+    public void evict(String key) {
+        entries.compute(key, (k, current) ->
+                new Entry(null, version(current) + 1, clock.getAsLong() + tombstoneTtlMs));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private long version(Entry entry) {
+        return entry == null || clock.getAsLong() > entry.expiresAt() ? 0 : entry.version();
+    }
+}
@@ -0,0 +1,69 @@
+package ru.aasmc.util.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * First tier of a {@link TwoTierCache}, on the heap of this instance.
+ *
+ * Holds at most maxEntries values for ttlMs each. When full, the least recently used entry
+ * is evicted with the LRU policy, the oldest one with FIFO.
+ */
+class NearCache<K, V> {
+
+    enum Policy {
+        LRU,
+        FIFO
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private final long ttlMs;
+    private final LongSupplier clock;
+    private final Map<K, Entry<V>> entries;
+
+    NearCache(Policy policy, int maxEntries, long ttlMs) {
+        this(policy, maxEntries, ttlMs, System::currentTimeMillis);
+    }
+
+    NearCache(Policy policy, int maxEntries, long ttlMs, LongSupplier clock) {
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, policy == Policy.LRU) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() > entry.expiresAt()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMs));
+    }
+
+    synchronized void evict(K key) {
+        entries.remove(key);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
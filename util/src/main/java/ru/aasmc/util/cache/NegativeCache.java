@@ -0,0 +1,64 @@
+package ru.aasmc.util.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Remembers keys that were not found, with the message of the not-found error, for a short time.
+ * Created by {@link TwoTierCacheFactory}.
+ *
+ * Entries live in a bounded {@link NearCache}, so lookups of many distinct missing keys cannot grow it
+ * beyond max-entries. Whoever creates a key must {@link #invalidate(Object)} it, a lookup that raced with
+ * the creation may still report the key missing for at most the TTL.
+ */
+public class NegativeCache<K> {
+
+    private final boolean enabled;
+    private final NearCache<K, String> entries;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    NegativeCache(String name, boolean enabled, NearCache<K, String> entries, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.entries = entries;
+        this.hitCounter = registry == null ? null : counter(registry, name, "hit");
+        this.missCounter = registry == null ? null : counter(registry, name, "miss");
+    }
+
+    /**
+     * @return the message the key was not found with, or null if it is not known to be missing
+     */
+    public String getMissing(K key) {
+        if (!enabled) {
+            return null;
+        }
+        String message = entries.get(key);
+        Counter counter = message != null ? hitCounter : missCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+        return message;
+    }
+
+    public void recordMissing(K key, String message) {
+        if (enabled) {
+            entries.put(key, message);
+        }
+    }
+
+    public void invalidate(K key) {
+        if (enabled) {
+            entries.evict(key);
+        }
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String result) {
+        return Counter.builder("cache.gets")
+                .tag("cache", name).tag("tier", "negative").tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,36 @@
+package ru.aasmc.util.cache;
+
+import java.time.Duration;
+
+/**
+ * Second tier of a {@link TwoTierCache}, shared by all instances of a service (e.g. Redis or Memcached).
+ *
+ * Values are opaque serialized bytes, keys are prefixed with the name of the cache they belong to.
+ *
+ * Every key has a version that each eviction bumps, a missing key is at version 0. A value loaded after
+ * a miss is only stored if the version did not change since the miss, so a load racing with an eviction
+ * on another instance cannot store what the eviction removed. With Redis the version is a counter next
+ * to the value and the conditional put a WATCH/MULTI or a script.
+ */
+public interface SharedCache {
+
+    record Versioned(byte[] value, long version) {
+    }
+
+    /**
+     * @return the value, null if the key is missing or expired, with the version of the key
+     */
+    Versioned get(String key);
+
+    /**
+     * Stores the value if the key is still at the given version.
+     *
+     * @return whether the value was stored
+     */
+    boolean putIfVersion(String key, byte[] value, long version, Duration ttl);
+
+    /**
+     * Removes the value and bumps the version of the key.
+     */
+    void evict(String key);
+}
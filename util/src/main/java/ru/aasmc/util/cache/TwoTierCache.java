@@ -0,0 +1,247 @@
+package ru.aasmc.util.cache;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache with a {@link NearCache} on the heap of this instance and an optional {@link SharedCache}
+ * behind it. Created by {@link TwoTierCacheFactory}.
+ *
+ * A lookup tries the near tier, then the shared tier, then the loader, and fills the tiers it missed.
+ * Null values are not cached. Values handed out are shared between callers and must not be modified.
+ *
+ * {@link #evict(Object)} removes a key from both tiers, but only from the near tier of this instance,
+ * the near caches of other instances catch up when their entries expire.
+ *
+ * Every eviction bumps the generation of its key. A loaded value only goes to the near tier if the
+ * generation did not change while it was loaded, so a load racing with an eviction cannot cache what
+ * the eviction removed. Generations are kept for a fixed number of stripes of keys, an eviction of
+ * another key of the same stripe only costs a skipped put. The shared tier does the same across
+ * instances with the versions of its keys.
+ */
+@Slf4j
+public class TwoTierCache<K, V> {
+
+    private final String name;
+    private final boolean enabled;
+    private final NearCache<K, V> near;
+    private final SharedCache shared;
+    private final Duration sharedTtl;
+    private final ObjectMapper mapper;
+    private final JavaType valueType;
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong nearMisses = new AtomicLong();
+    private final AtomicLong sharedHits = new AtomicLong();
+    private final AtomicLong sharedMisses = new AtomicLong();
+    private final Counter nearHitCounter;
+    private final Counter nearMissCounter;
+    private final Counter sharedHitCounter;
+    private final Counter sharedMissCounter;
+
+    TwoTierCache(
+            String name,
+            boolean enabled,
+            NearCache<K, V> near,
+            SharedCache shared,
+            Duration sharedTtl,
+            ObjectMapper mapper,
+            JavaType valueType,
+            MeterRegistry registry) {
+        this.name = name;
+        this.enabled = enabled;
+        this.near = near;
+        this.shared = shared;
+        this.sharedTtl = sharedTtl;
+        this.mapper = mapper;
+        this.valueType = valueType;
+
+        this.nearHitCounter = counter(registry, "near", "hit");
+        this.nearMissCounter = counter(registry, "near", "miss");
+        this.sharedHitCounter = shared != null ? counter(registry, "shared", "hit") : null;
+        this.sharedMissCounter = shared != null ? counter(registry, "shared", "miss") : null;
+        if (registry != null) {
+            Gauge.builder("cache.hit.ratio", this, c -> ratio(c.nearHits, c.nearMisses))
+                    .tag("cache", name).tag("tier", "near")
+                    .register(registry);
+            Gauge.builder("cache.size", near, NearCache::size)
+                    .tag("cache", name).tag("tier", "near")
+                    .register(registry);
+            if (shared != null) {
+                Gauge.builder("cache.hit.ratio", this, c -> ratio(c.sharedHits, c.sharedMisses))
+                        .tag("cache", name).tag("tier", "shared")
+                        .register(registry);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(K key, Supplier<V> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        V value = near.get(key);
+        if (value != null) {
+            record(nearHits, nearHitCounter);
+            return value;
+        }
+        record(nearMisses, nearMissCounter);
+
+        long generation = generation(key);
+        SharedCache.Versioned sharedEntry = null;
+        if (shared != null) {
+            sharedEntry = readShared(key);
+            value = sharedEntry != null ? decode(key, sharedEntry.value()) : null;
+            if (value != null) {
+                record(sharedHits, sharedHitCounter);
+                putNear(key, value, generation);
+                return value;
+            }
+            record(sharedMisses, sharedMissCounter);
+        }
+
+        value = loader.get();
+        if (value != null && generation(key) == generation) {
+            // Without the version of the miss the shared tier cannot tell whether the value is still current
+            if (sharedEntry != null) {
+                writeShared(key, value, sharedEntry.version());
+            }
+            putNear(key, value, generation);
+        }
+        return value;
+    }
+
+    public void evict(K key) {
+        if (!enabled) {
+            return;
+        }
+        generations.incrementAndGet(stripe(key));
+        near.evict(key);
+        if (shared != null) {
+            try {
+                shared.evict(sharedKey(key));
+            } catch (RuntimeException ex) {
+                log.warn("Failed to evict {} from the shared tier of cache {}: {}", key, name, ex.toString());
+            }
+        }
+    }
+
+    /**
+     * Empties the near tier of this instance, the shared tier is left alone.
+     */
+    public void clearNear() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        near.clear();
+    }
+
+    public long getNearHits() {
+        return nearHits.get();
+    }
+
+    public long getNearMisses() {
+        return nearMisses.get();
+    }
+
+    public long getSharedHits() {
+        return sharedHits.get();
+    }
+
+    public long getSharedMisses() {
+        return sharedMisses.get();
+    }
+
+    private long generation(K key) {
+        return generations.get(stripe(key));
+    }
+
+    private static int stripe(Object key) {
+        return Math.floorMod(Objects.hashCode(key), GENERATION_STRIPES);
+    }
+
+    private void putNear(K key, V value, long generation) {
+        if (generation(key) != generation) {
+            return;
+        }
+        near.put(key, value);
+        // An eviction between the check and the put must not leave the old value behind
+        if (generation(key) != generation) {
+            near.evict(key);
+        }
+    }
+
+    // The shared tier is an optimization, when it fails the lookup falls through to the loader
+    private SharedCache.Versioned readShared(K key) {
+        try {
+            return shared.get(sharedKey(key));
+        } catch (RuntimeException ex) {
+            log.warn("Failed to read {} from the shared tier of cache {}: {}", key, name, ex.toString());
+            return null;
+        }
+    }
+
+    private V decode(K key, byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return mapper.readValue(bytes, valueType);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Failed to read {} from the shared tier of cache {}: {}", key, name, ex.toString());
+            return null;
+        }
+    }
+
+    private void writeShared(K key, V value, long version) {
+        try {
+            if (!shared.putIfVersion(sharedKey(key), mapper.writeValueAsBytes(value), version, sharedTtl)) {
+                log.debug("writeShared: {} was evicted while it was loaded, not stored in cache {}", key, name);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Failed to write {} to the shared tier of cache {}: {}", key, name, ex.toString());
+        }
+    }
+
+    private String sharedKey(K key) {
+        return name + ":" + key;
+    }
+
+    private Counter counter(MeterRegistry registry, String tier, String result) {
+        return registry == null ? null : Counter.builder("cache.gets")
+                .tag("cache", name).tag("tier", tier).tag("result", result)
+                .register(registry);
+    }
+
+    private static void record(AtomicLong count, Counter counter) {
+        count.incrementAndGet();
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static double ratio(AtomicLong hits, AtomicLong misses) {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+}
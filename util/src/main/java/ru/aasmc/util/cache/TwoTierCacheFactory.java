@@ -0,0 +1,100 @@
+package ru.aasmc.util.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates the {@link TwoTierCache}s and {@link NegativeCache}s of a service, all configured from app.cache.
+ *
+ * The shared tier is used when app.cache.shared.type selects a {@link SharedCache} bean, "none" leaves it out.
+ */
+@Slf4j
+@Component
+public class TwoTierCacheFactory {
+
+    // Values are entities and views, fields the API does not know about must not break a rolling upgrade
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final boolean enabled;
+    private final NearCache.Policy nearPolicy;
+    private final int nearMaxEntries;
+    private final Duration nearTtl;
+    private final Duration sharedTtl;
+    private final int negativeMaxEntries;
+    private final Duration negativeTtl;
+    private final SharedCache shared;
+    private final MeterRegistry registry;
+    private final List<Runnable> clearers = new CopyOnWriteArrayList<>();
+
+    public TwoTierCacheFactory(
+            @Value("${app.cache.enabled:true}") boolean enabled,
+            @Value("${app.cache.near.policy:LRU}") String nearPolicy,
+            @Value("${app.cache.near.max-entries:10000}") int nearMaxEntries,
+            @Value("${app.cache.near.ttl:30s}") Duration nearTtl,
+            @Value("${app.cache.shared.ttl:5m}") Duration sharedTtl,
+            @Value("${app.cache.negative.max-entries:1000}") int negativeMaxEntries,
+            @Value("${app.cache.negative.ttl:5s}") Duration negativeTtl,
+            ObjectProvider<SharedCache> shared,
+            ObjectProvider<MeterRegistry> registry) {
+        this.enabled = enabled;
+        this.nearPolicy = NearCache.Policy.valueOf(nearPolicy.toUpperCase());
+        this.nearMaxEntries = nearMaxEntries;
+        this.nearTtl = nearTtl;
+        this.sharedTtl = sharedTtl;
+        this.negativeMaxEntries = negativeMaxEntries;
+        this.negativeTtl = negativeTtl;
+        this.shared = shared.getIfAvailable();
+        this.registry = registry.getIfAvailable();
+    }
+
+    public <K, V> TwoTierCache<K, V> create(String name, Class<V> valueType) {
+        return create(name, MAPPER.constructType(valueType));
+    }
+
+    public <K, V> TwoTierCache<K, V> create(String name, TypeReference<V> valueType) {
+        return create(name, MAPPER.constructType(valueType));
+    }
+
+    /**
+     * Not-found results are only kept on the heap of this instance, always with the LRU policy.
+     */
+    public <K> NegativeCache<K> createNegative(String name) {
+        NegativeCache<K> cache = new NegativeCache<>(name, enabled,
+                new NearCache<>(NearCache.Policy.LRU, negativeMaxEntries, negativeTtl.toMillis()), registry);
+        clearers.add(cache::clear);
+        log.info("Negative cache {} {}: {} entries for {}",
+                name, enabled ? "enabled" : "disabled", negativeMaxEntries, negativeTtl);
+        return cache;
+    }
+
+    /**
+     * Empties the near tiers of all caches created here, e.g. after rows were changed behind the services' back.
+     */
+    public void clearAll() {
+        clearers.forEach(Runnable::run);
+    }
+
+    private <K, V> TwoTierCache<K, V> create(String name, JavaType valueType) {
+        TwoTierCache<K, V> cache = new TwoTierCache<>(name, enabled,
+                new NearCache<>(nearPolicy, nearMaxEntries, nearTtl.toMillis()),
+                shared, sharedTtl, MAPPER, valueType, registry);
+        clearers.add(cache::clearNear);
+        log.info("Cache {} {}: near tier {} of {} entries for {}, shared tier {}",
+                name, enabled ? "enabled" : "disabled", nearPolicy, nearMaxEntries, nearTtl,
+                shared != null ? shared.getClass().getSimpleName() + " for " + sharedTtl : "none");
+        return cache;
+    }
+}
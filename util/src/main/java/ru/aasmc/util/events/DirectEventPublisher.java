@@ -0,0 +1,52 @@
+package ru.aasmc.util.events;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+import ru.aasmc.api.event.Event;
+
+/**
+ * Hands events straight to the {@link InMemoryEventBroker}, the default transport.
+ *
+ * Inside a transaction the event is held back until it commits and dropped on rollback.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.events", name = "transport", havingValue = "direct", matchIfMissing = true)
+public class DirectEventPublisher implements EventPublisher {
+
+    private static final boolean TX_PRESENT = ClassUtils.isPresent(
+            "org.springframework.transaction.support.TransactionSynchronizationManager",
+            DirectEventPublisher.class.getClassLoader());
+
+    private final InMemoryEventBroker broker;
+
+    @Override
+    public void publish(String topic, Event<Integer, ?> event) {
+        if (!TX_PRESENT || !AfterCommit.defer(() -> broker.emit(topic, event))) {
+            broker.emit(topic, event);
+        }
+    }
+
+    /**
+     * Kept apart so that services without spring-tx never load it.
+     */
+    private static final class AfterCommit {
+
+        static boolean defer(Runnable action) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                return false;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+            return true;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.aasmc.util.events;
+
+import ru.aasmc.api.event.Event;
+
+import java.util.List;
+
+/**
+ * Publishes the domain events of a service, the transport is selected with app.events.transport.
+ *
+ * Events of one productId are delivered in the order they were published.
+ */
+public interface EventPublisher {
+
+    void publish(String topic, Event<Integer, ?> event);
+
+    default void publishAll(String topic, List<? extends Event<Integer, ?>> events) {
+        events.forEach(event -> publish(topic, event));
+    }
+}
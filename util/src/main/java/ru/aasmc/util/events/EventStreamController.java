@@ -0,0 +1,31 @@
+package ru.aasmc.util.events;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import ru.aasmc.api.event.Event;
+
+/**
+ * Streams the events of this instance as server-sent events, named after their topic.
+ *
+ * Sample usage: "curl -N $HOST:$PORT/events?topic=products".
+ */
+@RestController
+@RequiredArgsConstructor
+public class EventStreamController {
+
+    private final InMemoryEventBroker broker;
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Event<Integer, ?>>> events(@RequestParam(value = "topic", required = false) String topic) {
+        Flux<TopicEvent> events = topic == null ? broker.events() : broker.events(topic);
+        return events.map(e -> ServerSentEvent.<Event<Integer, ?>>builder(e.event())
+                .event(e.topic())
+                .id(Long.toString(e.sequence()))
+                .build());
+    }
+}
@@ -0,0 +1,41 @@
+package ru.aasmc.util.events;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import ru.aasmc.api.event.Event;
+
+/**
+ * In-process fan-out of events to the subscribers of this instance, every transport ends here.
+ *
+ * Emission is serialized, so all subscribers see events in the same order they were emitted.
+ * A subscriber that falls more than app.events.subscriber-buffer-size events behind gets an
+ * error instead of silently missing events, and has to resubscribe and resync.
+ */
+@Slf4j
+@Component
+public class InMemoryEventBroker {
+
+    private final Sinks.Many<TopicEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final int subscriberBufferSize;
+    private long sequence = 0;
+
+    public InMemoryEventBroker(@Value("${app.events.subscriber-buffer-size:10000}") int subscriberBufferSize) {
+        this.subscriberBufferSize = subscriberBufferSize;
+    }
+
+    public synchronized void emit(String topic, Event<Integer, ?> event) {
+        log.debug("emit: {} event for key {} to topic {}", event.getEventType(), event.getKey(), topic);
+        sink.tryEmitNext(new TopicEvent(topic, ++sequence, event));
+    }
+
+    public Flux<TopicEvent> events() {
+        return sink.asFlux().onBackpressureBuffer(subscriberBufferSize);
+    }
+
+    public Flux<TopicEvent> events(String topic) {
+        return events().filter(e -> e.topic().equals(topic));
+    }
+}
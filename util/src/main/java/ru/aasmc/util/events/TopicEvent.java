@@ -0,0 +1,9 @@
+package ru.aasmc.util.events;
+
+import ru.aasmc.api.event.Event;
+
+/**
+ * An event as delivered by the {@link InMemoryEventBroker}, with the topic it was published to.
+ */
+public record TopicEvent(String topic, long sequence, Event<Integer, ?> event) {
+}
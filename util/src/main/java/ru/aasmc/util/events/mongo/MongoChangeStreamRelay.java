@@ -0,0 +1,89 @@
+package ru.aasmc.util.events.mongo;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+import ru.aasmc.api.event.Event;
+import ru.aasmc.util.events.InMemoryEventBroker;
+
+import java.time.Duration;
+import java.time.ZoneId;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Tails the change stream of the events collection and hands every inserted event to the
+ * {@link InMemoryEventBroker} of this instance. Every instance opens its own change stream,
+ * so every instance sees every event. The change stream follows the oplog, so events come
+ * out in the order they were committed, which keeps the events of a productId in order.
+ *
+ * Stored events expire after app.events.change-stream.retention, they are only kept around
+ * for debugging once delivered.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.events", name = "transport", havingValue = "change-stream")
+public class MongoChangeStreamRelay implements SmartLifecycle {
+
+    private final MongoTemplate mongoTemplate;
+    private final InMemoryEventBroker broker;
+    private final Duration retention;
+
+    private MessageListenerContainer container;
+
+    public MongoChangeStreamRelay(
+            MongoTemplate mongoTemplate,
+            InMemoryEventBroker broker,
+            @Value("${app.events.change-stream.retention:1d}") Duration retention) {
+        this.mongoTemplate = mongoTemplate;
+        this.broker = broker;
+        this.retention = retention;
+    }
+
+    @Override
+    public void start() {
+        mongoTemplate.indexOps(MongoEventPublisher.COLLECTION)
+                .ensureIndex(new Index().on("eventCreatedAt", Sort.Direction.ASC).expire(retention));
+
+        MessageListener<ChangeStreamDocument<Document>, StoredEvent> listener = message -> relay(message.getBody());
+        container = new DefaultMessageListenerContainer(mongoTemplate);
+        ChangeStreamRequest<StoredEvent> request = ChangeStreamRequest.builder(listener)
+                .collection(MongoEventPublisher.COLLECTION)
+                .filter(newAggregation(match(where("operationType").is("insert"))))
+                .build();
+        container.register(request, StoredEvent.class);
+        container.start();
+        log.info("Relaying events from the change stream of the {} collection", MongoEventPublisher.COLLECTION);
+    }
+
+    @Override
+    public void stop() {
+        container.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return container != null && container.isRunning();
+    }
+
+    private void relay(StoredEvent stored) {
+        if (stored == null) {
+            return;
+        }
+        broker.emit(stored.getTopic(), new Event<>(stored.getEventType(), stored.getKey(), stored.getData(),
+                stored.getEventCreatedAt().toInstant().atZone(ZoneId.systemDefault())));
+    }
+}
@@ -0,0 +1,41 @@
+package ru.aasmc.util.events.mongo;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+import ru.aasmc.api.event.Event;
+import ru.aasmc.util.events.EventPublisher;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes events to the events collection, {@link MongoChangeStreamRelay} delivers them from its change stream.
+ *
+ * Change streams need a replica set, a standalone mongod has to stay on the direct transport.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.events", name = "transport", havingValue = "change-stream")
+public class MongoEventPublisher implements EventPublisher {
+
+    static final String COLLECTION = "events";
+
+    private final MongoOperations mongoOperations;
+
+    @Override
+    public void publish(String topic, Event<Integer, ?> event) {
+        mongoOperations.insert(toStoredEvent(topic, event), COLLECTION);
+    }
+
+    @Override
+    public void publishAll(String topic, List<? extends Event<Integer, ?>> events) {
+        mongoOperations.insert(events.stream().map(e -> toStoredEvent(topic, e)).toList(), COLLECTION);
+    }
+
+    private StoredEvent toStoredEvent(String topic, Event<Integer, ?> event) {
+        return new StoredEvent(topic, event.getEventType(), event.getKey(), event.getData(),
+                Date.from(event.getEventCreatedAt().toInstant()));
+    }
+}
@@ -0,0 +1,34 @@
+package ru.aasmc.util.events.mongo;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import ru.aasmc.api.event.Event;
+
+import java.util.Date;
+
+/**
+ * An event as written to the events collection by {@link MongoEventPublisher}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class StoredEvent {
+
+    @Id
+    private String id;
+    private String topic;
+    private Event.Type eventType;
+    private Integer key;
+    private Object data;
+    private Date eventCreatedAt;
+
+    public StoredEvent(String topic, Event.Type eventType, Integer key, Object data, Date eventCreatedAt) {
+        this.topic = topic;
+        this.eventType = eventType;
+        this.key = key;
+        this.data = data;
+        this.eventCreatedAt = eventCreatedAt;
+    }
+}
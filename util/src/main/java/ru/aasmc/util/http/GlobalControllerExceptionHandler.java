@@ -1,15 +1,18 @@
 package ru.aasmc.util.http;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.aasmc.api.exceptions.BadRequestException;
 import ru.aasmc.api.exceptions.InvalidInputException;
 import ru.aasmc.api.exceptions.NotFoundException;
+import ru.aasmc.api.exceptions.PreconditionFailedException;
+import ru.aasmc.api.exceptions.ServiceUnavailableException;
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
@@ -18,35 +21,55 @@ import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 @RestControllerAdvice
 public class GlobalControllerExceptionHandler {
 
-    @ResponseStatus(BAD_REQUEST)
     @ExceptionHandler(BadRequestException.class)
-    public @ResponseBody HttpErrorInfo handleBadRequestExceptions(
+    public ResponseEntity<byte[]> handleBadRequestExceptions(
             ServerHttpRequest request, BadRequestException ex) {
 
         return createHttpErrorInfo(BAD_REQUEST, request, ex);
     }
 
-    @ResponseStatus(HttpStatus.NOT_FOUND)
     @ExceptionHandler(NotFoundException.class)
-    public @ResponseBody HttpErrorInfo handleNotFoundExceptions(
+    public ResponseEntity<byte[]> handleNotFoundExceptions(
             ServerHttpRequest request, NotFoundException ex) {
 
         return createHttpErrorInfo(HttpStatus.NOT_FOUND, request, ex);
     }
 
-    @ResponseStatus(UNPROCESSABLE_ENTITY)
     @ExceptionHandler(InvalidInputException.class)
-    public @ResponseBody HttpErrorInfo handleInvalidInputException(
+    public ResponseEntity<byte[]> handleInvalidInputException(
             ServerHttpRequest request, InvalidInputException ex) {
         return createHttpErrorInfo(HttpStatus.UNPROCESSABLE_ENTITY, request, ex);
     }
 
-    private HttpErrorInfo createHttpErrorInfo(
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<byte[]> handlePreconditionFailedException(
+            ServerHttpRequest request, PreconditionFailedException ex) {
+        return createHttpErrorInfo(HttpStatus.PRECONDITION_FAILED, request, ex);
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<byte[]> handleServiceUnavailableException(
+            ServerHttpRequest request, ServiceUnavailableException ex) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return createHttpErrorInfo(HttpStatus.SERVICE_UNAVAILABLE, request, ex, headers);
+    }
+
+    // The HttpErrorInfo JSON is written by HttpErrorInfoJson, these are answered often enough to skip Jackson
+    private ResponseEntity<byte[]> createHttpErrorInfo(
             HttpStatus httpStatus, ServerHttpRequest request, Exception ex) {
+        return createHttpErrorInfo(httpStatus, request, ex, HttpHeaders.EMPTY);
+    }
+
+    private ResponseEntity<byte[]> createHttpErrorInfo(
+            HttpStatus httpStatus, ServerHttpRequest request, Exception ex, HttpHeaders headers) {
         final String path = request.getPath().pathWithinApplication().value();
         final String message = ex.getMessage();
         log.debug("Returning HTTP status: {} for path: {}, message: {}", httpStatus, path, message);
-        return new HttpErrorInfo(httpStatus, path, message);
+        return ResponseEntity.status(httpStatus)
+                .headers(headers)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(HttpErrorInfoJson.write(httpStatus, path, message));
     }
 
 }
@@ -0,0 +1,99 @@
+package ru.aasmc.util.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Writes and reads the JSON of {@link HttpErrorInfo} without an ObjectMapper. The part of the body that only
+ * depends on the status is serialized once, the timestamp is formatted once per second and completed with the
+ * millis. The message comes right after the status, so a reader can stop at it.
+ */
+public final class HttpErrorInfoJson {
+
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.")
+            .withZone(ZoneOffset.UTC);
+
+    private static final Map<HttpStatus, String> PREFIXES = new EnumMap<>(HttpStatus.class);
+
+    static {
+        for (HttpStatus status : HttpStatus.values()) {
+            PREFIXES.put(status, "{\"httpStatus\":\"" + status.name() + "\",\"message\":");
+        }
+    }
+
+    private static volatile FormattedSecond lastSecond = new FormattedSecond(Long.MIN_VALUE, "");
+
+    private HttpErrorInfoJson() {
+    }
+
+    public static byte[] write(HttpStatus httpStatus, String path, String message) {
+        StringBuilder json = new StringBuilder(128).append(PREFIXES.get(httpStatus));
+        appendString(json, message).append(",\"path\":");
+        appendString(json, path).append(",\"timestamp\":\"");
+        appendTimestamp(json, System.currentTimeMillis()).append("\"}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the message of an error body, null if it has none, or defaultMessage if the body is no error JSON.
+     */
+    public static String readMessage(JsonFactory factory, byte[] body, String defaultMessage) {
+        try (JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return defaultMessage;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("message".equals(field)) {
+                    return value == JsonToken.VALUE_NULL ? null : parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException ex) {
+            return defaultMessage;
+        }
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+        json.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(value, json);
+        return json.append('"');
+    }
+
+    private static StringBuilder appendTimestamp(StringBuilder json, long epochMilli) {
+        long second = Math.floorDiv(epochMilli, 1000);
+        FormattedSecond formatted = lastSecond;
+        if (formatted.second != second) {
+            formatted = new FormattedSecond(second, SECONDS.format(Instant.ofEpochSecond(second)));
+            lastSecond = formatted;
+        }
+        int millis = (int) Math.floorMod(epochMilli, 1000);
+        json.append(formatted.text);
+        if (millis < 100) {
+            json.append('0');
+        }
+        if (millis < 10) {
+            json.append('0');
+        }
+        return json.append(millis).append('Z');
+    }
+
+    private record FormattedSecond(long second, String text) {
+    }
+}
@@ -0,0 +1,37 @@
+package ru.aasmc.util.http;
+
+import ru.aasmc.api.exceptions.BadRequestException;
+
+/**
+ * The If-Match precondition of an upsert. Versions are sent as ETags like "3", * only asks for the entity to exist.
+ * Without the header the upsert creates or replaces the entity whatever its version.
+ */
+public record IfMatch(boolean mustExist, Integer version) {
+
+    public static final IfMatch NONE = new IfMatch(false, null);
+
+    public static IfMatch parse(String header) {
+        if (header == null || header.isBlank()) {
+            return NONE;
+        }
+        String tag = header.trim();
+        if ("*".equals(tag)) {
+            return new IfMatch(true, null);
+        }
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        try {
+            return new IfMatch(true, Integer.valueOf(tag));
+        } catch (NumberFormatException ex) {
+            throw BadRequestException.withoutStackTrace("Invalid If-Match: " + header + ", must be a version like \"3\" or *");
+        }
+    }
+
+    /**
+     * The ETag of an entity at the version.
+     */
+    public static String eTag(int version) {
+        return "\"" + version + "\"";
+    }
+}
@@ -0,0 +1,27 @@
+package ru.aasmc.util.http;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tells the address of this instance once per response, in the X-Service-Address header, instead of
+ * in every element of a list response.
+ */
+@Component
+@RequiredArgsConstructor
+public class ServiceAddressWebFilter implements WebFilter {
+
+    public static final String SERVICE_ADDRESS_HEADER = "X-Service-Address";
+
+    private final ServiceUtil serviceUtil;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        exchange.getResponse().getHeaders().set(SERVICE_ADDRESS_HEADER, serviceUtil.getServiceAddress());
+        return chain.filter(exchange);
+    }
+}
@@ -7,37 +7,31 @@ import org.springframework.stereotype.Component;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
+/**
+ * The address of this instance, hostname/IP:port. It is resolved once when the bean is created, at startup
+ * since {@link ServiceAddressWebFilter} needs it, and sent with every response by that filter.
+ */
 @Slf4j
 @Component
 public class ServiceUtil {
 
-    private final String port;
-    private String serviceAddress = null;
+    private final String serviceAddress;
 
     public ServiceUtil(@Value("${server.port}") String port) {
-        this.port = port;
+        serviceAddress = findMyAddress() + ":" + port;
+        log.info("Service address: {}", serviceAddress);
     }
 
     public String getServiceAddress() {
-        if (serviceAddress == null) {
-            serviceAddress = findMyHostname() + "/" + findMyIpAddress() + ":" + port;
-        }
         return serviceAddress;
     }
 
-    private String findMyHostname() {
-        try {
-            return InetAddress.getLocalHost().getHostName();
-        } catch (UnknownHostException e) {
-            return "unknown host name";
-        }
-    }
-
-    private String findMyIpAddress() {
+    private String findMyAddress() {
         try {
-            return InetAddress.getLocalHost().getHostAddress();
+            InetAddress localHost = InetAddress.getLocalHost();
+            return localHost.getHostName() + "/" + localHost.getHostAddress();
         } catch (UnknownHostException e) {
-            return "unknown IP address";
+            return "unknown host name/unknown IP address";
         }
     }
 }
@@ -0,0 +1,42 @@
+package ru.aasmc.util.idempotency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Honours Idempotency-Key headers unless app.idempotency.enabled=false, see {@link IdempotencyKeyWebFilter}.
+ * The keys live in an {@link InMemoryIdempotencyStore} unless another {@link IdempotencyStore} bean is defined.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "app.idempotency", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class IdempotencyConfig {
+
+    @Bean
+    @ConditionalOnMissingBean
+    IdempotencyStore idempotencyStore(@Value("${app.idempotency.max-entries:10000}") int maxEntries,
+                                      @Value("${app.idempotency.max-size:16MB}") DataSize maxSize,
+                                      @Value("${app.idempotency.ttl:24h}") Duration ttl) {
+        log.info("Keeping up to {} idempotency keys of up to {} for {}", maxEntries, maxSize, ttl);
+        return new InMemoryIdempotencyStore(maxEntries, maxSize.toBytes(), ttl.toMillis());
+    }
+
+    @Bean
+    IdempotencyKeyWebFilter idempotencyKeyWebFilter(
+            IdempotencyStore store,
+            @Value("${app.idempotency.max-request-size:256KB}") DataSize maxRequestSize,
+            @Value("${app.idempotency.max-response-size:64KB}") DataSize maxResponseSize,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new IdempotencyKeyWebFilter(store, (int) maxRequestSize.toBytes(), (int) maxResponseSize.toBytes(),
+                meterRegistry.getIfAvailable());
+    }
+}
@@ -0,0 +1,82 @@
+package ru.aasmc.util.idempotency;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * The Idempotency-Key of the request being processed on the current thread, so that calls to other services can
+ * pass on a key of their own, see {@link #derive(String, String)}. Like the MDC marker of DebugSamplingWebFilter it
+ * is set while the controller runs on the calling thread.
+ */
+public final class IdempotencyContext {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private IdempotencyContext() {
+    }
+
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the action with the key as current one, e.g. when work is continued on another thread.
+     */
+    public static <T> T callWith(String key, Supplier<T> action) {
+        String previous = CURRENT.get();
+        CURRENT.set(key);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void runWith(String key, Runnable action) {
+        callWith(key, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * A SHA-256 of the method, path and body of a request, the same request always gets the same fingerprint.
+     */
+    public static String fingerprint(String method, String path, byte[] body) {
+        MessageDigest digest = sha256();
+        digest.update(method.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ' ');
+        digest.update(path.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(body);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * The key for a call made on behalf of the request with parentKey, the same for every retry of that request.
+     */
+    public static String derive(String parentKey, String fingerprint) {
+        MessageDigest digest = sha256();
+        digest.update(parentKey.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
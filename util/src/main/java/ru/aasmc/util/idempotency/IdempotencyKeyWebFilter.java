@@ -0,0 +1,215 @@
+package ru.aasmc.util.idempotency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import ru.aasmc.util.http.HttpErrorInfoJson;
+import ru.aasmc.util.idempotency.IdempotencyStore.StoredResponse;
+
+import java.util.function.Function;
+
+/**
+ * Makes POST requests with an Idempotency-Key header safe to retry. The first request with a key is processed
+ * and its response stored, a retry with the same key and the same method, path and body gets the stored response
+ * again with Idempotent-Replayed: true instead of creating the entity twice. A retry while the first request is
+ * still processed gets 409, a request that reuses a key for something else 422.
+ *
+ * Server errors and responses larger than max-response-size are not stored, so the request can be retried.
+ * The body is read into memory to fingerprint it, a body larger than max-request-size is answered with 413.
+ * The key is available from {@link IdempotencyContext} while the controller runs.
+ */
+public class IdempotencyKeyWebFilter implements WebFilter {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyStore store;
+    private final int maxRequestSize;
+    private final int maxResponseSize;
+    private final MeterRegistry registry;
+
+    public IdempotencyKeyWebFilter(IdempotencyStore store, int maxRequestSize, int maxResponseSize,
+                                   MeterRegistry registry) {
+        this.store = store;
+        this.maxRequestSize = maxRequestSize;
+        this.maxResponseSize = maxResponseSize;
+        this.registry = registry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String key = request.getHeaders().getFirst(IdempotencyContext.HEADER);
+        if (key == null || request.getMethod() != HttpMethod.POST) {
+            return chain.filter(exchange);
+        }
+        String path = request.getPath().pathWithinApplication().value();
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return error(exchange.getResponse(), HttpStatus.BAD_REQUEST, path,
+                    IdempotencyContext.HEADER + " must have 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        return DataBufferUtils.join(request.getBody(), maxRequestSize)
+                .map(IdempotencyKeyWebFilter::readAll)
+                .defaultIfEmpty(new byte[0])
+                .map(body -> process(exchange, chain, key, path, body))
+                // Only errors of reading the body, not those of the chain
+                .onErrorResume(DataBufferLimitException.class, ex -> {
+                    count("too-large");
+                    return Mono.just(error(exchange.getResponse(), HttpStatus.PAYLOAD_TOO_LARGE, path,
+                            "Requests with an " + IdempotencyContext.HEADER + " may have at most "
+                                    + maxRequestSize + " bytes"));
+                })
+                .flatMap(Function.identity());
+    }
+
+    private Mono<Void> process(ServerWebExchange exchange, WebFilterChain chain, String key, String path, byte[] body) {
+        ServerHttpRequest request = exchange.getRequest();
+        String query = request.getURI().getRawQuery();
+        String fingerprint = IdempotencyContext.fingerprint(request.getMethodValue(),
+                query == null ? path : path + "?" + query, body);
+
+        IdempotencyStore.Lookup lookup = store.reserve(key, fingerprint);
+        switch (lookup.state()) {
+            case COMPLETED:
+                count("replayed");
+                return replay(exchange.getResponse(), lookup.response());
+            case IN_PROGRESS:
+                count("in-progress");
+                return error(exchange.getResponse(), HttpStatus.CONFLICT, path,
+                        "A request with " + IdempotencyContext.HEADER + " " + key + " is still in progress");
+            case MISMATCH:
+                count("mismatch");
+                return error(exchange.getResponse(), HttpStatus.UNPROCESSABLE_ENTITY, path,
+                        IdempotencyContext.HEADER + " " + key + " was used for another request");
+            default:
+                break;
+        }
+
+        CapturingResponse response = new CapturingResponse(exchange.getResponse());
+        ServerWebExchange decorated = exchange.mutate()
+                .request(new ReplayableRequest(request, body, response))
+                .response(response)
+                .build();
+        // The body is already there, so the controller runs while the chain is subscribed to
+        return Mono.<Void>from(subscriber -> IdempotencyContext.runWith(key,
+                        () -> chain.filter(decorated).subscribe(subscriber)))
+                // Reactor Netty cancels the chain once the response is sent, which may come before its completion
+                .doFinally(signal -> {
+                    if (signal == SignalType.ON_COMPLETE || signal == SignalType.CANCEL && response.isCommitted()) {
+                        complete(key, response);
+                    } else {
+                        store.release(key);
+                    }
+                });
+    }
+
+    private void complete(String key, CapturingResponse response) {
+        Integer status = response.getRawStatusCode();
+        int rawStatus = status == null ? HttpStatus.OK.value() : status;
+        if (rawStatus >= 500 || response.notStored) {
+            store.release(key);
+            return;
+        }
+        MediaType contentType = response.getHeaders().getContentType();
+        store.complete(key, new StoredResponse(rawStatus, contentType == null ? null : contentType.toString(),
+                response.body == null ? new byte[0] : response.body));
+        count("stored");
+    }
+
+    private Mono<Void> replay(ServerHttpResponse response, StoredResponse stored) {
+        response.setRawStatusCode(stored.status());
+        response.getHeaders().set(REPLAYED_HEADER, "true");
+        if (stored.contentType() != null) {
+            response.getHeaders().set(HttpHeaders.CONTENT_TYPE, stored.contentType());
+        }
+        if (stored.body().length == 0) {
+            return response.setComplete();
+        }
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(stored.body())));
+    }
+
+    private Mono<Void> error(ServerHttpResponse response, HttpStatus status, String path, String message) {
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(HttpErrorInfoJson.write(status, path, message))));
+    }
+
+    private void count(String result) {
+        if (registry != null) {
+            registry.counter("idempotency.requests", "result", result).increment();
+        }
+    }
+
+    private static byte[] readAll(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private static class ReplayableRequest extends ServerHttpRequestDecorator {
+
+        private final byte[] body;
+        private final ServerHttpResponse response;
+
+        ReplayableRequest(ServerHttpRequest delegate, byte[] body, ServerHttpResponse response) {
+            super(delegate);
+            this.body = body;
+            this.response = response;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return body.length == 0 ? Flux.empty() : Flux.defer(() -> Flux.just(response.bufferFactory().wrap(body)));
+        }
+    }
+
+    private class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private byte[] body;
+        private boolean notStored;
+
+        CapturingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return DataBufferUtils.join(body).flatMap(buffer -> {
+                if (buffer.readableByteCount() > maxResponseSize) {
+                    notStored = true;
+                    return super.writeWith(Mono.just(buffer));
+                }
+                this.body = readAll(buffer);
+                return super.writeWith(Mono.just(bufferFactory().wrap(this.body)));
+            });
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // Streamed responses are passed through as they are
+            notStored = true;
+            return super.writeAndFlushWith(body);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ru.aasmc.util.idempotency;
+
+/**
+ * Remembers the requests made with an Idempotency-Key and their responses, for {@link IdempotencyKeyWebFilter}.
+ * {@link InMemoryIdempotencyStore} keeps them per instance, a store shared by all instances of a service can
+ * replace it, so that a retry that reaches another instance is recognized too.
+ */
+public interface IdempotencyStore {
+
+    record StoredResponse(int status, String contentType, byte[] body) {
+    }
+
+    enum State {
+        /**
+         * The key is new and now reserved for the request, it must be completed or released.
+         */
+        RESERVED,
+        /**
+         * A request with the key is still being processed.
+         */
+        IN_PROGRESS,
+        /**
+         * The key was used for a request with a different fingerprint.
+         */
+        MISMATCH,
+        /**
+         * The request was processed before, its response is to be replayed.
+         */
+        COMPLETED
+    }
+
+    record Lookup(State state, StoredResponse response) {
+    }
+
+    /**
+     * Reserves the key for a request with the fingerprint, unless it is known already.
+     */
+    Lookup reserve(String key, String fingerprint);
+
+    void complete(String key, StoredResponse response);
+
+    /**
+     * Forgets a reserved key whose request failed, so that it can be retried.
+     */
+    void release(String key);
+}
@@ -0,0 +1,114 @@
+package ru.aasmc.util.idempotency;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps keys for ttlMs each on the heap, at most maxEntries of them and at most maxBytes of keys, fingerprints
+ * and stored response bodies. The oldest ones are dropped first, a dropped key is processed again when it is
+ * repeated. Keys are kept in the order they were reserved in, which is also the order they expire in.
+ */
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private record Entry(String fingerprint, StoredResponse response, long expiresAt, long size) {
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMs;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final LongSupplier clock;
+
+    private long bytes;
+
+    public InMemoryIdempotencyStore(int maxEntries, long maxBytes, long ttlMs) {
+        this(maxEntries, maxBytes, ttlMs, System::currentTimeMillis);
+    }
+
+    InMemoryIdempotencyStore(int maxEntries, long maxBytes, long ttlMs, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized Lookup reserve(String key, String fingerprint) {
+        long now = clock.getAsLong();
+        removeExpired(now);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            put(key, new Entry(fingerprint, null, now + ttlMs, size(key, fingerprint, null)));
+            return new Lookup(State.RESERVED, null);
+        }
+        if (!entry.fingerprint().equals(fingerprint)) {
+            return new Lookup(State.MISMATCH, null);
+        }
+        return entry.response() == null
+                ? new Lookup(State.IN_PROGRESS, null)
+                : new Lookup(State.COMPLETED, entry.response());
+    }
+
+    @Override
+    public synchronized void complete(String key, StoredResponse response) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            // Replacing the value keeps the position of the key
+            put(key, new Entry(entry.fingerprint(), response, entry.expiresAt(),
+                    size(key, entry.fingerprint(), response)));
+        }
+    }
+
+    @Override
+    public synchronized void release(String key) {
+        remove(key);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        bytes += entry.size() - (previous == null ? 0 : previous.size());
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (oldest.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= oldest.next().size();
+            oldest.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.size();
+        }
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (oldest.hasNext()) {
+            Entry entry = oldest.next();
+            if (entry.expiresAt() >= now) {
+                return;
+            }
+            bytes -= entry.size();
+            oldest.remove();
+        }
+    }
+
+    // Two bytes per char, the most a String takes per char
+    private static long size(String key, String fingerprint, StoredResponse response) {
+        long size = 2L * (key.length() + fingerprint.length());
+        if (response != null) {
+            size += response.body().length + (response.contentType() == null ? 0 : 2L * response.contentType().length());
+        }
+        return size;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.aasmc.util.limits;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that follows the latency of the requests, in the style of the gradient algorithm of
+ * Netflix' concurrency-limits.
+ *
+ * Two averages of the round trip time are kept: a short one over the last few requests and a long one over
+ * the last few hundred. While the short one stays close to the long one the limit grows by a queue allowance
+ * of sqrt(limit). When requests start to queue in front of a slow database the short average rises above the
+ * long one and the limit is scaled down by their ratio, to at most half per update. The long average drifts
+ * towards the new latency, so a lasting change in latency is accepted as the new normal.
+ *
+ * The limit only grows while at least half of it is in use, so an idle service does not drift to max-limit.
+ * It shrinks whenever the latency rises, however much of it is in use.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 600;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private double shortRttNanos;
+    private double longRttNanos;
+    private long samples;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double smoothing) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * @return whether the request may start, if so {@link #release(long, int)} must be called when it ends
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param rttNanos how long the request took, a negative value if it was cancelled and is no sample
+     * @param inFlightAtStart the in-flight count when the request started, {@link #getInFlight()} after acquiring
+     */
+    public void release(long rttNanos, int inFlightAtStart) {
+        inFlight.decrementAndGet();
+        if (rttNanos >= 0) {
+            update(rttNanos, inFlightAtStart);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtStart) {
+        samples++;
+        shortRttNanos = average(shortRttNanos, rttNanos, Math.min(samples, SHORT_WINDOW));
+        longRttNanos = average(longRttNanos, rttNanos, Math.min(samples, LONG_WINDOW));
+        if (samples < SHORT_WINDOW) {
+            return;
+        }
+
+        // Recovering from a slow period, forget it faster than the long window would
+        if (longRttNanos / shortRttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / shortRttNanos));
+        boolean underused = inFlightAtStart < estimatedLimit / 2;
+        if (underused && gradient >= 1.0) {
+            return;
+        }
+
+        double queueAllowance = underused ? 0 : Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueAllowance;
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    private static double average(double average, long sample, long window) {
+        return average + (sample - average) / window;
+    }
+}
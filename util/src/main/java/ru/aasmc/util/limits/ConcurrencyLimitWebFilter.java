@@ -0,0 +1,128 @@
+package ru.aasmc.util.limits;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import ru.aasmc.util.http.HttpErrorInfoJson;
+
+import java.time.Duration;
+
+/**
+ * Bounds the requests a service works on at the same time by an {@link AdaptiveConcurrencyLimit}, enabled
+ * with app.concurrency-limit.enabled=true. Requests beyond the limit are answered right away with 503 and
+ * a Retry-After header instead of queueing in front of a slow database. Actuator requests are not limited,
+ * so health probes keep working under load.
+ *
+ * The controllers of the services block, and on the Netty event loop at most one request per event loop
+ * thread would ever be in flight. Limited requests therefore run on a scheduler of app.concurrency-limit.threads
+ * threads, both when the chain is subscribed to and when their body arrives. The filter comes first, so the
+ * filters after it set their thread-local context on that scheduler.
+ *
+ * Publishes the concurrency.limit and concurrency.in-flight gauges and the concurrency.rejected counter.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "app.concurrency-limit", name = "enabled", havingValue = "true")
+public class ConcurrencyLimitWebFilter implements WebFilter, DisposableBean {
+
+    private static final String EXCLUDED_PATH = "/actuator";
+
+    private final AdaptiveConcurrencyLimit limit;
+    private final String retryAfterSeconds;
+    private final Counter rejectedCounter;
+    private final Scheduler scheduler;
+
+    public ConcurrencyLimitWebFilter(
+            @Value("${app.concurrency-limit.initial-limit:20}") int initialLimit,
+            @Value("${app.concurrency-limit.min-limit:4}") int minLimit,
+            @Value("${app.concurrency-limit.max-limit:200}") int maxLimit,
+            @Value("${app.concurrency-limit.smoothing:0.2}") double smoothing,
+            @Value("${app.concurrency-limit.retry-after:1s}") Duration retryAfter,
+            @Value("${app.concurrency-limit.threads:32}") int threads,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+
+        this.limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, smoothing);
+        this.retryAfterSeconds = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        this.scheduler = Schedulers.newBoundedElastic(threads, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+                "concurrency-limited", 60, true);
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit).register(registry);
+            Gauge.builder("concurrency.in-flight", limit, AdaptiveConcurrencyLimit::getInFlight).register(registry);
+            rejectedCounter = Counter.builder("concurrency.rejected").register(registry);
+        } else {
+            rejectedCounter = null;
+        }
+        log.info("Limiting concurrent requests on {} threads, starting at {} between {} and {}",
+                threads, initialLimit, minLimit, maxLimit);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (path.startsWith(EXCLUDED_PATH)) {
+            return chain.filter(exchange);
+        }
+        if (!limit.tryAcquire()) {
+            return reject(exchange.getResponse(), path);
+        }
+
+        int inFlightAtStart = limit.getInFlight();
+        long start = System.nanoTime();
+        ServerWebExchange limited = exchange.mutate()
+                .request(new ServerHttpRequestDecorator(exchange.getRequest()) {
+                    @Override
+                    public Flux<DataBuffer> getBody() {
+                        return super.getBody().publishOn(scheduler);
+                    }
+                })
+                .build();
+        return chain.filter(limited)
+                .subscribeOn(scheduler)
+                // Reactor Netty cancels the chain once the response is sent, only an uncommitted one was aborted
+                .doFinally(signal -> limit.release(
+                        signal == SignalType.CANCEL && !exchange.getResponse().isCommitted() ? -1 : System.nanoTime() - start,
+                        inFlightAtStart));
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, String path) {
+        if (rejectedCounter != null) {
+            rejectedCounter.increment();
+        }
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer body = response.bufferFactory().wrap(HttpErrorInfoJson.write(HttpStatus.SERVICE_UNAVAILABLE, path,
+                "Too many concurrent requests, limit: " + limit.getLimit()));
+        return response.writeWith(Mono.just(body));
+    }
+}
@@ -0,0 +1,45 @@
+package ru.aasmc.util.logging;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Marks a random sample of requests for debug logging, see {@link SampledDebugTurboFilter}.
+ *
+ * The marker is kept in the MDC while the request is being subscribed to, which covers
+ * everything the blocking controllers of this project do on the calling thread.
+ * Work that continues on another thread (e.g. after a request body arrives) is not sampled.
+ */
+@Component
+public class DebugSamplingWebFilter implements WebFilter {
+
+    public static final String MDC_KEY = "debugSampled";
+
+    private final double sampleRate;
+
+    public DebugSamplingWebFilter(@Value("${app.logging.debug-sample-rate:0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return chain.filter(exchange);
+        }
+        return Mono.from(subscriber -> {
+            MDC.put(MDC_KEY, "true");
+            try {
+                chain.filter(exchange).subscribe(subscriber);
+            } finally {
+                MDC.remove(MDC_KEY);
+            }
+        });
+    }
+}
@@ -0,0 +1,33 @@
+package ru.aasmc.util.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+/**
+ * Lets DEBUG statements of the application loggers through for requests that
+ * were picked by {@link DebugSamplingWebFilter}, while the configured logger level
+ * (typically INFO) applies to everything else.
+ *
+ * Turbo filters run before a logging event is created, so a disabled statement
+ * costs a level comparison and a thread-local lookup, without any allocation.
+ */
+public class SampledDebugTurboFilter extends TurboFilter {
+
+    private String loggerPrefix = "ru.aasmc";
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level.levelInt != Level.DEBUG_INT || !logger.getName().startsWith(loggerPrefix)) {
+            return FilterReply.NEUTRAL;
+        }
+        return MDC.get(DebugSamplingWebFilter.MDC_KEY) != null ? FilterReply.ACCEPT : FilterReply.NEUTRAL;
+    }
+
+    public void setLoggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.aasmc.util.mongo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the connection pool of the MongoDB driver, 100 connections per host by default, with app.mongo.pool.max-size.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "com.mongodb.MongoClientSettings")
+@ConditionalOnProperty(prefix = "app.mongo.pool", name = "max-size")
+public class MongoPoolConfig {
+
+    @Bean
+    MongoClientSettingsBuilderCustomizer mongoPoolCustomizer(
+            @Value("${app.mongo.pool.max-size}") int maxSize,
+            @Value("${app.mongo.pool.min-size:0}") int minSize,
+            @Value("${app.mongo.pool.max-idle-time:0s}") Duration maxIdleTime) {
+        return settings -> settings.applyToConnectionPoolSettings(pool -> pool
+                .maxSize(maxSize)
+                .minSize(minSize)
+                .maxConnectionIdleTime(maxIdleTime.toMillis(), TimeUnit.MILLISECONDS));
+    }
+}
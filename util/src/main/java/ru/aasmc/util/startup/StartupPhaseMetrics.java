@@ -0,0 +1,61 @@
+package ru.aasmc.util.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes the startup phases recorded by a {@link BufferingApplicationStartup} as the application.startup.phase
+ * timer, tagged with the name of the phase, e.g. spring.beans.instantiate. Its count and total time sum up all
+ * steps of the phase, the single steps are listed by the startup actuator endpoint.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StartupPhaseMetrics implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final int SLOWEST_BEANS = 5;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!(event.getApplicationContext().getApplicationStartup() instanceof BufferingApplicationStartup startup)) {
+            return;
+        }
+
+        StartupTimeline timeline = startup.getBufferedTimeline();
+        meterRegistry.ifAvailable(registry -> timeline.getEvents().forEach(step -> Timer.builder("application.startup.phase")
+                .tag("phase", step.getStartupStep().getName())
+                .register(registry)
+                .record(step.getDuration())));
+
+        if (log.isDebugEnabled()) {
+            log.debug("Slowest beans to instantiate: {}", timeline.getEvents().stream()
+                    .filter(step -> step.getStartupStep().getName().equals("spring.beans.instantiate"))
+                    .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                    .limit(SLOWEST_BEANS)
+                    .map(step -> beanName(step) + " " + step.getDuration().toMillis() + " ms")
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private static String beanName(StartupTimeline.TimelineEvent step) {
+        for (var tag : step.getStartupStep().getTags()) {
+            if (tag.getKey().equals("beanName")) {
+                return tag.getValue();
+            }
+        }
+        return "?";
+    }
+}
@@ -0,0 +1,28 @@
+package ru.aasmc.util.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Ends the application as soon as it is ready when started with app.startup.training-run=true.
+ *
+ * Used by the cdsArchive task of gradle/startup.gradle, the JVM writes its class data sharing archive
+ * of the classes loaded during startup when it exits.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.startup", name = "training-run", havingValue = "true")
+public class TrainingRunExit implements ApplicationListener<ApplicationReadyEvent> {
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        log.info("Training run: ready after {} ms of JVM uptime, exiting", ManagementFactory.getRuntimeMXBean().getUptime());
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
@@ -0,0 +1,60 @@
+package ru.aasmc.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemorySharedCacheTests {
+
+    private static final Duration TTL = Duration.ofSeconds(10);
+
+    private long now = 1_000;
+    // Tombstones live for a second
+    private final InMemorySharedCache cache = new InMemorySharedCache(Duration.ofSeconds(1), () -> now);
+
+    @Test
+    void storesValueAtVersionOfMiss() {
+
+        SharedCache.Versioned miss = cache.get("k");
+        assertNull(miss.value());
+        assertEquals(0, miss.version());
+
+        assertTrue(cache.putIfVersion("k", bytes("a"), miss.version(), TTL));
+        assertArrayEquals(bytes("a"), cache.get("k").value());
+    }
+
+    @Test
+    void rejectsValueLoadedBeforeEviction() {
+
+        long version = cache.get("k").version();
+        cache.evict("k");
+
+        assertFalse(cache.putIfVersion("k", bytes("old"), version, TTL));
+        SharedCache.Versioned afterEviction = cache.get("k");
+        assertNull(afterEviction.value());
+        assertEquals(1, afterEviction.version());
+
+        assertTrue(cache.putIfVersion("k", bytes("new"), afterEviction.version(), TTL));
+        cache.evict("k");
+        assertEquals(2, cache.get("k").version());
+    }
+
+    @Test
+    void expiresValuesAndTombstones() {
+
+        cache.putIfVersion("k", bytes("a"), 0, TTL);
+        now += TTL.toMillis() + 1;
+        assertNull(cache.get("k").value());
+
+        cache.evict("k");
+        assertEquals(1, cache.get("k").version());
+        now += 1_001;
+        assertEquals(0, cache.get("k").version());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes();
+    }
+}
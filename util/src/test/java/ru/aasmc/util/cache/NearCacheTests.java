@@ -0,0 +1,55 @@
+package ru.aasmc.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTests {
+
+    private long now = 1_000;
+
+    @Test
+    void evictsLeastRecentlyUsedEntryWithLru() {
+
+        NearCache<Integer, String> cache = new NearCache<>(NearCache.Policy.LRU, 2, 1_000, () -> now);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+
+        cache.put(3, "c");
+
+        assertEquals("a", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("c", cache.get(3));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void evictsOldestEntryWithFifo() {
+
+        NearCache<Integer, String> cache = new NearCache<>(NearCache.Policy.FIFO, 2, 1_000, () -> now);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+
+        cache.put(3, "c");
+
+        assertNull(cache.get(1));
+        assertEquals("b", cache.get(2));
+        assertEquals("c", cache.get(3));
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() {
+
+        NearCache<Integer, String> cache = new NearCache<>(NearCache.Policy.LRU, 2, 1_000, () -> now);
+        cache.put(1, "a");
+
+        now += 1_000;
+        assertEquals("a", cache.get(1));
+
+        now += 1;
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+    }
+}
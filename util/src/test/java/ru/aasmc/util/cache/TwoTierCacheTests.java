@@ -0,0 +1,120 @@
+package ru.aasmc.util.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TwoTierCacheTests {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final InMemorySharedCache shared = new InMemorySharedCache(Duration.ofMinutes(1));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void loadsOnceAndServesFromNearTier() {
+
+        TwoTierCache<Integer, String> cache = cache(null);
+
+        assertEquals("a", cache.get(1, () -> load("a")));
+        assertEquals("a", cache.get(1, () -> load("b")));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getNearHits());
+        assertEquals(1, cache.getNearMisses());
+    }
+
+    @Test
+    void servesOtherInstancesFromSharedTier() {
+
+        TwoTierCache<Integer, String> first = cache(shared);
+        TwoTierCache<Integer, String> second = cache(shared);
+
+        first.get(1, () -> load("a"));
+        assertEquals("a", second.get(1, () -> load("b")));
+        assertEquals(1, loads.get());
+        assertEquals(1, second.getSharedHits());
+    }
+
+    @Test
+    void doesNotCacheLoadThatOverlapsEvictionOfItsKey() {
+
+        TwoTierCache<Integer, String> cache = cache(shared);
+
+        cache.get(1, () -> {
+            cache.evict(1);
+            return load("old");
+        });
+
+        assertEquals("new", cache.get(1, () -> load("new")));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void cachesLoadThatOverlapsEvictionOfAnotherKey() {
+
+        TwoTierCache<Integer, String> cache = cache(null);
+
+        cache.get(1, () -> {
+            cache.evict(2);
+            return load("a");
+        });
+
+        assertEquals("a", cache.get(1, () -> load("b")));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void keepsLoadOutOfSharedTierWhenEvictedByAnotherInstance() {
+
+        TwoTierCache<Integer, String> first = cache(shared);
+        TwoTierCache<Integer, String> second = cache(shared);
+
+        first.get(1, () -> {
+            second.evict(1);
+            return load("old");
+        });
+
+        assertNull(shared.get("test:1").value());
+        assertEquals("new", second.get(1, () -> load("new")));
+    }
+
+    @Test
+    void clearNearKeepsLoadsInFlightOutOfNearTier() {
+
+        TwoTierCache<Integer, String> cache = cache(null);
+
+        cache.get(1, () -> {
+            cache.clearNear();
+            return load("old");
+        });
+
+        assertEquals("new", cache.get(1, () -> load("new")));
+    }
+
+    @Test
+    void callsLoaderEveryTimeWhenDisabled() {
+
+        TwoTierCache<Integer, String> cache = new TwoTierCache<>("test", false,
+                new NearCache<>(NearCache.Policy.LRU, 10, 60_000), shared, Duration.ofMinutes(1),
+                MAPPER, MAPPER.constructType(String.class), null);
+
+        cache.get(1, () -> load("a"));
+        cache.get(1, () -> load("a"));
+        assertEquals(2, loads.get());
+        assertNull(shared.get("test:1").value());
+    }
+
+    private TwoTierCache<Integer, String> cache(SharedCache sharedCache) {
+        return new TwoTierCache<>("test", true, new NearCache<>(NearCache.Policy.LRU, 10, 60_000),
+                sharedCache, Duration.ofMinutes(1), MAPPER, MAPPER.constructType(String.class), null);
+    }
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+}
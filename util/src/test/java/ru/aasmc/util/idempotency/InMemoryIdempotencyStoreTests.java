@@ -0,0 +1,120 @@
+package ru.aasmc.util.idempotency;
+
+import org.junit.jupiter.api.Test;
+import ru.aasmc.util.idempotency.IdempotencyStore.State;
+import ru.aasmc.util.idempotency.IdempotencyStore.StoredResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryIdempotencyStoreTests {
+
+    private static final long TTL_MS = 1_000;
+
+    private long now = 1_000;
+
+    @Test
+    void replaysCompletedResponse() {
+
+        InMemoryIdempotencyStore store = store(10, 1_000_000);
+
+        assertEquals(State.RESERVED, store.reserve("a", "f").state());
+        assertEquals(State.IN_PROGRESS, store.reserve("a", "f").state());
+        assertEquals(State.MISMATCH, store.reserve("a", "other").state());
+
+        StoredResponse response = response(10);
+        store.complete("a", response);
+        IdempotencyStore.Lookup lookup = store.reserve("a", "f");
+        assertEquals(State.COMPLETED, lookup.state());
+        assertSame(response, lookup.response());
+    }
+
+    @Test
+    void forgetsKeysAfterTtl() {
+
+        InMemoryIdempotencyStore store = store(10, 1_000_000);
+        store.reserve("a", "f");
+        store.complete("a", response(10));
+
+        now += TTL_MS;
+        assertEquals(State.COMPLETED, store.reserve("a", "f").state());
+
+        now += 1;
+        assertEquals(State.RESERVED, store.reserve("a", "f").state());
+    }
+
+    @Test
+    void dropsExpiredKeysWhenReserving() {
+
+        InMemoryIdempotencyStore store = store(10, 1_000_000);
+        store.reserve("a", "f");
+        store.complete("a", response(100));
+        now += TTL_MS / 2;
+        store.reserve("b", "f");
+
+        now += TTL_MS / 2 + 1;
+        store.reserve("c", "f");
+
+        // a expired and is gone, b is still there
+        assertEquals(2, store.size());
+        assertEquals(State.IN_PROGRESS, store.reserve("b", "f").state());
+    }
+
+    @Test
+    void dropsOldestKeysBeyondMaxEntries() {
+
+        InMemoryIdempotencyStore store = store(2, 1_000_000);
+        store.reserve("a", "f");
+        store.reserve("b", "f");
+        store.reserve("c", "f");
+
+        assertEquals(2, store.size());
+        assertEquals(State.IN_PROGRESS, store.reserve("b", "f").state());
+        assertEquals(State.IN_PROGRESS, store.reserve("c", "f").state());
+        assertEquals(State.RESERVED, store.reserve("a", "f").state());
+    }
+
+    @Test
+    void dropsOldestKeysBeyondMaxBytes() {
+
+        InMemoryIdempotencyStore store = store(10, 2_500);
+        store.reserve("a", "f");
+        store.complete("a", response(1_000));
+        store.reserve("b", "f");
+        store.complete("b", response(1_000));
+        assertEquals(2, store.size());
+
+        // Completing c takes the bytes over the bound, a is dropped
+        store.reserve("c", "f");
+        store.complete("c", response(1_000));
+
+        assertEquals(2, store.size());
+        assertTrue(store.bytes() <= 2_500);
+        assertEquals(State.COMPLETED, store.reserve("b", "f").state());
+        assertEquals(State.COMPLETED, store.reserve("c", "f").state());
+        assertEquals(State.RESERVED, store.reserve("a", "f").state());
+    }
+
+    @Test
+    void releaseFreesBytes() {
+
+        InMemoryIdempotencyStore store = store(10, 1_000_000);
+        store.reserve("a", "f");
+        long reserved = store.bytes();
+        store.complete("a", response(1_000));
+        assertEquals(reserved + 1_000, store.bytes());
+
+        store.release("a");
+
+        assertEquals(0, store.size());
+        assertEquals(0, store.bytes());
+        assertEquals(State.RESERVED, store.reserve("a", "f").state());
+    }
+
+    private InMemoryIdempotencyStore store(int maxEntries, long maxBytes) {
+        return new InMemoryIdempotencyStore(maxEntries, maxBytes, TTL_MS, () -> now);
+    }
+
+    private static StoredResponse response(int bodySize) {
+        return new StoredResponse(200, null, new byte[bodySize]);
+    }
+}
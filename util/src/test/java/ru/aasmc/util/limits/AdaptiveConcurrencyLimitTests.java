@@ -0,0 +1,82 @@
+package ru.aasmc.util.limits;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimitTests {
+
+    private static final long FAST = 1_000_000;
+    private static final long SLOW = 10_000_000;
+
+    // Starts at 20 between 10 and 100
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 10, 100, 0.2);
+
+    @Test
+    void growsWhileLatencyIsSteadyAndLimitIsInUse() {
+
+        requests(20, FAST, 20);
+        int grown = limit.getLimit();
+        assertTrue(grown > 20, "limit " + grown);
+
+        requests(20, FAST, 100);
+        assertTrue(limit.getLimit() > grown, "limit " + limit.getLimit());
+    }
+
+    @Test
+    void doesNotGrowWhileLimitIsUnderused() {
+
+        requests(100, FAST, 1);
+
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void shrinksWhenLatencyRises() {
+
+        requests(600, FAST, 20);
+        int before = limit.getLimit();
+
+        requests(5, SLOW, 20);
+        assertTrue(limit.getLimit() < before, "limit " + limit.getLimit() + ", was " + before);
+    }
+
+    @Test
+    void shrinksWhenLatencyRisesWhileUnderused() {
+
+        requests(600, FAST, 1);
+
+        requests(5, SLOW, 1);
+        assertTrue(limit.getLimit() < 20, "limit " + limit.getLimit());
+    }
+
+    @Test
+    void staysWithinMinAndMax() {
+
+        requests(1_000, FAST, 100);
+        assertEquals(100, limit.getLimit());
+
+        requests(100, SLOW, 100);
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    void rejectsBeyondLimitUntilReleased() {
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        assertFalse(limit.tryAcquire());
+        assertEquals(20, limit.getInFlight());
+
+        limit.release(-1, 20);
+        assertTrue(limit.tryAcquire());
+    }
+
+    private void requests(int count, long rttNanos, int inFlightAtStart) {
+        for (int i = 0; i < count; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(rttNanos, inFlightAtStart);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ru.aasmc.util.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampledDebugTurboFilterTests {
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger appLogger = context.getLogger("ru.aasmc.microservices.Service");
+    private final Logger otherLogger = context.getLogger("org.springframework.Other");
+    private final SampledDebugTurboFilter filter = new SampledDebugTurboFilter();
+
+    @AfterEach
+    void clearMdc() {
+        MDC.remove(DebugSamplingWebFilter.MDC_KEY);
+    }
+
+    @Test
+    void acceptsDebugOfSampledRequest() {
+
+        MDC.put(DebugSamplingWebFilter.MDC_KEY, "true");
+
+        assertEquals(FilterReply.ACCEPT, decide(appLogger, Level.DEBUG));
+    }
+
+    @Test
+    void leavesDebugOfOtherRequestsToLoggerLevel() {
+
+        assertEquals(FilterReply.NEUTRAL, decide(appLogger, Level.DEBUG));
+    }
+
+    @Test
+    void leavesOtherLoggersToLoggerLevel() {
+
+        MDC.put(DebugSamplingWebFilter.MDC_KEY, "true");
+
+        assertEquals(FilterReply.NEUTRAL, decide(otherLogger, Level.DEBUG));
+    }
+
+    @Test
+    void leavesOtherLevelsToLoggerLevel() {
+
+        MDC.put(DebugSamplingWebFilter.MDC_KEY, "true");
+
+        assertEquals(FilterReply.NEUTRAL, decide(appLogger, Level.TRACE));
+        assertEquals(FilterReply.NEUTRAL, decide(appLogger, Level.INFO));
+        assertEquals(FilterReply.NEUTRAL, decide(appLogger, Level.WARN));
+        assertEquals(FilterReply.NEUTRAL, decide(appLogger, Level.ERROR));
+    }
+
+    @Test
+    void usesConfiguredLoggerPrefix() {
+
+        MDC.put(DebugSamplingWebFilter.MDC_KEY, "true");
+        filter.setLoggerPrefix("org.springframework");
+
+        assertEquals(FilterReply.ACCEPT, decide(otherLogger, Level.DEBUG));
+        assertEquals(FilterReply.NEUTRAL, decide(appLogger, Level.DEBUG));
+    }
+
+    private FilterReply decide(Logger logger, Level level) {
+        return filter.decide(null, logger, level, "message", null, null);
+    }
+}